@@ -5,27 +5,43 @@
  */
 package de.dermoba.srcp.common;
 
+import java.nio.charset.Charset;
+
 import de.dermoba.srcp.common.exception.SRCPException;
 import de.dermoba.srcp.daemon.TimeStamp;
 
+/** A message of the server to a client, formatted and encoded once when it
+ * is created. An info message is passed by reference to all info sessions,
+ * each of them writes the same bytes.
+ */
 public class SRCPMessage {
 
-	private String result = null;
-	
+	/** the encoding of the messages on the wire */
+	public static final Charset CHARSET = Charset.defaultCharset();
+
+	/** getStateKey of a message which is not a state */
+	private static final String NO_STATE = "";
+
+	private final int code;
+	private final String result;
+	private final byte[] bytes;
+	private volatile String stateKey = null;
+
 	public SRCPMessage() {
 		this(200, "");
 	}
-	
+
 	public SRCPMessage(SRCPException e) {
 		this(e.getErrorNumber(), e.getMessage());
 	}
-	
+
 	public SRCPMessage(int code, String message) {
-		StringBuffer buffer = new StringBuffer();
-		buffer.append(new TimeStamp().getTimestamp());
-		buffer.append(" ");
+		this.code = code;
+		StringBuilder buffer = new StringBuilder(32 + (message == null ? 4 : message.length()));
+		TimeStamp.append(buffer);
+		buffer.append(' ');
 		buffer.append(code);
-		buffer.append(" ");
+		buffer.append(' ');
 		if ((code>=Globals.INFO_MIN_CODE)&&(code<=Globals.INFO_MAX_CODE)){
 			buffer.append("INFO ");
 		}
@@ -38,10 +54,69 @@ public class SRCPMessage {
 		if ((code>=Globals.SRV_MIN_ERROR_CODE)&&(code<=Globals.SRV_MAX_ERROR_CODE)){
 			buffer.append("ERROR ");
 		}
-		buffer.append(message + Globals.lineTerminator);
+		buffer.append(message);
+		buffer.append(Globals.lineTerminator);
 		result = buffer.toString();
+		bytes = result.getBytes(CHARSET);
+	}
+
+	/** the encoded message, shared by all receivers, it must not be
+	 * modified */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getCode() {
+		return code;
 	}
-	
+
+	/** the device whose state a 100 INFO reports, e.g. "1 GA 12 0" for
+	 * "100 INFO 1 GA 12 0 1", a newer info with the same key supersedes it
+	 * @return null if the message is no state info */
+	public String getStateKey() {
+		if (code != Globals.INFO_MIN_CODE) {
+			return null;
+		}
+		String key = stateKey;
+		if (key == null) {
+			key = parseStateKey();
+			stateKey = key;
+		}
+		return key == NO_STATE ? null : key;
+	}
+
+	private String parseStateKey() {
+		int start = result.indexOf(" INFO ");
+		if (start < 0) {
+			return NO_STATE;
+		}
+		start += 6;
+		int end = result.length() - Globals.lineTerminator.length();
+		int group = result.indexOf(' ', start) + 1;
+		if (group <= 0) {
+			return NO_STATE;
+		}
+		int tokens;
+		if (result.startsWith("POWER ", group) || result.startsWith("TIME ", group)) {
+			tokens = 2;
+		} else if (result.startsWith("GL ", group) || result.startsWith("FB ", group)) {
+			tokens = 3;
+		} else if (result.startsWith("GA ", group) || result.startsWith("LOCK ", group)) {
+			tokens = 4;
+		} else {
+			return NO_STATE;
+		}
+		int position = start;
+		for (int i = 0; i < tokens; i++) {
+			int next = result.indexOf(' ', position);
+			if (next < 0 || next > end) {
+				return i == tokens - 1 ? result.substring(start, end) : NO_STATE;
+			}
+			position = next + 1;
+		}
+		return result.substring(start, position - 1);
+	}
+
 	public String toString() {
 		return result;
 	}
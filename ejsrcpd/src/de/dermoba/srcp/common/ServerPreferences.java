@@ -18,6 +18,7 @@ import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import de.dermoba.srcp.common.exception.SRCPException;
+import de.dermoba.srcp.daemon.InfoQueue;
 import de.dermoba.srcp.daemon.exception.SRCPSetupErrorException;
 
 public class ServerPreferences {
@@ -57,6 +58,12 @@ public class ServerPreferences {
 		System.out.println("\t -h               display this help");
 		System.out.println("\t -d               display configuration");
 		System.out.println("\t -s <key> <value> set configuration");
+		System.out.println("\nkeys are e.g. jsrcpd.engine (blocking or nio),");
+		System.out.println("jsrcpd.eventloops (number of nio threads),");
+		System.out.println("jsrcpd.threads (platform or virtual),");
+		System.out.println("jsrcpd.infoqueue (infos queued per info session),");
+		System.out.println("jsrcpd.infooverflow (disconnect, dropoldest or latest)");
+		System.out.println("and jsrcpd.infobatch (ms to collect infos before sending)");
 	}
 
 	public void display () {
@@ -126,4 +133,46 @@ public class ServerPreferences {
     public int getPort() {
     	return 12345;
     }
+
+    /** true if the connections are served by the selector based engine,
+     * set jsrcpd.engine to "nio" */
+    public boolean isNioEngine() {
+    	return "nio".equalsIgnoreCase(System.getProperty("jsrcpd.engine"));
+    }
+
+    /** true if the sessions run on virtual threads, set jsrcpd.threads to
+     * "virtual" */
+    public boolean isVirtualThreads() {
+    	return "virtual".equalsIgnoreCase(System.getProperty("jsrcpd.threads"));
+    }
+
+    /** number of event loop threads of the selector based engine */
+    public int getEventLoops() {
+    	return Math.max(1, Integer.getInteger("jsrcpd.eventloops", 2));
+    }
+
+    /** number of infos queued for an info session which does not keep up */
+    public int getInfoQueueSize() {
+    	return Math.max(1, Integer.getInteger("jsrcpd.infoqueue", InfoQueue.DEFAULT_CAPACITY));
+    }
+
+    /** what happens when the info queue of a session is full, set
+     * jsrcpd.infooverflow to "disconnect" (default), "dropoldest" or
+     * "latest" */
+    public InfoQueue.OverflowPolicy getInfoOverflowPolicy() {
+    	String policy = System.getProperty("jsrcpd.infooverflow", "disconnect");
+    	if ("dropoldest".equalsIgnoreCase(policy)) {
+    		return InfoQueue.OverflowPolicy.DROP_OLDEST;
+    	}
+    	if ("latest".equalsIgnoreCase(policy)) {
+    		return InfoQueue.OverflowPolicy.LATEST_STATE;
+    	}
+    	return InfoQueue.OverflowPolicy.DISCONNECT;
+    }
+
+    /** milliseconds an info session waits for more infos before it sends
+     * them together, 0 (default) sends the available infos at once */
+    public long getInfoBatchWindow() {
+    	return Math.max(0, Long.getLong("jsrcpd.infobatch", 0));
+    }
 }
@@ -5,26 +5,44 @@
  */
 package de.dermoba.srcp.common;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.Socket;
+import java.util.List;
 
 public class SocketWriter {
 
+    /** bytes collected before they are sent, a batch of infos is sent in
+     * segments of this size */
+    private static final int BUFFER_SIZE = 8192;
+
     protected OutputStream outputStream = null;
-    protected OutputStreamWriter outputWriter = null;
+    private final BufferedOutputStream bufferedStream;
 
     public SocketWriter(Socket communicationSocket) throws IOException {
 		outputStream=communicationSocket.getOutputStream();
-		outputWriter = new OutputStreamWriter(outputStream);
+		bufferedStream = new BufferedOutputStream(outputStream, BUFFER_SIZE);
     }
-    
+
     public void write(String buffer) throws IOException {
-        outputWriter.write(buffer.toCharArray());
-        outputWriter.flush();
+        write(buffer.getBytes(SRCPMessage.CHARSET));
+    }
+
+    /** write the already encoded bytes, e.g. of an SRCPMessage */
+    public void write(byte[] buffer) throws IOException {
+        bufferedStream.write(buffer);
+        bufferedStream.flush();
     }
-    
+
+    /** write the messages with one flush */
+    public void write(List<SRCPMessage> messages) throws IOException {
+        for (int i = 0; i < messages.size(); i++) {
+            bufferedStream.write(messages.get(i).getBytes());
+        }
+        bufferedStream.flush();
+    }
+
     public OutputStream getOutputStream() {
     	return outputStream;
     }
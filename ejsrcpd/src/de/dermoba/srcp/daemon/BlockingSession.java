@@ -0,0 +1,160 @@
+/*
+ * Created on 18.10.2026
+ *
+ */
+package de.dermoba.srcp.daemon;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+
+import de.dermoba.srcp.common.SRCPMessage;
+import de.dermoba.srcp.common.SocketReader;
+import de.dermoba.srcp.common.SocketWriter;
+import de.dermoba.srcp.common.exception.SRCPException;
+
+/** A session served by a thread of its own, which blocks on the socket.
+ * Command input is collected until the SRCP command delimiter "LF" is
+ * reached. In info mode the thread waits for the infos of the session and
+ * writes them.
+ *
+ * @see Session
+ */
+public class BlockingSession extends Session implements Runnable {
+
+	// milliseconds an info session waits for infos before it checks its connection
+	private static final long INFO_IDLE_TIME = 1000;
+
+	private SocketWriter writer = null;
+	private SocketReader reader = null;
+	private ArrayList<SRCPMessage> infoBatch = null;
+
+	public BlockingSession(Socket objSocket) {
+		super(objSocket);
+	}
+
+	/** Thread working loop. produce welcome message, then do command handling.
+	 * the command handling begins in handshake mode */
+	public void run (){
+		Socket communicationSocket = getSocket();
+		try {
+			writer = new SocketWriter(communicationSocket);
+			reader = new SocketReader(communicationSocket);
+		} catch (IOException e) {
+			SRCPDaemon.getEventLog().println("Session.run: " + getSessionID() + " " + e.getMessage());
+			SRCPDaemon.removeSession(this);
+			return;
+		}
+		try {
+			writeWelcome();
+		}
+		catch (SRCPException e){
+			writeException(e);
+			try {
+				communicationSocket.close();
+			}
+			catch (Exception ee){
+				SRCPDaemon.getEventLog().println("Session.run: " + getSessionID() + " " + ee.getMessage());
+				return;
+			}
+			SRCPDaemon.removeSession(this);
+			return;
+		}
+		while(!shouldTerminate){
+			try {
+				readCommand();
+			} catch (SRCPException e) {
+				writeException(e);
+			} catch (IOException e1) {
+				break;
+			}
+		}
+		try {
+			communicationSocket.close();
+		}
+		catch (Exception e){
+			SRCPDaemon.getEventLog().printError("SessionThread.run: "+e.getMessage());
+		}
+		closeInfoQueue();
+		SRCPDaemon.removeSession(this);
+		SRCPDaemon.getEventLog().println("session " + getSessionID() + " done");
+	}
+
+	/** called by the daemon to stop this thread. */
+	public void stopThread () {
+		shouldTerminate=true;
+		closeInfoQueue();
+		try {
+			getSocket().close();
+		} catch (IOException e) {
+		}
+	}
+
+	/** write the encoded text to the socket, the bytes may be shared with
+	 * other sessions and are not modified */
+	protected void write(byte[] bytes) {
+		try {
+			writer.write(bytes);
+		} catch (IOException e) {
+			shouldTerminate = true;
+		}
+	}
+
+	/** wait for command data to arrive on the socket. dependig on the session mode
+	 * the command is processed (handshake, command, info)
+	 */
+	private void readCommand() throws SRCPException, IOException {
+		if (!isInfoMode()) {
+			processLine(reader.read());
+			return;
+		}
+		SRCPMessage message = getInfoQueue().poll(INFO_IDLE_TIME);
+		if (message != null) {
+			processInfos(message);
+		} else if (!shouldTerminate) {
+			checkConnection();
+		}
+	}
+
+	/** an info session does not read its input, so it looks whether the
+	 * client has closed the connection while no infos arrive */
+	private void checkConnection() throws IOException {
+		Socket communicationSocket = getSocket();
+		communicationSocket.setSoTimeout(1);
+		try {
+			if (communicationSocket.getInputStream().read() < 0) {
+				throw new IOException("connection closed by the client");
+			}
+		} catch (SocketTimeoutException e) {
+		} finally {
+			communicationSocket.setSoTimeout(0);
+		}
+	}
+
+	/** write the info together with the ones queued after it, optionally
+	 * waiting the batch window for more of them */
+	private void processInfos(SRCPMessage first) {
+		long infoBatchWindow = getInfoBatchWindow();
+		if (infoBatchWindow > 0) {
+			try {
+				Thread.sleep(infoBatchWindow);
+			} catch (InterruptedException e) {
+				// write what is queued, then leave the session loop
+				Thread.currentThread().interrupt();
+				shouldTerminate = true;
+			}
+		}
+		if (infoBatch == null) {
+			infoBatch = new ArrayList<SRCPMessage>();
+		}
+		infoBatch.clear();
+		infoBatch.add(first);
+		getInfoQueue().drainTo(infoBatch, MAX_INFO_BATCH - 1);
+		try {
+			writer.write(infoBatch);
+		} catch (IOException e) {
+			shouldTerminate = true;
+		}
+	}
+}
@@ -56,46 +56,52 @@ public class CommandDispatcher {
 
     public static final String CMD_GO = "GO";
 
+    /** the verbs handled by doCommand, matched by index */
+    private static final String[] VERBS = { CMD_TERM, CMD_INIT, CMD_GET,
+        CMD_RESET, CMD_SET, CMD_CHECK, CMD_WAIT, CMD_VERIFY };
+    private static final int VERB_TERM = 0;
+    private static final int VERB_INIT = 1;
+    private static final int VERB_GET = 2;
+    private static final int VERB_RESET = 3;
+    private static final int VERB_SET = 4;
+    private static final int VERB_CHECK = 5;
+    private static final int VERB_WAIT = 6;
+    private static final int VERB_VERIFY = 7;
+
 	public CommandDispatcher () {
 	}
 
 	public void doCommand (TokenizedLine tokens,Session session) throws SRCPException {
-		String verb = null;
+		int verb = -1;
 		int busNumber = 0;
 		try {
-			verb = tokens.nextStringToken();
+			verb = tokens.nextTokenIndex(VERBS);
 			busNumber = tokens.nextIntToken();
-			if ( verb.equals(CMD_TERM) ) {
-				SRCPDaemon.getBus(busNumber).term(tokens,session);
-				return;
-			}
-			if ( verb.equals(CMD_INIT) ) {
-				SRCPDaemon.getBus(busNumber).init(tokens,session);
-				return;
-			}
-			if ( verb.equals(CMD_GET) ) {
-				SRCPDaemon.getBus(busNumber).get(tokens,session);
-				return;
-			}
-			if ( verb.equals(CMD_RESET) ) {
-				SRCPDaemon.getBus(busNumber).reset(tokens,session);
-				return;
-			}
-			if ( verb.compareTo(CMD_SET)==0 ) {
-				SRCPDaemon.getBus(busNumber).set(tokens,session);
-				return;
-			}
-			if ( verb.equals(CMD_CHECK) ) {
-				SRCPDaemon.getBus(busNumber).check(tokens,session);
-				return;
-			}
-			if ( verb.equals(CMD_WAIT) ) {
-				SRCPDaemon.getBus(busNumber).wait(tokens,session);
-				return;
-			}
-			if ( verb.equals(CMD_VERIFY) ) {
-				SRCPDaemon.getBus(busNumber).verify(tokens,session);
-				return;
+			switch (verb) {
+				case VERB_TERM:
+					SRCPDaemon.getBus(busNumber).term(tokens,session);
+					return;
+				case VERB_INIT:
+					SRCPDaemon.getBus(busNumber).init(tokens,session);
+					return;
+				case VERB_GET:
+					SRCPDaemon.getBus(busNumber).get(tokens,session);
+					return;
+				case VERB_RESET:
+					SRCPDaemon.getBus(busNumber).reset(tokens,session);
+					return;
+				case VERB_SET:
+					SRCPDaemon.getBus(busNumber).set(tokens,session);
+					return;
+				case VERB_CHECK:
+					SRCPDaemon.getBus(busNumber).check(tokens,session);
+					return;
+				case VERB_WAIT:
+					SRCPDaemon.getBus(busNumber).wait(tokens,session);
+					return;
+				case VERB_VERIFY:
+					SRCPDaemon.getBus(busNumber).verify(tokens,session);
+					return;
 			}
 		}
 		catch ( ArrayIndexOutOfBoundsException ae ) {
@@ -0,0 +1,84 @@
+/*
+ * Created on 17.10.2026
+ *
+ */
+package de.dermoba.srcp.daemon;
+
+import java.lang.reflect.Method;
+
+/** Creates the threads of the sessions and the server jobs, either as
+ * platform daemon threads or as virtual threads.
+ *
+ * Virtual threads need a Java runtime which supports them (Java 21), they
+ * are looked up by reflection so the server still runs on older ones. If
+ * they are requested but not supported, platform threads are used.
+ *
+ * Code run on virtual threads must not block while holding a monitor, as
+ * this pins the carrier thread; use java.util.concurrent instead.
+ *
+ * Virtual threads have only been built and run on Java 17, where they fall
+ * back to platform threads. Whether they cope better with 10000 info
+ * sessions than platform threads has not been measured; run
+ * InfoClientBenchmark on Java 21 before relying on it.
+ */
+public final class DaemonThreads {
+
+	private static final Method ofVirtual;
+	private static final Method name;
+	private static final Method unstarted;
+
+	static {
+		Method v = null;
+		Method n = null;
+		Method u = null;
+		try {
+			v = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			n = builder.getMethod("name", String.class);
+			u = builder.getMethod("unstarted", Runnable.class);
+		} catch (Exception e) {
+			v = null;
+		}
+		ofVirtual = v;
+		name = n;
+		unstarted = u;
+	}
+
+	private static volatile boolean virtual = false;
+
+	private DaemonThreads() {
+	}
+
+	/** true if the runtime supports virtual threads */
+	public static boolean isVirtualSupported() {
+		return ofVirtual != null;
+	}
+
+	/** use virtual threads for the threads created from now on, if the
+	 * runtime supports them
+	 * @return true if virtual threads are used */
+	public static boolean setVirtual(boolean useVirtual) {
+		virtual = useVirtual && isVirtualSupported();
+		return virtual;
+	}
+
+	public static boolean isVirtual() {
+		return virtual;
+	}
+
+	/** create a thread which does not keep the server alive, it is not
+	 * started yet */
+	public static Thread newThread(Runnable runnable, String threadName) {
+		if (virtual) {
+			try {
+				Object builder = name.invoke(ofVirtual.invoke(null), threadName);
+				return (Thread) unstarted.invoke(builder, runnable);
+			} catch (Exception e) {
+				SRCPDaemon.getEventLog().printError("DaemonThreads: " + e.getMessage());
+			}
+		}
+		Thread thread = new Thread(runnable, threadName);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -38,8 +38,8 @@
 
 package de.dermoba.srcp.daemon;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import de.dermoba.srcp.common.SRCPMessage;
 
@@ -47,28 +47,35 @@ import de.dermoba.srcp.common.SRCPMessage;
  * The InfoDistributor gets the data via the InfoReceiver interface from the
  * implementations of the HardwareImplementation interface. It distributes
  * this information to all INFO-sessions registered as InfoListener.
+ *
+ * The listeners are kept in a copy on write list, so sending does not hold
+ * a lock while the listeners are called. The message is encoded once when
+ * it is created, all listeners get the same instance and write its bytes.
  * 
  * @author  osc, harders
  * @version $Revision: 1.1 $
  */
 public class InfoDistributor {
 
-	protected ArrayList<InfoListener> infoListeners=null;
+	protected List<InfoListener> infoListeners=null;
 
 	public InfoDistributor() {
-		infoListeners = new ArrayList<InfoListener>();
+		infoListeners = new CopyOnWriteArrayList<InfoListener>();
 	}
 	
 	public void addInfoListener(InfoListener il) {
 		infoListeners.add(il);
 	}
 
+	/** stop passing infos to the listener, e.g. when its session ends */
+	public void removeInfoListener(InfoListener il) {
+		infoListeners.remove(il);
+	}
+
 	/** pass a well-formatted info to the info listeners */
 	public void send(SRCPMessage message) {
-		synchronized(infoListeners) {
-			for (Iterator<InfoListener> i = infoListeners.iterator(); i.hasNext();) {
-				i.next().infoDataArrived(message);
-			}
+		for (InfoListener listener : infoListeners) {
+			listener.infoDataArrived(message);
 		}
 	}
 }
@@ -0,0 +1,278 @@
+/*
+ * Created on 17.10.2026
+ *
+ */
+package de.dermoba.srcp.daemon;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.dermoba.srcp.common.SRCPMessage;
+
+/** The bounded queue of the infos waiting to be written to one info
+ * session.
+ *
+ * A client which does not read its infos fills the queue, what happens
+ * then is decided by the overflow policy. The queue keeps the figures of
+ * how far its session lags behind (queued infos, age of the oldest, drops),
+ * they are reported by GET 0 SESSION.
+ *
+ * A ReentrantLock is used instead of a monitor so a session waiting for
+ * infos does not pin the carrier of a virtual thread.
+ */
+public class InfoQueue {
+
+	/** what to do with an info if the queue is full */
+	public enum OverflowPolicy {
+		/** refuse the info, the session is disconnected */
+		DISCONNECT,
+		/** discard the oldest queued info */
+		DROP_OLDEST,
+		/** keep only the latest state of a device; an info replaces the
+		 * queued state of its device, if there is none the oldest info is
+		 * discarded. While the queue has room nothing is replaced, so short
+		 * pulses (e.g. FB 1 then 0) reach the client. */
+		LATEST_STATE
+	}
+
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	private final int capacity;
+	private final OverflowPolicy overflowPolicy;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+
+	/** the latest queued state info of each device, LATEST_STATE only */
+	private final HashMap<String, Entry> states = new HashMap<String, Entry>();
+
+	private boolean closed = false;
+
+	// lag figures, guarded by lock
+	private long delivered = 0;
+	private long dropped = 0;
+	private long collapsed = 0;
+	private int highWater = 0;
+
+	public InfoQueue(int capacity, OverflowPolicy overflowPolicy) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/** queue the info
+	 * @return false if the queue is full and the policy is DISCONNECT */
+	public boolean offer(SRCPMessage message) {
+		lock.lock();
+		try {
+			if (closed) {
+				return true;
+			}
+			String device = null;
+			if (overflowPolicy == OverflowPolicy.LATEST_STATE) {
+				device = message.getStateKey();
+				if (device == null) {
+					// later states must not pass e.g. an INIT or TERM
+					states.clear();
+				} else if (entries.size() >= capacity) {
+					Entry queued = states.get(device);
+					if (queued != null) {
+						queued.message = message;
+						collapsed++;
+						return true;
+					}
+				}
+			}
+			if (entries.size() >= capacity) {
+				if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+					return false;
+				}
+				Entry oldest = entries.poll();
+				if (oldest.device != null && states.get(oldest.device) == oldest) {
+					states.remove(oldest.device);
+				}
+				dropped++;
+			}
+			Entry entry = new Entry(message, device);
+			entries.add(entry);
+			if (device != null) {
+				states.put(device, entry);
+			}
+			highWater = Math.max(highWater, entries.size());
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** wait up to timeout milliseconds for the next info
+	 * @return null if none arrived, the queue is closed or the thread is
+	 * interrupted */
+	public SRCPMessage poll(long timeout) {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lock();
+		try {
+			while (entries.isEmpty() && !closed && nanos > 0) {
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return next();
+		} catch (InterruptedException e) {
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** @return the next info, null if there is none */
+	public SRCPMessage poll() {
+		lock.lock();
+		try {
+			return next();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** move up to max waiting infos to the list without waiting
+	 * @return the number of infos moved */
+	public int drainTo(List<SRCPMessage> list, int max) {
+		lock.lock();
+		try {
+			int count = 0;
+			SRCPMessage message;
+			while (count < max && (message = next()) != null) {
+				list.add(message);
+				count++;
+			}
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private SRCPMessage next() {
+		if (closed) {
+			return null;
+		}
+		Entry entry = entries.poll();
+		if (entry == null) {
+			return null;
+		}
+		if (entry.device != null && states.get(entry.device) == entry) {
+			states.remove(entry.device);
+		}
+		delivered++;
+		return entry.message;
+	}
+
+	public boolean isEmpty() {
+		lock.lock();
+		try {
+			return entries.isEmpty();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** discard the queued infos and wake up a waiting session */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			entries.clear();
+			states.clear();
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/** number of infos waiting */
+	public int getSize() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** most infos waiting at the same time */
+	public int getHighWater() {
+		lock.lock();
+		try {
+			return highWater;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** milliseconds the oldest waiting info is queued, 0 if none waits */
+	public long getLag() {
+		lock.lock();
+		try {
+			Entry oldest = entries.peek();
+			return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queued);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** number of infos taken from the queue */
+	public long getDelivered() {
+		lock.lock();
+		try {
+			return delivered;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** number of infos discarded because the queue was full */
+	public long getDropped() {
+		lock.lock();
+		try {
+			return dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** number of infos which replaced a queued state of their device */
+	public long getCollapsed() {
+		lock.lock();
+		try {
+			return collapsed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** a queued info, a replaced state keeps the time of the first one */
+	private static class Entry {
+		private SRCPMessage message;
+		private final String device;
+		private final long queued = System.nanoTime();
+
+		Entry(SRCPMessage message, String device) {
+			this.message = message;
+			this.device = device;
+		}
+	}
+}
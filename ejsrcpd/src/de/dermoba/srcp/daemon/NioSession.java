@@ -0,0 +1,341 @@
+/*
+ * Created on 17.10.2026
+ *
+ */
+package de.dermoba.srcp.daemon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.dermoba.srcp.common.Globals;
+import de.dermoba.srcp.common.SRCPMessage;
+import de.dermoba.srcp.common.exception.SRCPException;
+
+/** A session served by the SelectorServer. The handshake, the command
+ * processing and the session ids are those of Session, only the input and
+ * output differ: input is read without blocking and split into lines in
+ * the event loop, the lines are processed by a worker thread one after the
+ * other, output is queued and written by the event loop when the socket
+ * accepts it.
+ *
+ * There is no thread per info session. The infos wait in the InfoQueue of
+ * the session and are taken by the event loop in batches when the socket
+ * has taken the previous output, so a slow client is handled by the
+ * overflow policy of its queue. A client which does not read
+ * its other output is disconnected when more than MAX_QUEUED_BYTES are
+ * waiting for it.
+ *
+ * @see SelectorServer
+ */
+public class NioSession extends Session {
+
+	/** longest command line accepted, longer lines close the session */
+	public static final int MAX_LINE_LENGTH = 4096;
+
+	/** output waiting for a slow client before it is disconnected */
+	public static final int MAX_QUEUED_BYTES = 1 << 20;
+
+	/** input lines waiting for processing before reading is suspended */
+	private static final int MAX_PENDING_LINES = 64;
+
+	private static final int LINEFEED = 0x0a;
+
+	private final SocketChannel channel;
+	private final SelectorServer.EventLoop loop;
+	private final Executor workers;
+	private SelectionKey key;
+
+	// input, used by the event loop only
+	private final ByteBuffer input = ByteBuffer.allocate(4096);
+	private final byte[] line = new byte[MAX_LINE_LENGTH];
+	private int lineLength = 0;
+
+	private final ConcurrentLinkedQueue<String> lines = new ConcurrentLinkedQueue<String>();
+	private final AtomicInteger pendingLines = new AtomicInteger();
+	private final AtomicBoolean processing = new AtomicBoolean(false);
+
+	private final ConcurrentLinkedQueue<ByteBuffer> output = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	// infos taken from the info queue, used by the event loop only
+	private final ArrayList<SRCPMessage> drained = new ArrayList<SRCPMessage>();
+	private final ByteBuffer[] gathered = new ByteBuffer[MAX_INFO_BATCH];
+	private int gatheredIndex = 0;
+	private int gatheredCount = 0;
+
+	private final AtomicInteger queuedBytes = new AtomicInteger();
+	private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+	private volatile boolean closed = false;
+
+	private final Runnable processor = new Runnable() {
+		public void run() {
+			processLines();
+		}
+	};
+
+	private final Runnable flusher = new Runnable() {
+		public void run() {
+			writable();
+		}
+	};
+
+	private final Runnable resumer = new Runnable() {
+		public void run() {
+			if (!closed && key.isValid()) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			}
+		}
+	};
+
+	NioSession(SocketChannel channel, SelectorServer.EventLoop loop, Executor workers) {
+		super(channel.socket());
+		this.channel = channel;
+		this.loop = loop;
+		this.workers = workers;
+	}
+
+	/** register with the selector of the event loop and write the welcome
+	 * message, called in the event loop */
+	void register(SelectorServer.EventLoop eventLoop) {
+		try {
+			channel.configureBlocking(false);
+			key = channel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this);
+		} catch (IOException e) {
+			SRCPDaemon.getEventLog().println("NioSession.register: " + getSessionID() + " " + e.getMessage());
+			close();
+			return;
+		}
+		try {
+			writeWelcome();
+		} catch (SRCPException e) {
+			writeException(e);
+			stopThread();
+		}
+	}
+
+	/** close the connection */
+	public void stopThread() {
+		if (loop.inEventLoop()) {
+			close();
+			return;
+		}
+		loop.execute(new Runnable() {
+			public void run() {
+				close();
+			}
+		});
+	}
+
+	/** queue the info and have the event loop write it */
+	public void infoDataArrived(SRCPMessage message) {
+		if (closed) {
+			return;
+		}
+		if (!getInfoQueue().offer(message)) {
+			SRCPDaemon.getEventLog().println("session " + getSessionID() + " does not read its infos");
+			stopThread();
+			return;
+		}
+		requestFlush(getInfoBatchWindow());
+	}
+
+	/** queue the bytes and have the event loop write them, info messages are
+	 * queued without copying */
+	protected void write(byte[] bytes) {
+		if (closed) {
+			return;
+		}
+		output.add(ByteBuffer.wrap(bytes));
+		if (queuedBytes.addAndGet(bytes.length) > MAX_QUEUED_BYTES) {
+			SRCPDaemon.getEventLog().println("session " + getSessionID() + " does not read its output");
+			stopThread();
+			return;
+		}
+		requestFlush(0);
+	}
+
+	/** have the event loop write the output after delay milliseconds unless
+	 * it is about to, the infos arriving meanwhile are written with it */
+	private void requestFlush(long delay) {
+		if (flushRequested.compareAndSet(false, true)) {
+			if (delay > 0) {
+				loop.schedule(flusher, delay);
+			} else if (loop.inEventLoop()) {
+				writable();
+			} else {
+				loop.execute(flusher);
+			}
+		}
+	}
+
+	/** read the available input and pass the complete lines on, called in
+	 * the event loop */
+	void readable() {
+		int count;
+		try {
+			count = channel.read(input);
+		} catch (IOException e) {
+			count = -1;
+		}
+		if (count < 0) {
+			close();
+			return;
+		}
+		input.flip();
+		boolean added = false;
+		while (input.hasRemaining()) {
+			byte b = input.get();
+			if (b == LINEFEED) {
+				String text = new String(line, 0, lineLength, SRCPMessage.CHARSET);
+				lineLength = 0;
+				lines.add(text.toUpperCase().trim());
+				pendingLines.incrementAndGet();
+				added = true;
+			} else if (b != 0) {
+				if (lineLength == line.length) {
+					SRCPDaemon.getEventLog().println("session " + getSessionID() + " line too long");
+					close();
+					return;
+				}
+				line[lineLength++] = b;
+			}
+		}
+		input.clear();
+		if (!added) {
+			return;
+		}
+		if (pendingLines.get() > MAX_PENDING_LINES) {
+			// the client sends faster than its commands are processed
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+		}
+		if (processing.compareAndSet(false, true)) {
+			workers.execute(processor);
+		}
+	}
+
+	/** process the queued lines, called by a worker thread */
+	private void processLines() {
+		while (true) {
+			String text;
+			while ((text = lines.poll()) != null) {
+				if (pendingLines.decrementAndGet() == MAX_PENDING_LINES) {
+					loop.execute(resumer);
+				}
+				if (closed) {
+					continue;
+				}
+				try {
+					processLine(text);
+				} catch (SRCPException e) {
+					writeException(e);
+				} catch (RuntimeException e) {
+					SRCPDaemon.getEventLog().printError("NioSession: " + getSessionID() + " " + e);
+					send(new SRCPMessage(Globals.SRV_MIN_ERROR_CODE, e.getMessage()));
+				}
+			}
+			processing.set(false);
+			if (lines.isEmpty() || !processing.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+
+	/** write the queued output as far as the socket accepts it, called in
+	 * the event loop. Waiting infos are written after the other output, as
+	 * many as MAX_INFO_BATCH with one gathering write. */
+	void writable() {
+		if (closed || key == null) {
+			return;
+		}
+		InfoQueue infos = getInfoQueue();
+		while (true) {
+			if (!writeOutput()) {
+				return;
+			}
+			if (infos != null && gatherInfos(infos)) {
+				continue;
+			}
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+			flushRequested.set(false);
+			if ((output.isEmpty() && (infos == null || infos.isEmpty()))
+					|| !flushRequested.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+
+	/** write the gathered infos, then the other output
+	 * @return false if the socket does not accept more or is closed */
+	private boolean writeOutput() {
+		try {
+			while (gatheredIndex < gatheredCount) {
+				channel.write(gathered, gatheredIndex, gatheredCount - gatheredIndex);
+				while (gatheredIndex < gatheredCount && !gathered[gatheredIndex].hasRemaining()) {
+					gathered[gatheredIndex++] = null;
+				}
+				if (gatheredIndex < gatheredCount) {
+					// continue when the socket is writable again
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					return false;
+				}
+			}
+			ByteBuffer buffer;
+			while ((buffer = output.peek()) != null) {
+				int remaining = buffer.remaining();
+				channel.write(buffer);
+				queuedBytes.addAndGet(buffer.remaining() - remaining);
+				if (buffer.hasRemaining()) {
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					return false;
+				}
+				output.poll();
+			}
+		} catch (IOException e) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	/** take the waiting infos for the next gathering write, the buffers
+	 * share the bytes of the messages
+	 * @return false if no info waits */
+	private boolean gatherInfos(InfoQueue infos) {
+		drained.clear();
+		infos.drainTo(drained, gathered.length);
+		for (int i = 0; i < drained.size(); i++) {
+			gathered[i] = ByteBuffer.wrap(drained.get(i).getBytes());
+		}
+		gatheredIndex = 0;
+		gatheredCount = drained.size();
+		drained.clear();
+		return gatheredCount > 0;
+	}
+
+	/** close the connection and remove the session, called in the event
+	 * loop */
+	void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+		output.clear();
+		closeInfoQueue();
+		SRCPDaemon.removeSession(this);
+		SRCPDaemon.getEventLog().println("session " + getSessionID() + " done");
+	}
+}
@@ -30,7 +30,8 @@ import java.lang.Thread.UncaughtExceptionHandler;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import de.dermoba.srcp.common.EventLog;
 import de.dermoba.srcp.common.ServerPreferences;
@@ -64,7 +65,7 @@ public class SRCPDaemon implements Runnable, UncaughtExceptionHandler {
 	protected static CommandDispatcher commandDispatcher;
 	protected static InfoDistributor infoDistributor;
     private static boolean shouldTerminate = false;
-    private static ArrayList<Session> threadList = null;
+    private static List<Session> threadList = null;
 	protected static ArrayList<HardwareImplementation> hardware;
 	private static ArrayList<Bus> busses = null;
     private static int serverState = SERVER_UNKNOWN;
@@ -88,10 +89,13 @@ public class SRCPDaemon implements Runnable, UncaughtExceptionHandler {
 		int busIndex = 0;
 		eventLog = new EventLog();
 		preferences = new ServerPreferences(args);
-		threadList = new ArrayList<Session>();
+		threadList = new CopyOnWriteArrayList<Session>();
 		hardware = new ArrayList<HardwareImplementation>();
 		busses = new ArrayList<Bus>();
 		infoDistributor = new InfoDistributor();
+		if (preferences.isVirtualThreads() && !DaemonThreads.setVirtual(true)) {
+			eventLog.println("SRCPDaemon: virtual threads not supported, using platform threads");
+		}
 		HardwareImplementation server = new Server();
 		server.setBusNumbers(busIndex);
 		busses.addAll(server.getBusses());
@@ -108,10 +112,14 @@ public class SRCPDaemon implements Runnable, UncaughtExceptionHandler {
 		serverThread.start();
 	}
 	
+    static void addSession (Session session) {
+    	threadList.add(session);
+    }
+
+    /** forget the session, it does not get infos any more */
     public static void removeSession (Session session) {
-    	synchronized(threadList) {
-        	threadList.remove(session);
-    	}
+    	threadList.remove(session);
+    	infoDistributor.removeInfoListener(session);
     }
 
     public static void stopServer(){
@@ -130,7 +138,7 @@ public class SRCPDaemon implements Runnable, UncaughtExceptionHandler {
     		throw new SRCPTemporarlyProhibitedException();
     	}
     	serverState=SERVER_RESETTING;
-		new Thread(new ThreadReset()).start();
+		DaemonThreads.newThread(new ThreadReset(), "SRCPD reset").start();
     }
     
     public static void runServer() {
@@ -180,16 +188,16 @@ public class SRCPDaemon implements Runnable, UncaughtExceptionHandler {
     public void run(){
 		eventLog.println("SRCPDaemon starting");
 		try {
- 			serverSocket = new ServerSocket(preferences.getPort());
-			eventLog.println("SRCPDaemon listening");
-        	while (!shouldTerminate) {
-            	Socket communicationSocket = serverSocket.accept();
-            	Session session = new Session(communicationSocket);
-				threadList.add(session);
-				Thread th = new Thread(session);
-				th.setName("Session " + session.getSessionID());
-				th.setDaemon(true);
-				th.start();
+			if (preferences.isNioEngine()) {
+				SelectorServer selectorServer = new SelectorServer(preferences.getPort(),
+						preferences.getEventLoops());
+				serverSocket = selectorServer.getServerChannel().socket();
+				eventLog.println("SRCPDaemon listening with " + preferences.getEventLoops()
+						+ " event loops");
+				selectorServer.run();
+			}
+			else {
+				runBlocking();
 			}
      	}
      	catch(Exception e)
@@ -198,8 +206,8 @@ public class SRCPDaemon implements Runnable, UncaughtExceptionHandler {
      	}
 		eventLog.println("SRCPDaemon terminating");
 		try {
-	   		for(Iterator<Session> i = threadList.iterator(); i.hasNext();) {
-	     		i.next().stopThread();
+			for (Session session : threadList.toArray(new Session[0])) {
+	     		session.stopThread();
 	    	}
 		}
 		catch(Exception e) {
@@ -214,6 +222,18 @@ public class SRCPDaemon implements Runnable, UncaughtExceptionHandler {
 		eventLog.println("SRCPDaemon done");
     }
 
+	/** accept connections and start a thread per session */
+	private void runBlocking() throws IOException {
+		serverSocket = new ServerSocket(preferences.getPort());
+		eventLog.println("SRCPDaemon listening");
+		while (!shouldTerminate) {
+			Socket communicationSocket = serverSocket.accept();
+			BlockingSession session = new BlockingSession(communicationSocket);
+			addSession(session);
+			DaemonThreads.newThread(session, "Session " + session.getSessionID()).start();
+		}
+	}
+
 	public void uncaughtException(Thread pArg0, Throwable pArg1) {
 		eventLog.println(pArg0.getName() + ": fatal error: " + pArg1.getMessage());
 		System.exit(0);
@@ -0,0 +1,225 @@
+/*
+ * Created on 17.10.2026
+ *
+ */
+package de.dermoba.srcp.daemon;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/** Network engine which serves all sessions with a few event loop threads
+ * instead of one thread per session.
+ *
+ * The connections are accepted by the thread calling run() and handed to
+ * the event loops in turn. Each event loop waits on its own selector, reads
+ * the input of its sessions, splits it into lines and writes their output
+ * when the socket accepts it. The command lines are processed by worker
+ * threads, one command of a session at a time, so a command which takes
+ * long (e.g. WAIT) does not hold up the other sessions of the loop. Worker
+ * threads only exist while commands are processed.
+ *
+ * @see NioSession
+ */
+public class SelectorServer implements Runnable {
+
+	private final ServerSocketChannel serverChannel;
+	private final EventLoop[] loops;
+	private final ExecutorService workers;
+	private final ScheduledExecutorService timer;
+	private int nextLoop = 0;
+
+	/** opens the server socket and starts the event loops */
+	public SelectorServer(int port, int eventLoops) throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.socket().bind(new InetSocketAddress(port));
+		workers = Executors.newCachedThreadPool(new ThreadFactory() {
+			private int count = 0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "SRCPD worker " + ++count);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "SRCPD timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		loops = new EventLoop[eventLoops];
+		for (int i = 0; i < loops.length; i++) {
+			loops[i] = new EventLoop(i + 1, timer);
+		}
+	}
+
+	/** the channel accepting the connections, closing it stops the server */
+	public ServerSocketChannel getServerChannel() {
+		return serverChannel;
+	}
+
+	/** accept connections until the server channel is closed */
+	public void run() {
+		try {
+			while (serverChannel.isOpen()) {
+				SocketChannel channel = serverChannel.accept();
+				EventLoop loop = loops[nextLoop];
+				nextLoop = (nextLoop + 1) % loops.length;
+				NioSession session = new NioSession(channel, loop, workers);
+				SRCPDaemon.addSession(session);
+				loop.register(session);
+			}
+		} catch (IOException e) {
+			if (serverChannel.isOpen()) {
+				SRCPDaemon.getEventLog().printError("SelectorServer: " + e.getMessage());
+			}
+		} finally {
+			shutdown();
+		}
+	}
+
+	/** stop accepting and stop the event loops, the sessions are closed by
+	 * the daemon */
+	public void shutdown() {
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+		}
+		for (EventLoop loop : loops) {
+			loop.shutdown();
+		}
+		workers.shutdown();
+		timer.shutdown();
+	}
+
+	/** A thread serving the sessions registered with its selector. Other
+	 * threads pass work to it with execute(). */
+	static class EventLoop implements Runnable {
+
+		private final Selector selector;
+		private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		private final Thread thread;
+		private final ScheduledExecutorService timer;
+		private volatile boolean shouldTerminate = false;
+
+		EventLoop(int number, ScheduledExecutorService timer) throws IOException {
+			this.timer = timer;
+			selector = Selector.open();
+			thread = new Thread(this, "SRCPD loop " + number);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		Selector getSelector() {
+			return selector;
+		}
+
+		boolean inEventLoop() {
+			return Thread.currentThread() == thread;
+		}
+
+		/** run the task in the event loop thread */
+		void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		/** run the task in the event loop thread after delay milliseconds */
+		void schedule(final Runnable task, long delay) {
+			try {
+				timer.schedule(new Runnable() {
+					public void run() {
+						execute(task);
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// the server is shutting down
+			}
+		}
+
+		void register(final NioSession session) {
+			execute(new Runnable() {
+				public void run() {
+					session.register(EventLoop.this);
+				}
+			});
+		}
+
+		void shutdown() {
+			shouldTerminate = true;
+			selector.wakeup();
+		}
+
+		public void run() {
+			while (!shouldTerminate) {
+				try {
+					selector.select();
+				} catch (IOException e) {
+					SRCPDaemon.getEventLog().printError("SelectorServer.EventLoop: " + e.getMessage());
+					break;
+				}
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						// a session task closes its session itself on errors
+						SRCPDaemon.getEventLog().printError("SelectorServer.EventLoop: task failed: " + e);
+					}
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					NioSession session = (NioSession) key.attachment();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isReadable()) {
+							session.readable();
+						}
+						if (key.isValid() && key.isWritable()) {
+							session.writable();
+						}
+					} catch (RuntimeException e) {
+						// e.g. CancelledKeyException, only this session is closed
+						SRCPDaemon.getEventLog().printError("SelectorServer.EventLoop: session "
+								+ session.getSessionID() + " failed: " + e);
+						closeQuietly(session);
+					}
+				}
+			}
+			for (SelectionKey key : selector.keys()) {
+				closeQuietly((NioSession) key.attachment());
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+			}
+		}
+
+		/** close the session, an error closing it does not stop the loop */
+		private void closeQuietly(NioSession session) {
+			try {
+				session.close();
+			} catch (RuntimeException e) {
+				SRCPDaemon.getEventLog().printError("SelectorServer.EventLoop: closing session "
+						+ session.getSessionID() + " failed: " + e);
+			}
+		}
+	}
+}
@@ -39,15 +39,13 @@
 
 package de.dermoba.srcp.daemon;
 
-import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.net.Socket;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.dermoba.srcp.common.Globals;
 import de.dermoba.srcp.common.SRCPMessage;
-import de.dermoba.srcp.common.SocketReader;
-import de.dermoba.srcp.common.SocketWriter;
+import de.dermoba.srcp.common.ServerPreferences;
 import de.dermoba.srcp.common.TokenizedLine;
 import de.dermoba.srcp.common.exception.SRCPException;
 import de.dermoba.srcp.common.exception.SRCPOutOfResourcesException;
@@ -55,128 +53,94 @@ import de.dermoba.srcp.common.exception.SRCPUnsufficientDataException;
 import de.dermoba.srcp.common.exception.SRCPUnsupportedConnectionModeException;
 import de.dermoba.srcp.common.exception.SRCPUnsupportedProtocolException;
 
-/** Handle the input and output for a SRCP client session. Every client has its
- * own Session instance. The sessions are managed by SRCPDaemon.
- * Command input is collected until the SRCP command delimiter "LF" is reached.
- * Depending on the working mode (handshake, command, info), the input is processed
- * This class also has method for writing SRCP compliant messages back to the
- * client.
+/** Handle a SRCP client session. Every client has its own Session instance.
+ * The sessions are managed by SRCPDaemon.
+ * Depending on the working mode (handshake, command, info), a command line
+ * is processed. This class also has method for writing SRCP compliant
+ * messages back to the client, the subclasses do the input and output on
+ * the socket: BlockingSession with a thread of its own, NioSession in the
+ * event loop of the SelectorServer.
  *
  * @author  osc
  * @version $Revision: 1.1 $
  */
-public class Session implements Runnable, InfoListener, UncaughtExceptionHandler {
+public abstract class Session implements InfoListener, UncaughtExceptionHandler {
 	
 	// global counter for unique connection ids
-	private static Integer sessionCounter = new Integer(0);
+	private static final AtomicInteger sessionCounter = new AtomicInteger(0);
 	
 	// session states
 	private static final int HANDSHAKE = 1;
 	private static final int COMMAND = 2;
 	private static final int INFO = 3;
+	
+	// most infos sent with one write
+	static final int MAX_INFO_BATCH = 256;
 
-	// communication sockets
+	// communication socket
 	private Socket communicationSocket = null;
-	private SocketWriter writer = null;
-	private SocketReader reader = null;
-	private LinkedBlockingQueue<SRCPMessage> infoQueue = null;
+	private volatile InfoQueue infoQueue = null;
+	private volatile long infoBatchWindow = 0;
 	
 	// connection id
 	private int sessionID;
 	
 	// runtime flag
-	private boolean shouldTerminate = false;
+	protected volatile boolean shouldTerminate = false;
 	
 	private int serverMode = 0;
 	private int nextServerMode = 0;
 	
-	private TokenizedLine tokenizer = null;
+	// reused for every command line of this session
+	private final TokenizedLine tokenizer = new TokenizedLine();
 	
 	/** Creates new Session */
-	public Session(Socket objSocket) {
+	protected Session(Socket objSocket) {
 		super();
 		communicationSocket = objSocket;
-		synchronized (sessionCounter) {
-			if (sessionCounter < 0) {
-				sessionID=0;
-				SRCPDaemon.getEventLog().printError("SessionThread.SessionThread: out of resources");
-			}
-			else {
-				sessionID = ++sessionCounter;
-			}
+		sessionID = nextSessionID();
+		if (sessionID == 0) {
+			SRCPDaemon.getEventLog().printError("SessionThread.SessionThread: out of resources");
 		}
 		serverMode = HANDSHAKE;
 		nextServerMode = COMMAND;
 	}
 	
-	/** set flag for terminating this session */
-	public void terminate () {
-		shouldTerminate=true;
-	}
-	
-	/** Thread working loop. produce welcome message, then do command handling.
-	 * the command handling begins in handshake mode */
-	public void run (){
-		try {
-			writer = new SocketWriter(communicationSocket);
-			reader = new SocketReader(communicationSocket);
-		} catch (IOException e) {
-			SRCPDaemon.getEventLog().println("Session.run: " + sessionID + " " + e.getMessage());
-			SRCPDaemon.removeSession(this);
-			return;
-		}
-		try {
-			writeWelcome();
-		}
-		catch (SRCPException e){
-			writeException(e);
-			try {
-				communicationSocket.close();
-			}
-			catch (Exception ee){
-				SRCPDaemon.getEventLog().println("Session.run: " + sessionID + " " + ee.getMessage());
-				return;
+	/** return the next unique session id, 0 if all are used up */
+	private static int nextSessionID() {
+		while (true) {
+			int current = sessionCounter.get();
+			if (current == Integer.MAX_VALUE) {
+				return 0;
 			}
-			SRCPDaemon.removeSession(this);
-			return;
-		}
-		while(!shouldTerminate){
-			try {
-				readCommand();
-			} catch (SRCPException e) {
-				writeException(e);
-			} catch (IOException e1) {
-				break;
+			if (sessionCounter.compareAndSet(current, current + 1)) {
+				return current + 1;
 			}
 		}
-		try {
-			communicationSocket.close();
-		}
-		catch (Exception e){
-			SRCPDaemon.getEventLog().printError("SessionThread.run: "+e.getMessage());
-		}
-		SRCPDaemon.removeSession(this);
-		SRCPDaemon.getEventLog().println("session " + sessionID + " done");
 	}
 	
-	/** called by the daemon to stop this thread. */
-	public void stopThread () {
+	/** set flag for terminating this session */
+	public void terminate () {
 		shouldTerminate=true;
-		try {
-			communicationSocket.close();
-		} catch (IOException e) {
-		}
 	}
 	
-	/** write the SRCPMessage to the socket */
+	/** called by the daemon to stop this session, closes the connection */
+	public abstract void stopThread();
+	
+	/** write the SRCPMessage to the socket, the message is encoded already */
 	public void send(SRCPMessage message) {
-		try {
-			writer.write(message.toString());
-		} catch (IOException e) {
-			shouldTerminate = true;
-		}
+		write(message.getBytes());
+	}
+	
+	/** write the text to the socket */
+	protected void write(String text) {
+		write(text.getBytes(SRCPMessage.CHARSET));
 	}
 	
+	/** write the encoded text to the socket, the bytes may be shared with
+	 * other sessions and are not modified */
+	protected abstract void write(byte[] bytes);
+	
 	/** return session info string (for GET 0 SESSION X) */
 	public String getInfo() {
 		String strDummy ="0 SESSION ID="+Integer.toString(sessionID);
@@ -193,6 +157,11 @@ public class Session implements Runnable, InfoListener, UncaughtExceptionHandler
 		}
 		strDummy=strDummy+communicationSocket.getInetAddress().getHostName()+" (";
 		strDummy=strDummy+communicationSocket.getInetAddress().getHostAddress()+")";
+		InfoQueue queue = infoQueue;
+		if (queue != null) {
+			strDummy=strDummy+" QUEUED="+queue.getSize()+" LAG="+queue.getLag()
+				+" DROPPED="+queue.getDropped()+" COLLAPSED="+queue.getCollapsed();
+		}
 		return strDummy;
 	}
 	
@@ -200,10 +169,39 @@ public class Session implements Runnable, InfoListener, UncaughtExceptionHandler
 		return sessionID;
 	}
 
+	protected Socket getSocket() {
+		return communicationSocket;
+	}
+
+	/** true after the client has issued GO in info mode */
+	protected boolean isInfoMode() {
+		return serverMode == INFO;
+	}
+
+	/** milliseconds to collect infos before they are written */
+	long getInfoBatchWindow() {
+		return infoBatchWindow;
+	}
+
+	/** the infos waiting for this session, null if it is not in info mode */
+	public InfoQueue getInfoQueue() {
+		return infoQueue;
+	}
+
+	/** queue the info, a session which does not keep up is disconnected
+	 * if the overflow policy says so */
 	public void infoDataArrived(SRCPMessage message) {
-		try {
-			infoQueue.put(message);
-		} catch (InterruptedException e) {
+		if (!infoQueue.offer(message)) {
+			SRCPDaemon.getEventLog().println("session " + sessionID + " does not read its infos");
+			stopThread();
+		}
+	}
+
+	/** discard the waiting infos and wake up the session */
+	void closeInfoQueue() {
+		InfoQueue queue = infoQueue;
+		if (queue != null) {
+			queue.close();
 		}
 	}
 
@@ -216,7 +214,7 @@ public class Session implements Runnable, InfoListener, UncaughtExceptionHandler
 	}
 
 	/** write the server welcome message to the socket */
-	private void writeWelcome() throws SRCPException {
+	void writeWelcome() throws SRCPException {
 		if (sessionID == 0) {
 			throw new SRCPOutOfResourcesException();
 		}
@@ -228,37 +226,21 @@ public class Session implements Runnable, InfoListener, UncaughtExceptionHandler
 		buffer.append(communicationSocket.getLocalAddress().getHostName());
 		buffer.append(";");
 		buffer.append(Globals.lineTerminator);
-		try {
-			writer.write(buffer.toString());
-		}
-		catch (Exception e){
-			SRCPDaemon.getEventLog().printError("SessionThread.writeWelcome: " + e.getMessage());
-		}
+		write(buffer.toString());
 	}
 	
-	/** wait for command data to arrive on the socket. dependig on the session mode
-	 * the command is processed (handshake, command, info)
-	 * Input data is read byte by byte and converted to string byte by byte
-	 */
-	private void readCommand() throws SRCPException, IOException {
-		String buffer;
+	/** process a complete command line, depending on the session mode.
+	 * In info mode the client does not send commands, input is ignored. */
+	void processLine(String line) throws SRCPException {
 		switch (serverMode) {
 			case HANDSHAKE:
-				buffer = reader.read();
-				tokenizer = new TokenizedLine(buffer);
+				tokenizer.reset(line);
 				processHandshake();
 				break;
 			case COMMAND:
-				buffer = reader.read();
-				tokenizer = new TokenizedLine(buffer);
+				tokenizer.reset(line);
 				processCommand();
 				break;
-			case INFO:
-				try {
-					processInfo(infoQueue.take());
-				} catch (InterruptedException e) {
-				}
-				break;
 		}
 	}
 	
@@ -304,8 +286,10 @@ public class Session implements Runnable, InfoListener, UncaughtExceptionHandler
 			serverMode = nextServerMode;
 			if (serverMode == INFO) {
 				SRCPDaemon.getEventLog().println("session " + sessionID + " go info");
+				ServerPreferences preferences = SRCPDaemon.getPreferences();
+				infoBatchWindow = preferences.getInfoBatchWindow();
+				infoQueue = new InfoQueue(preferences.getInfoQueueSize(), preferences.getInfoOverflowPolicy());
 				SRCPDaemon.getInfoDistributor().addInfoListener(this);
-				infoQueue = new LinkedBlockingQueue<SRCPMessage>();
 			}
 			if (serverMode == COMMAND) {
 				SRCPDaemon.getEventLog().println("session " + sessionID + " go command");
@@ -319,13 +303,8 @@ public class Session implements Runnable, InfoListener, UncaughtExceptionHandler
 		SRCPDaemon.getCommandDispatcher().doCommand(tokenizer,this);
 	}
 
-	/** switch to info mode */
-	private void processInfo(SRCPMessage message) {
-		send(message);
-	}
-	
 	/** return any SRCP exception object via socket to the client */
-	private void writeException(SRCPException e) {
+	void writeException(SRCPException e) {
 		send(new SRCPMessage(e));
 	}
 }
\ No newline at end of file
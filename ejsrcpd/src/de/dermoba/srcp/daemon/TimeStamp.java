@@ -4,23 +4,39 @@
  */
 package de.dermoba.srcp.daemon;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-
+/** Formats the current time as seconds with three decimals, the timestamp
+ * at the start of every SRCP message.
+ *
+ * The digits are appended directly, without a DecimalFormat, so formatting
+ * a timestamp into a StringBuilder does not allocate.
+ */
 public class TimeStamp {
-	
-	private DecimalFormat timestampFormat=null;
 
 	public TimeStamp() {
-		timestampFormat = new DecimalFormat(".000");
-		DecimalFormatSymbols objSymbols = new DecimalFormatSymbols();
-		objSymbols.setDecimalSeparator('.');
-		timestampFormat.setDecimalFormatSymbols(objSymbols);
 	}
 
 	public String getTimestamp () {
-		java.util.Date objDate = new java.util.Date();
-		double dblMilliSecs = objDate.getTime();
-		return timestampFormat.format(dblMilliSecs/1000);
+		StringBuilder buffer = new StringBuilder(16);
+		append(buffer);
+		return buffer.toString();
+	}
+
+	/** append the current time to the buffer */
+	public static void append(StringBuilder buffer) {
+		append(buffer, System.currentTimeMillis());
+	}
+
+	/** append the time in milliseconds as seconds.milliseconds */
+	public static void append(StringBuilder buffer, long millis) {
+		long fraction = millis % 1000;
+		buffer.append(millis / 1000);
+		buffer.append('.');
+		if (fraction < 100) {
+			buffer.append('0');
+		}
+		if (fraction < 10) {
+			buffer.append('0');
+		}
+		buffer.append(fraction);
 	}
 }
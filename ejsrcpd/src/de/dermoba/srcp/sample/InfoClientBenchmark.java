@@ -0,0 +1,215 @@
+/*
+ * Created on 17.10.2026
+ *
+ */
+package de.dermoba.srcp.sample;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import de.dermoba.srcp.daemon.DaemonThreads;
+import de.dermoba.srcp.daemon.SRCPDaemon;
+
+/** Measures how the server copes with many info sessions.
+ *
+ * The server and the clients run in separate processes, so each needs only
+ * one file descriptor per connection:
+ * <pre>
+ * java -Djsrcpd.threads=virtual ... InfoClientBenchmark server
+ * java ... InfoClientBenchmark clients localhost 10000 20
+ * </pre>
+ * The server mode starts the daemon with the engine selected by the system
+ * properties (jsrcpd.engine, jsrcpd.threads) and prints its thread count
+ * and heap every few seconds. The client mode opens the info sessions from
+ * a single thread, completes their handshakes, then switches the power of
+ * the sample bus the given number of times and measures how long it takes
+ * until every session has received every info.
+ *
+ * No numbers comparing virtual and platform threads have been recorded yet:
+ * the benchmark was only run on Java 17, which has no virtual threads.
+ */
+public class InfoClientBenchmark {
+
+	private static final int PORT = 12345;
+	private static final int SAMPLE_BUS = 1;
+
+	// states of a client
+	private static final int WELCOME = 0;
+	private static final int CONNECTIONMODE = 1;
+	private static final int GO = 2;
+	private static final int READY = 3;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("server")) {
+			runServer();
+		} else if (args.length > 0 && args[0].equals("clients")) {
+			String host = args.length > 1 ? args[1] : "localhost";
+			int clients = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+			int infos = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+			runClients(host, clients, infos);
+		} else {
+			System.out.println("usage: InfoClientBenchmark server");
+			System.out.println("       InfoClientBenchmark clients [<host> [<clients> [<infos>]]]");
+		}
+	}
+
+	private static void runServer() throws InterruptedException {
+		SRCPDaemon.main(new String[0]);
+		System.out.println("threads: " + (DaemonThreads.isVirtual() ? "virtual" : "platform")
+				+ ", engine: " + System.getProperty("jsrcpd.engine", "blocking"));
+		while (true) {
+			Thread.sleep(5000);
+			Runtime runtime = Runtime.getRuntime();
+			System.gc();
+			System.out.println("live platform threads " + ManagementFactory.getThreadMXBean().getThreadCount()
+					+ ", heap " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024) + " MB");
+		}
+	}
+
+	private static void runClients(String host, int count, int infos) throws Exception {
+		Selector selector = Selector.open();
+		Client[] clients = new Client[count];
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, PORT));
+			channel.configureBlocking(false);
+			clients[i] = new Client(channel);
+			channel.register(selector, SelectionKey.OP_READ, clients[i]);
+			// keep the server's accept backlog short
+			if (i % 100 == 99) {
+				poll(selector, 0);
+			}
+		}
+		long connected = System.nanoTime();
+		while (Client.ready < count) {
+			poll(selector, 1000);
+		}
+		long ready = System.nanoTime();
+		System.out.println(count + " sessions: connected in " + (connected - start) / 1000000
+				+ " ms, in info mode after " + (ready - start) / 1000000 + " ms");
+
+		Socket command = new Socket(host, PORT);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(command.getInputStream()));
+		Writer writer = new OutputStreamWriter(command.getOutputStream());
+		reader.readLine();
+		writer.write("GO\nINIT " + SAMPLE_BUS + " POWER\n");
+		writer.flush();
+		reader.readLine();
+		reader.readLine();
+		long expected = (long) count * infos;
+		long sent = System.nanoTime();
+		for (int i = 0; i < infos; i++) {
+			writer.write("SET " + SAMPLE_BUS + " POWER " + (i % 2 == 0 ? "OFF" : "ON") + "\n");
+		}
+		writer.flush();
+		while (Client.infos < expected) {
+			poll(selector, 1000);
+		}
+		long done = System.nanoTime();
+		System.out.println(infos + " infos to " + count + " sessions in " + (done - sent) / 1000000
+				+ " ms, " + (expected * 1000000000L / Math.max(1, done - sent)) + " infos/s");
+		command.close();
+		for (Client client : clients) {
+			client.channel.close();
+		}
+	}
+
+	private static void poll(Selector selector, long timeout) throws IOException {
+		if (timeout == 0) {
+			selector.selectNow();
+		} else {
+			selector.select(timeout);
+		}
+		for (Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext();) {
+			SelectionKey key = i.next();
+			i.remove();
+			((Client) key.attachment()).read();
+		}
+	}
+
+	/** an info session, driven by the selector of the benchmark */
+	private static class Client {
+
+		static int ready = 0;
+		static long infos = 0;
+
+		private final SocketChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+		private final StringBuilder line = new StringBuilder();
+		private int state = WELCOME;
+
+		Client(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void read() throws IOException {
+			buffer.clear();
+			if (channel.read(buffer) < 0) {
+				throw new IOException("connection closed by the server");
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				char c = (char) buffer.get();
+				if (c != '\n') {
+					line.append(c);
+					continue;
+				}
+				lineComplete(line.toString());
+				line.setLength(0);
+			}
+		}
+
+		private void lineComplete(String text) throws IOException {
+			switch (state) {
+				case WELCOME:
+					write("SET CONNECTIONMODE SRCP INFO\n");
+					state = CONNECTIONMODE;
+					break;
+				case CONNECTIONMODE:
+					write("GO\n");
+					state = GO;
+					break;
+				case GO:
+					if (text.indexOf(" 200 OK GO ") < 0) {
+						throw new IOException("handshake failed: " + text);
+					}
+					state = READY;
+					ready++;
+					break;
+				default:
+					if (isPowerInfo(text)) {
+						infos++;
+					}
+			}
+		}
+
+		/** true for "<time> 100 INFO <bus> POWER ...", the initial state
+		 * (101 INFO) and other infos are not counted */
+		private boolean isPowerInfo(String text) {
+			int start = text.indexOf(' ') + 1;
+			if (start <= 0 || !text.startsWith("100 INFO ", start)) {
+				return false;
+			}
+			int group = text.indexOf(' ', start + 9) + 1;
+			return group > 0 && text.startsWith("POWER ", group);
+		}
+
+		private void write(String text) throws IOException {
+			ByteBuffer out = ByteBuffer.wrap(text.getBytes());
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+		}
+	}
+}
@@ -26,6 +26,7 @@ import de.dermoba.srcp.common.exception.SRCPException;
 import de.dermoba.srcp.common.exception.SRCPUnsufficientDataException;
 import de.dermoba.srcp.common.exception.SRCPWrongValueException;
 import de.dermoba.srcp.daemon.Bus;
+import de.dermoba.srcp.daemon.DaemonThreads;
 import de.dermoba.srcp.daemon.SRCPDaemon;
 import de.dermoba.srcp.daemon.Session;
 
@@ -56,9 +57,7 @@ class DeviceGroupTime extends DeviceGroupBus0 implements Runnable {
 	public void set(TokenizedLine tokens,Session session,boolean check) throws SRCPException {
 		handleWriteAccess(session);
 		modellzeit = setTimeValues(tokens);
-		Thread t = new Thread(this);
-		t.setDaemon(true);
-		t.start();
+		DaemonThreads.newThread(this, "SRCPD time").start();
 		session.send(reply100());
 		SRCPDaemon.getInfoDistributor().send(reply100());
 	}
@@ -8,17 +8,39 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
 
-import de.dermoba.srcp.common.SocketReader;
+import org.apache.log4j.Logger;
+
+import de.dermoba.srcp.common.LineReader;
+import de.dermoba.srcp.common.Response;
 import de.dermoba.srcp.common.SocketWriter;
 import de.dermoba.srcp.common.exception.SRCPException;
 import de.dermoba.srcp.common.exception.SRCPHostNotFoundException;
 import de.dermoba.srcp.common.exception.SRCPIOException;
 
+/**
+ * The command channel of an SRCP session.
+ *
+ * Commands may be pipelined: {@link #sendAsync(String)} writes the command
+ * and returns immediately, so several commands can be in flight on the
+ * socket at once. The server answers the commands of a session in the order
+ * they were received, so the replies are matched to the pending requests in
+ * FIFO order by a reader thread which is started after the handshake.
+ * {@link #send(String)} and {@link #sendReceive(String)} use the same
+ * pipeline and simply wait for their reply.
+ */
 public class CommandChannel {
 
+	private static Logger logger = Logger.getLogger(CommandChannel.class);
+
 	private int id;
 
 	String serverName = null;
@@ -29,14 +51,31 @@ public class CommandChannel {
 
 	private SocketWriter out = null;
 
-	private SocketReader in = null;
+	private LineReader in = null;
 
 	private final Set<CommandDataListener> listeners;
 
+	/**
+	 * guards writing to the socket, so the order of the pending commands is
+	 * the order on the wire
+	 */
+	private final Object writeLock = new Object();
+
+	/**
+	 * commands written to the server but not answered yet, oldest first. The
+	 * reader thread takes replies from it without holding the write lock, a
+	 * writer blocked on a full socket must not keep replies from being read.
+	 */
+	private final Queue<PendingCommand> pendingCommands = new ConcurrentLinkedQueue<PendingCommand>();
+
+	private Thread replyReader = null;
+
+	private volatile boolean connected = false;
+
 	/**
 	 * creates a new SRCP connection on the command channel to handle all
 	 * command communication.
-	 * 
+	 *
 	 * @param pServerName
 	 *            name or IP-Address of server
 	 * @param pServerPort
@@ -47,32 +86,57 @@ public class CommandChannel {
 			throws SRCPException {
 		serverName = pServerName;
 		serverPort = pServerPort;
-		listeners = new HashSet<CommandDataListener>();
+		listeners = new CopyOnWriteArraySet<CommandDataListener>();
 	}
 
 	public void connect() throws SRCPException {
+		String output;
 		try {
 			socket = new Socket();
 			socket.connect(new InetSocketAddress(serverName, serverPort), 5000);
 			out = new SocketWriter(socket);
-			in = new SocketReader(socket);
+			in = new LineReader(socket);
 			final String incoming = in.read();
 			informListenersReceived(incoming);
+			handshake("SET CONNECTIONMODE SRCP COMMAND");
+			output = handshake("GO");
 		} catch (final UnknownHostException e) {
 			throw new SRCPHostNotFoundException();
 		} catch (final IOException e) {
 			throw new SRCPIOException(e);
 		}
-		send("SET CONNECTIONMODE SRCP COMMAND");
-		final String output = sendReceive("GO");
 		final String[] outputSplitted = output.split(" ");
 
 		if (outputSplitted.length >= 5) {
 			id = Integer.parseInt(outputSplitted[4]);
 		}
+		connected = true;
+		replyReader = new Thread(new ReplyReader(in),
+				"SRCP command channel reader");
+		replyReader.setDaemon(true);
+		replyReader.start();
+	}
+
+	/**
+	 * sends a handshake command and reads its reply directly, the reader
+	 * thread is not running yet.
+	 */
+	private String handshake(final String pCommand) throws IOException,
+			SRCPException {
+		informListenersSent(pCommand);
+		out.write(pCommand + "\n");
+		final String response = in.read();
+		informListenersReceived(response);
+		final SRCPException ex = ReceivedExceptionFactory.parseResponse(
+				pCommand, response);
+		if (ex != null) {
+			throw ex;
+		}
+		return response;
 	}
 
 	public void disconnect() throws SRCPException {
+		connected = false;
 		try {
 			// sendReceive("SESSION 0 TERM");
 			if (socket != null) {
@@ -81,34 +145,30 @@ public class CommandChannel {
 			}
 		} catch (final IOException e) {
 			throw new SRCPIOException(e);
+		} finally {
+			failPendingCommands(null);
 		}
 	}
 
+	/**
+	 * send a line to the server and wait for the next reply. Errors reported
+	 * by the server are not translated into exceptions.
+	 *
+	 * @param output
+	 *            the line to send, if <code>null</code> only the next reply
+	 *            is read
+	 * @return the servers reply
+	 * @throws SRCPException
+	 */
 	public String sendReceive(String output) throws SRCPException {
-		if (out == null) {
-			throw new SRCPIOException();
-		}
-		String s = "";
-		try {
-			if (output != null) {
-				informListenersSent(output);
-				output += "\n";
-				out.write(output);
-			}
-			s = in.read();
-			if (s == null) {
-				throw new SRCPIOException();
-			}
-		} catch (final IOException e) {
-			throw new SRCPIOException();
-		}
-		informListenersReceived(s);
-		return s;
+		final PendingCommand pending = new PendingCommand(output, false);
+		enqueue(pending);
+		return await(pending.rawReply);
 	}
 
 	/**
 	 * send a command to the server
-	 * 
+	 *
 	 * @param pCommand
 	 *            the command to send
 	 * @return the ervers reply
@@ -124,6 +184,137 @@ public class CommandChannel {
 		return response;
 	}
 
+	/**
+	 * send a command to the server without waiting for the reply.
+	 *
+	 * The returned future is completed with the reply of the server, or
+	 * completed exceptionally with the {@link SRCPException} the reply
+	 * translates to. If the connection is lost before the reply arrives the
+	 * future fails with an {@link SRCPIOException}.
+	 *
+	 * @param pCommand
+	 *            the command to send
+	 * @return the future reply
+	 */
+	public CompletableFuture<Response> sendAsync(final String pCommand) {
+		final PendingCommand pending = new PendingCommand(pCommand, true);
+		try {
+			enqueue(pending);
+		} catch (final SRCPException e) {
+			pending.response.completeExceptionally(e);
+		}
+		return pending.response;
+	}
+
+	/**
+	 * sends several commands with one write, without waiting for the
+	 * replies. No other command can get in between them.
+	 *
+	 * @param pCommands
+	 *            the commands to send
+	 * @return the future replies, in the order of the commands
+	 * @see #sendAsync(String)
+	 */
+	public List<CompletableFuture<Response>> sendBatchAsync(
+			final String... pCommands) {
+		final List<CompletableFuture<Response>> replies = new ArrayList<CompletableFuture<Response>>(
+				pCommands.length);
+		final PendingCommand[] batch = new PendingCommand[pCommands.length];
+		final StringBuilder buffer = new StringBuilder(pCommands.length * 32);
+		for (int i = 0; i < pCommands.length; i++) {
+			batch[i] = new PendingCommand(pCommands[i], true);
+			replies.add(batch[i].response);
+			buffer.append(pCommands[i]).append('\n');
+		}
+		if (batch.length == 0) {
+			return replies;
+		}
+		try {
+			synchronized (writeLock) {
+				if (!connected) {
+					throw new SRCPIOException();
+				}
+				for (final PendingCommand pending : batch) {
+					pendingCommands.add(pending);
+					informListenersSent(pending.request);
+				}
+				try {
+					out.write(buffer.toString());
+				} catch (final IOException e) {
+					for (final PendingCommand pending : batch) {
+						pendingCommands.remove(pending);
+					}
+					throw new SRCPIOException(e);
+				}
+			}
+		} catch (final SRCPException e) {
+			for (final PendingCommand pending : batch) {
+				pending.response.completeExceptionally(e);
+			}
+		}
+		return replies;
+	}
+
+	private void enqueue(final PendingCommand pending) throws SRCPException {
+		synchronized (writeLock) {
+			if (!connected) {
+				throw new SRCPIOException();
+			}
+			// queue first, the reply may arrive before write() returns
+			pendingCommands.add(pending);
+			if (pending.request != null) {
+				informListenersSent(pending.request);
+				try {
+					out.write(pending.request + "\n");
+				} catch (final IOException e) {
+					pendingCommands.remove(pending);
+					throw new SRCPIOException(e);
+				}
+			}
+		}
+	}
+
+	private static <T> T await(final CompletableFuture<T> future)
+			throws SRCPException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SRCPIOException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof SRCPException) {
+				throw (SRCPException) e.getCause();
+			}
+			throw new SRCPIOException(e.getCause());
+		}
+	}
+
+	private void replyReceived(final String reply) {
+		final PendingCommand pending = pendingCommands.poll();
+		informListenersReceived(reply);
+		if (pending == null) {
+			logger.warn("unexpected reply: " + reply);
+			return;
+		}
+		pending.complete(reply);
+	}
+
+	/**
+	 * marks the channel as disconnected and fails every command still
+	 * waiting for its reply.
+	 */
+	private void failPendingCommands(final Throwable cause) {
+		connected = false;
+		synchronized (writeLock) {
+			// no command can be queued any more once we hold the lock
+			PendingCommand pending;
+			while ((pending = pendingCommands.poll()) != null) {
+				pending.fail(cause == null ? new SRCPIOException()
+						: new SRCPIOException(cause));
+			}
+		}
+	}
+
 	private void informListenersReceived(final String s) {
 		for (final CommandDataListener l : listeners) {
 			l.commandDataReceived(s);
@@ -147,4 +338,84 @@ public class CommandChannel {
 	public int getID() {
 		return id;
 	}
+
+	/**
+	 * a command waiting for its reply. Commands sent with
+	 * {@link CommandChannel#sendReceive(String)} get the raw reply, commands
+	 * sent with {@link CommandChannel#sendAsync(String)} get it parsed.
+	 */
+	private static class PendingCommand {
+
+		private final String request;
+
+		private final CompletableFuture<String> rawReply;
+
+		private final CompletableFuture<Response> response;
+
+		PendingCommand(final String pRequest, final boolean parsed) {
+			request = pRequest;
+			if (parsed) {
+				rawReply = null;
+				response = new CompletableFuture<Response>();
+			} else {
+				rawReply = new CompletableFuture<String>();
+				response = null;
+			}
+		}
+
+		void complete(final String reply) {
+			if (rawReply != null) {
+				rawReply.complete(reply);
+				return;
+			}
+			try {
+				final Response resp = new Response(reply);
+				final SRCPException ex = ReceivedExceptionFactory
+						.parseResponse(request, resp);
+				if (ex != null) {
+					response.completeExceptionally(ex);
+				} else {
+					response.complete(resp);
+				}
+			} catch (final SRCPException e) {
+				response.completeExceptionally(e);
+			} catch (final RuntimeException e) {
+				response.completeExceptionally(e);
+			}
+		}
+
+		void fail(final SRCPException e) {
+			if (rawReply != null) {
+				rawReply.completeExceptionally(e);
+			} else {
+				response.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * reads the replies of the server and hands them to the oldest pending
+	 * command.
+	 */
+	private class ReplyReader implements Runnable {
+
+		private final LineReader reader;
+
+		ReplyReader(final LineReader pReader) {
+			reader = pReader;
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					replyReceived(reader.read());
+				}
+			} catch (final IOException e) {
+				if (connected) {
+					logger.error("command channel closed: " + e.getMessage());
+				}
+				failPendingCommands(e);
+			}
+		}
+	}
 }
@@ -14,7 +14,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.UUID;
 
-import de.dermoba.srcp.common.SocketReader;
+import de.dermoba.srcp.common.LineReader;
+import de.dermoba.srcp.common.ListenerList;
 import de.dermoba.srcp.common.SocketWriter;
 import de.dermoba.srcp.common.TokenizedLine;
 import de.dermoba.srcp.common.exception.SRCPException;
@@ -32,7 +33,17 @@ import de.dermoba.srcp.devices.listener.POWERInfoListener;
 import de.dermoba.srcp.devices.listener.SERVERInfoListener;
 import de.dermoba.srcp.devices.listener.SMInfoListener;
 import de.dermoba.srcp.model.locomotives.SRCPLocomotiveDirection;
+import de.dermoba.srcp.model.locomotives.SRCPLocomotiveFunctions;
 
+/**
+ * The info channel of an SRCP session. A reader thread parses the info
+ * lines and hands them to the listeners of the device group.
+ *
+ * Lines are dispatched through a table of handlers indexed by device group
+ * and info code (100 to 102). The listeners of each group are kept in a
+ * {@link ListenerList}, so informing them needs no lock and listeners may
+ * be added or removed at any time, even from within a callback.
+ */
 public class InfoChannel implements Runnable {
 
 	private static final int INFO_SET = 100;
@@ -41,11 +52,44 @@ public class InfoChannel implements Runnable {
 
 	private static final int INFO_TERM = 102;
 
+	private static final String[] ON = { "1" };
+
+	private static final String[] POWER_ON = { "ON" };
+
+	private static final String[] DEVICE_GROUPS = { "FB", "GA", "GL", "LOCK",
+			"POWER", "SERVER", "DESCRIPTION", "SESSION", "GM", "SM" };
+
+	private static final int GROUP_FB = 0;
+
+	private static final int GROUP_GA = 1;
+
+	private static final int GROUP_GL = 2;
+
+	private static final int GROUP_LOCK = 3;
+
+	private static final int GROUP_POWER = 4;
+
+	private static final int GROUP_SERVER = 5;
+
+	private static final int GROUP_GM = 8;
+
+	private static final int GROUP_SM = 9;
+
+	/**
+	 * handles the rest of an info line for one device group and info code.
+	 * The tokenizer is positioned behind the device group.
+	 */
+	private interface InfoHandler {
+		void handle(TokenizedLine tokenLine, double timestamp, int bus)
+				throws SRCPUnsufficientDataException, NumberFormatException,
+				SRCPWrongValueException;
+	}
+
 	private Socket socket = null;
 
 	private SocketWriter out = null;
 
-	private SocketReader in = null;
+	private LineReader in = null;
 
 	private final String serverName;
 
@@ -53,32 +97,55 @@ public class InfoChannel implements Runnable {
 
 	private int id;
 
-	private final Collection<FBInfoListener> FBListeners = new ArrayList<FBInfoListener>();
+	private final ListenerList<FBInfoListener> FBListeners = new ListenerList<FBInfoListener>(
+			FBInfoListener.class);
 
-	private final Collection<GAInfoListener> GAListeners = new ArrayList<GAInfoListener>();
+	private final ListenerList<GAInfoListener> GAListeners = new ListenerList<GAInfoListener>(
+			GAInfoListener.class);
 
-	private final Collection<GLInfoListener> GLListeners = new ArrayList<GLInfoListener>();
+	private final ListenerList<GLInfoListener> GLListeners = new ListenerList<GLInfoListener>(
+			GLInfoListener.class);
 
-	private final Collection<LOCKInfoListener> LOCKListeners = new ArrayList<LOCKInfoListener>();
+	private final ListenerList<LOCKInfoListener> LOCKListeners = new ListenerList<LOCKInfoListener>(
+			LOCKInfoListener.class);
 
-	private final Collection<POWERInfoListener> POWERListeners = new ArrayList<POWERInfoListener>();
+	private final ListenerList<POWERInfoListener> POWERListeners = new ListenerList<POWERInfoListener>(
+			POWERInfoListener.class);
 
-	private final Collection<SERVERInfoListener> SERVERListeners = new ArrayList<SERVERInfoListener>();
+	private final ListenerList<SERVERInfoListener> SERVERListeners = new ListenerList<SERVERInfoListener>(
+			SERVERInfoListener.class);
 
-	private final Collection<SMInfoListener> SMListeners = new ArrayList<SMInfoListener>();
+	private final ListenerList<SMInfoListener> SMListeners = new ListenerList<SMInfoListener>(
+			SMInfoListener.class);
 
-	private final Collection<GMInfoListener> GMListeners = new ArrayList<GMInfoListener>();
+	private final ListenerList<GMInfoListener> GMListeners = new ListenerList<GMInfoListener>(
+			GMInfoListener.class);
 
-	private final Collection<CRCFInfoListener> CRCFListeners = new ArrayList<CRCFInfoListener>();
+	private final ListenerList<CRCFInfoListener> CRCFListeners = new ListenerList<CRCFInfoListener>(
+			CRCFInfoListener.class);
 
 	// private List<DESCRIPTIONInfoListener> DESCRIPTIONListeners;
 	// private List<SESSIONInfoListener> SESSIONListeners;
-	private final Collection<InfoDataListener> listeners = new ArrayList<InfoDataListener>();
+	private final ListenerList<InfoDataListener> listeners = new ListenerList<InfoDataListener>(
+			InfoDataListener.class);
+
+	/** handlers by device group and info code - INFO_SET */
+	private final InfoHandler[][] handlers = new InfoHandler[DEVICE_GROUPS.length][INFO_TERM
+			- INFO_SET + 1];
 
 	private Thread infoThread;
 
+	/** true while the info thread receives lines */
+	private volatile boolean connected = false;
+
+	/** delivers FB, GA and GL events if set, otherwise the info thread does */
+	private volatile InfoEventDispatcher eventDispatcher = null;
+
 	private final CRCFHandler CRCFHandle = new CRCFHandler();
 
+	/** reused for every line, only touched by the info thread */
+	private final TokenizedLine tokenLine = new TokenizedLine();
+
 	/**
 	 * creates a new SRCP connection on the info channel to handle all info
 	 * communication.
@@ -93,6 +160,7 @@ public class InfoChannel implements Runnable {
 		serverName = pServerName;
 		serverPort = pServerPort;
 		GMListeners.add(CRCFHandle);
+		initHandlers();
 	}
 
 	public void connect() throws SRCPException {
@@ -101,7 +169,7 @@ public class InfoChannel implements Runnable {
 			socket = new Socket();
 			socket.connect(new InetSocketAddress(serverName, serverPort), 5000);
 			out = new SocketWriter(socket);
-			in = new SocketReader(socket);
+			in = new LineReader(socket);
 
 			// Application protocol layer initialization
 			String s = in.read(); // Ignore welcome message
@@ -121,6 +189,7 @@ public class InfoChannel implements Runnable {
 			}
 
 			// Now receive and handle messages continuously.
+			connected = true;
 			infoThread = new Thread(this);
 			infoThread.setDaemon(true);
 			infoThread.start();
@@ -132,6 +201,7 @@ public class InfoChannel implements Runnable {
 	}
 
 	public void disconnect() throws SRCPException {
+		connected = false;
 		try {
 			GMListeners.remove(CRCFHandle);
 			if (socket != null) {
@@ -151,19 +221,25 @@ public class InfoChannel implements Runnable {
 	public void run() {
 		try {
 			while (true) {
-				final String s = in.read();
-				if (s == null) {
-					break;
-				}
-				informListenersReceived(s);
+				informListenersReceived(in.readLine());
 			}
 		} catch (final SocketException e) {
 			return;
 		} catch (final IOException e) {
 			// what to do, if IOException on info channel?
+		} finally {
+			connected = false;
 		}
 	}
 
+	/**
+	 * @return true while info lines are received, false before connecting
+	 *         and after the connection has been closed or lost
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
 	public void addInfoDataListener(final InfoDataListener listener) {
 		listeners.add(listener);
 	}
@@ -172,39 +248,30 @@ public class InfoChannel implements Runnable {
 		listeners.remove(listener);
 	}
 
-	private void informListenersReceived(final String s) {
+	/**
+	 * parse an info line and inform the listeners.
+	 *
+	 * @param s
+	 *            the line, only valid until the next line is read
+	 */
+	private void informListenersReceived(final CharSequence s) {
 		try {
-			final TokenizedLine tokenLine = new TokenizedLine(s);
+			tokenLine.reset(s);
 
 			if (tokenLine.hasMoreElements()) {
 				final double timestamp = tokenLine.nextDoubleToken();
 				final int number = tokenLine.nextIntToken();
 
-				if (number < 200) {
-					tokenLine.nextStringToken();
+				if (number >= INFO_SET && number <= INFO_TERM) {
+					tokenLine.skipToken();
 					final int bus = tokenLine.nextIntToken();
-					final String deviceGroup = tokenLine.nextStringToken()
-							.toUpperCase();
-					if (deviceGroup.equals("FB")) {
-						handleFB(tokenLine, timestamp, number, bus);
-					} else if (deviceGroup.equals("GA")) {
-						handleGA(tokenLine, timestamp, number, bus);
-					} else if (deviceGroup.equals("GL")) {
-						handleGL(tokenLine, timestamp, number, bus);
-					} else if (deviceGroup.equals("LOCK")) {
-						handleLOCK(tokenLine, timestamp, number, bus);
-					} else if (deviceGroup.equals("POWER")) {
-						handlePOWER(tokenLine, timestamp, number, bus);
-					} else if (deviceGroup.equals("SERVER")) {
-						handleSERVER(tokenLine, timestamp, number);
-					} else if (deviceGroup.equals("DESCRIPTION")) {
-						// TODO: parse DESCRIPTION-Info
-					} else if (deviceGroup.equals("SESSION")) {
-						// TODO: parse SESSION-Info
-					} else if (deviceGroup.equals("GM")) {
-						handleGM(tokenLine, timestamp, number, bus);
-					} else if (deviceGroup.equals("SM")) {
-						handleSM(tokenLine, timestamp, number, bus);
+					final int group = tokenLine.nextTokenIndex(DEVICE_GROUPS);
+					if (group >= 0) {
+						final InfoHandler handler = handlers[group][number
+								- INFO_SET];
+						if (handler != null) {
+							handler.handle(tokenLine, timestamp, bus);
+						}
 					}
 				}
 			}
@@ -218,178 +285,271 @@ public class InfoChannel implements Runnable {
 		} catch (final SRCPWrongValueException e) {
 			System.err.println("wrong value in line \"" + s + "\"");
 			e.printStackTrace();
+		} catch (final RuntimeException e) {
+			// a failing listener must not stop the reader thread
+			System.err.println("info listener failed on line \"" + s + "\"");
+			e.printStackTrace();
 		}
 
-		for (final InfoDataListener listener : listeners) {
-			listener.infoDataReceived(s);
+		final InfoDataListener[] dataListeners = listeners.getListeners();
+		if (dataListeners.length > 0) {
+			final String line = s.toString();
+			for (final InfoDataListener listener : dataListeners) {
+				try {
+					listener.infoDataReceived(line);
+				} catch (final RuntimeException e) {
+					System.err.println("info data listener failed on line \""
+							+ line + "\"");
+					e.printStackTrace();
+				}
+			}
 		}
 	}
 
 	private void informListenersSent(final String s) {
-		for (final InfoDataListener listener : listeners) {
+		for (final InfoDataListener listener : listeners.getListeners()) {
 			listener.infoDataSent(s);
 		}
 	}
 
-	private void handleFB(final TokenizedLine tokenLine,
-			final double timestamp, final int number, final int bus)
-			throws SRCPUnsufficientDataException {
-
-		if (number == INFO_SET) {
-			final int address = tokenLine.nextIntToken();
-			final int value = tokenLine.nextIntToken();
-			synchronized (FBListeners) {
-				for (final FBInfoListener l : FBListeners) {
-					l.FBset(timestamp, bus, address, value);
-				}
-			}
-		} else if (number == INFO_TERM) {
-			synchronized (FBListeners) {
-				for (final FBInfoListener l : FBListeners) {
-					l.FBterm(timestamp, bus);
-				}
-			}
+	/**
+	 * inform the listeners of a device now or hand it to the event
+	 * dispatcher.
+	 */
+	private void deliver(final int bus, final int group, final int address,
+			final Runnable event) {
+		final InfoEventDispatcher dispatcher = eventDispatcher;
+		if (dispatcher == null) {
+			event.run();
+		} else {
+			dispatcher.dispatch(bus, group, address, event);
 		}
 	}
 
-	private void handleGL(final TokenizedLine tokenLine,
-			final double timestamp, final int number, final int bus)
-			throws SRCPUnsufficientDataException {
-		final int address = tokenLine.nextIntToken();
-
-		if (number == INFO_SET) {
-			final SRCPLocomotiveDirection drivemode = SRCPLocomotiveDirection
-					.valueOf(Integer.parseInt(tokenLine.nextStringToken()));
-			final int v = tokenLine.nextIntToken();
-			final int vMax = tokenLine.nextIntToken();
-			final Collection<Boolean> functions = new ArrayList<Boolean>();
-
-			while (tokenLine.hasMoreElements()) {
-				functions.add(tokenLine.nextStringToken().equals("1"));
-			}
-
-			final boolean[] f = new boolean[functions.size()];
-			int i = 0;
+	private void setHandler(final int group, final int number,
+			final InfoHandler handler) {
+		handlers[group][number - INFO_SET] = handler;
+	}
 
-			for (final Boolean function : functions) {
-				f[i++] = function.booleanValue();
+	/**
+	 * fill the dispatch table. DESCRIPTION and SESSION infos are not parsed
+	 * yet and have no handlers.
+	 */
+	private void initHandlers() {
+		setHandler(GROUP_FB, INFO_SET, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final int address = tokenLine.nextIntToken();
+				final int value = tokenLine.nextIntToken();
+				deliver(bus, GROUP_FB, address, new Runnable() {
+					public void run() {
+						for (final FBInfoListener l : FBListeners
+								.getListeners()) {
+							l.FBset(timestamp, bus, address, value);
+						}
+					}
+				});
 			}
-			synchronized (GLListeners) {
-				for (final GLInfoListener l : GLListeners) {
-					l.GLset(timestamp, bus, address, drivemode, v, vMax, f);
-				}
+		});
+		setHandler(GROUP_FB, INFO_TERM, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus) {
+				deliver(bus, GROUP_FB, 0, new Runnable() {
+					public void run() {
+						for (final FBInfoListener l : FBListeners
+								.getListeners()) {
+							l.FBterm(timestamp, bus);
+						}
+					}
+				});
 			}
-		} else if (number == INFO_INIT) {
-			final String protocol = tokenLine.nextStringToken();
-			while (tokenLine.hasMoreElements()) {
-				// TODO: get params
-				tokenLine.nextStringToken();
+		});
+
+		setHandler(GROUP_GA, INFO_SET, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final int address = tokenLine.nextIntToken();
+				final int port = tokenLine.nextIntToken();
+				final int value = tokenLine.nextIntToken();
+				deliver(bus, GROUP_GA, address, new Runnable() {
+					public void run() {
+						for (final GAInfoListener l : GAListeners
+								.getListeners()) {
+							l.GAset(timestamp, bus, address, port, value);
+						}
+					}
+				});
 			}
-			synchronized (GLListeners) {
-				for (final GLInfoListener l : GLListeners) {
-					l.GLinit(timestamp, bus, address, protocol, null);
+		});
+		setHandler(GROUP_GA, INFO_INIT, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final int address = tokenLine.nextIntToken();
+				final String protocol = tokenLine.nextStringToken();
+
+				while (tokenLine.hasMoreElements()) {
+					// TODO: get params
+
+					tokenLine.skipToken();
 				}
+				deliver(bus, GROUP_GA, address, new Runnable() {
+					public void run() {
+						for (final GAInfoListener l : GAListeners
+								.getListeners()) {
+							l.GAinit(timestamp, bus, address, protocol, null);
+						}
+					}
+				});
 			}
-		} else if (number == INFO_TERM) {
-			synchronized (GLListeners) {
-				for (final GLInfoListener l : GLListeners) {
-					l.GLterm(timestamp, bus, address);
-				}
+		});
+		setHandler(GROUP_GA, INFO_TERM, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final int address = tokenLine.nextIntToken();
+				deliver(bus, GROUP_GA, address, new Runnable() {
+					public void run() {
+						for (final GAInfoListener l : GAListeners
+								.getListeners()) {
+							l.GAterm(timestamp, bus, address);
+						}
+					}
+				});
 			}
-		}
-	}
-
-	private void handleGA(final TokenizedLine tokenLine,
-			final double timestamp, final int number, final int bus)
-			throws SRCPUnsufficientDataException {
-		final int address = tokenLine.nextIntToken();
-		if (number == INFO_SET) {
-			final int port = tokenLine.nextIntToken();
-			final int value = tokenLine.nextIntToken();
-			synchronized (GAListeners) {
-				for (final GAInfoListener l : GAListeners) {
-					l.GAset(timestamp, bus, address, port, value);
+		});
+
+		setHandler(GROUP_GL, INFO_SET, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final int address = tokenLine.nextIntToken();
+				final SRCPLocomotiveDirection drivemode = SRCPLocomotiveDirection
+						.valueOf(tokenLine.nextIntToken());
+				final int v = tokenLine.nextIntToken();
+				final int vMax = tokenLine.nextIntToken();
+				long mask = 0;
+				int count = 0;
+
+				// functions beyond MAX_FUNCTIONS are ignored
+				while (tokenLine.hasMoreElements()) {
+					final boolean on = tokenLine.nextTokenIndex(ON) == 0;
+					if (count < SRCPLocomotiveFunctions.MAX_FUNCTIONS) {
+						if (on) {
+							mask |= 1L << count;
+						}
+						count++;
+					}
 				}
-			}
-		} else if (number == INFO_INIT) {
-			final String protocol = tokenLine.nextStringToken();
-
-			while (tokenLine.hasMoreElements()) {
-				// TODO: get params
 
-				tokenLine.nextStringToken();
+				final SRCPLocomotiveFunctions f = SRCPLocomotiveFunctions
+						.valueOf(mask, count);
+				deliver(bus, GROUP_GL, address, new Runnable() {
+					public void run() {
+						for (final GLInfoListener l : GLListeners
+								.getListeners()) {
+							l.GLset(timestamp, bus, address, drivemode, v,
+									vMax, f);
+						}
+					}
+				});
 			}
-			synchronized (GAListeners) {
-				for (final GAInfoListener l : GAListeners) {
-					l.GAinit(timestamp, bus, address, protocol, null);
+		});
+		setHandler(GROUP_GL, INFO_INIT, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final int address = tokenLine.nextIntToken();
+				final String protocol = tokenLine.nextStringToken();
+				while (tokenLine.hasMoreElements()) {
+					// TODO: get params
+					tokenLine.skipToken();
 				}
+				deliver(bus, GROUP_GL, address, new Runnable() {
+					public void run() {
+						for (final GLInfoListener l : GLListeners
+								.getListeners()) {
+							l.GLinit(timestamp, bus, address, protocol, null);
+						}
+					}
+				});
 			}
-		} else if (number == INFO_TERM) {
-			synchronized (GAListeners) {
-				for (final GAInfoListener l : GAListeners) {
-					l.GAterm(timestamp, bus, address);
-				}
+		});
+		setHandler(GROUP_GL, INFO_TERM, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final int address = tokenLine.nextIntToken();
+				deliver(bus, GROUP_GL, address, new Runnable() {
+					public void run() {
+						for (final GLInfoListener l : GLListeners
+								.getListeners()) {
+							l.GLterm(timestamp, bus, address);
+						}
+					}
+				});
 			}
-		}
-	}
-
-	private void handleLOCK(final TokenizedLine tokenLine,
-			final double timestamp, final int number, final int bus)
-			throws SRCPUnsufficientDataException {
-
-		final String lockedDeviceGroup = tokenLine.nextStringToken();
-		final int address = tokenLine.nextIntToken();
-		if (number == INFO_SET) {
-			final int duration = tokenLine.nextIntToken();
-			final int sessionID = tokenLine.nextIntToken();
-			synchronized (LOCKListeners) {
-				for (final LOCKInfoListener l : LOCKListeners) {
+		});
+
+		setHandler(GROUP_LOCK, INFO_SET, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final String lockedDeviceGroup = tokenLine.nextStringToken();
+				final int address = tokenLine.nextIntToken();
+				final int duration = tokenLine.nextIntToken();
+				final int sessionID = tokenLine.nextIntToken();
+				for (final LOCKInfoListener l : LOCKListeners.getListeners()) {
 					l.LOCKset(timestamp, bus, address, lockedDeviceGroup,
 							duration, sessionID);
 				}
 			}
-		} else if (number == INFO_TERM) {
-			synchronized (LOCKListeners) {
-				for (final LOCKInfoListener l : LOCKListeners) {
+		});
+		setHandler(GROUP_LOCK, INFO_TERM, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final String lockedDeviceGroup = tokenLine.nextStringToken();
+				final int address = tokenLine.nextIntToken();
+				for (final LOCKInfoListener l : LOCKListeners.getListeners()) {
 					l.LOCKterm(timestamp, bus, address, lockedDeviceGroup);
 				}
 			}
-		}
-	}
-
-	private void handlePOWER(final TokenizedLine tokenLine,
-			final double timestamp, final int number, final int bus)
-			throws SRCPUnsufficientDataException {
-
-		if (number == INFO_SET) {
-			final boolean powerOn = tokenLine.nextStringToken().equals("ON");
-			String freeText = "";
-			while (tokenLine.hasMoreElements()) {
-				freeText += tokenLine.nextStringToken() + " ";
-			}
-			synchronized (POWERListeners) {
-				for (final POWERInfoListener l : POWERListeners) {
+		});
+
+		setHandler(GROUP_POWER, INFO_SET, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final boolean powerOn = tokenLine.nextTokenIndex(POWER_ON) == 0;
+				String freeText = "";
+				while (tokenLine.hasMoreElements()) {
+					freeText += tokenLine.nextStringToken() + " ";
+				}
+				for (final POWERInfoListener l : POWERListeners.getListeners()) {
 					l.POWERset(timestamp, bus, powerOn, freeText);
 				}
 			}
-		} else if (number == INFO_TERM) {
-			synchronized (POWERListeners) {
-				for (final POWERInfoListener l : POWERListeners) {
+		});
+		setHandler(GROUP_POWER, INFO_TERM, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus) {
+				for (final POWERInfoListener l : POWERListeners.getListeners()) {
 					l.POWERterm(timestamp, bus);
 				}
 			}
-		}
-	}
+		});
 
-	private void handleSERVER(final TokenizedLine tokenLine,
-			final double timestamp, final int number)
-			throws SRCPUnsufficientDataException {
+		setHandler(GROUP_SERVER, INFO_SET, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final String action = tokenLine.nextStringToken();
 
-		if (number == INFO_SET) {
-			final String action = tokenLine.nextStringToken();
-
-			synchronized (SERVERListeners) {
-				for (final SERVERInfoListener l : SERVERListeners) {
+				for (final SERVERInfoListener l : SERVERListeners
+						.getListeners()) {
 					if (action.equals("RESETTING")) {
 						l.SERVERreset(timestamp);
 					} else if (action.equals("TERMINATING")) {
@@ -397,141 +557,130 @@ public class InfoChannel implements Runnable {
 					}
 				}
 			}
-		}
-	}
+		});
+
+		setHandler(GROUP_GM, INFO_SET, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException,
+					NumberFormatException, SRCPWrongValueException {
+				final int sendTo = tokenLine.nextIntToken();
+				final int replyTo = tokenLine.nextIntToken();
+				final String messageType = tokenLine.nextStringToken();
+				for (final GMInfoListener l : GMListeners.getListeners()) {
+					l.GMset(timestamp, bus, sendTo, replyTo, messageType,
+							tokenLine);
+				}
+			}
+		});
 
-	private void handleSM(final TokenizedLine tokenLine,
-			final double timestamp, final int number, final int bus)
-			throws SRCPUnsufficientDataException {
-		if (number == INFO_INIT) {
-			final String protocol = tokenLine.nextStringToken();
+		setHandler(GROUP_SM, INFO_INIT, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final String protocol = tokenLine.nextStringToken();
 
-			synchronized (SMListeners) {
-				for (final SMInfoListener l : SMListeners) {
+				for (final SMInfoListener l : SMListeners.getListeners()) {
 					l.SMinit(timestamp, bus, protocol);
 				}
 			}
-		} else if (number == INFO_SET) {
-			final int address = tokenLine.nextIntToken();
-			final String type = tokenLine.nextStringToken();
-			final Collection<String> values = new ArrayList<String>();
-
-			while (tokenLine.hasMoreElements()) {
-				values.add(tokenLine.nextStringToken());
-			}
-			synchronized (SMListeners) {
-				for (final SMInfoListener l : SMListeners) {
-					l.SMset(timestamp, bus, address, type,
-							values.toArray(new String[0]));
+		});
+		setHandler(GROUP_SM, INFO_SET, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus)
+					throws SRCPUnsufficientDataException {
+				final int address = tokenLine.nextIntToken();
+				final String type = tokenLine.nextStringToken();
+				final Collection<String> values = new ArrayList<String>();
+
+				while (tokenLine.hasMoreElements()) {
+					values.add(tokenLine.nextStringToken());
 				}
-			}
-		} else if (number == INFO_TERM) {
-			synchronized (SMListeners) {
-				for (final SMInfoListener l : SMListeners) {
-					l.SMterm(timestamp, bus);
+				final String[] valueArray = values.toArray(new String[0]);
+				for (final SMInfoListener l : SMListeners.getListeners()) {
+					l.SMset(timestamp, bus, address, type, valueArray);
 				}
 			}
-		}
-	}
-
-	/**
-	 * Handles GM Messages, calls all registered GMInfoListeners.
-	 * 
-	 * @param tokenLine
-	 * @param timestamp
-	 * @param number
-	 * @param bus
-	 * @throws SRCPUnsufficientDataException
-	 * @throws NumberFormatException
-	 * @throws SRCPWrongValueException
-	 */
-	private void handleGM(final TokenizedLine tokenLine,
-			final double timestamp, final int number, final int bus)
-			throws SRCPUnsufficientDataException, NumberFormatException,
-			SRCPWrongValueException {
-
-		if (number == INFO_SET) {
-			final int sendTo = tokenLine.nextIntToken();
-			final int replyTo = tokenLine.nextIntToken();
-			final String messageType = tokenLine.nextStringToken();
-			synchronized (GMListeners) {
-				for (final GMInfoListener l : GMListeners) {
-					l.GMset(timestamp, bus, sendTo, replyTo, messageType,
-							tokenLine);
+		});
+		setHandler(GROUP_SM, INFO_TERM, new InfoHandler() {
+			public void handle(final TokenizedLine tokenLine,
+					final double timestamp, final int bus) {
+				for (final SMInfoListener l : SMListeners.getListeners()) {
+					l.SMterm(timestamp, bus);
 				}
 			}
-		}
+		});
 	}
 
-	public synchronized void addFBInfoListener(final FBInfoListener l) {
+	public void addFBInfoListener(final FBInfoListener l) {
 		FBListeners.add(l);
 	}
 
-	public synchronized void addGAInfoListener(final GAInfoListener l) {
+	public void addGAInfoListener(final GAInfoListener l) {
 		GAListeners.add(l);
 	}
 
-	public synchronized void addGLInfoListener(final GLInfoListener l) {
+	public void addGLInfoListener(final GLInfoListener l) {
 		GLListeners.add(l);
 	}
 
-	public synchronized void addLOCKInfoListener(final LOCKInfoListener l) {
+	public void addLOCKInfoListener(final LOCKInfoListener l) {
 		LOCKListeners.add(l);
 	}
 
-	public synchronized void addPOWERInfoListener(final POWERInfoListener l) {
+	public void addPOWERInfoListener(final POWERInfoListener l) {
 		POWERListeners.add(l);
 	}
 
-	public synchronized void addSERVERInfoListener(final SERVERInfoListener l) {
+	public void addSERVERInfoListener(final SERVERInfoListener l) {
 		SERVERListeners.add(l);
 	}
 
-	public synchronized void addSMInfoListener(final SMInfoListener l) {
+	public void addSMInfoListener(final SMInfoListener l) {
 		SMListeners.add(l);
 	}
 
-	public synchronized void addGMInfoListener(final GMInfoListener l) {
+	public void addGMInfoListener(final GMInfoListener l) {
 		GMListeners.add(l);
 	}
 
-	public synchronized void addCRCFInfoListener(final CRCFInfoListener l) {
+	public void addCRCFInfoListener(final CRCFInfoListener l) {
 		CRCFListeners.add(l);
 	}
 
-	public synchronized void removeFBInfoListener(final FBInfoListener l) {
+	public void removeFBInfoListener(final FBInfoListener l) {
 		FBListeners.remove(l);
 	}
 
-	public synchronized void removeGAInfoListener(final GAInfoListener l) {
+	public void removeGAInfoListener(final GAInfoListener l) {
 		GAListeners.remove(l);
 	}
 
-	public synchronized void removeGLInfoListener(final GLInfoListener l) {
+	public void removeGLInfoListener(final GLInfoListener l) {
 		GLListeners.remove(l);
 	}
 
-	public synchronized void removeLOCKInfoListener(final LOCKInfoListener l) {
+	public void removeLOCKInfoListener(final LOCKInfoListener l) {
 		LOCKListeners.remove(l);
 	}
 
-	public synchronized void removePOWERInfoListener(final POWERInfoListener l) {
+	public void removePOWERInfoListener(final POWERInfoListener l) {
 		POWERListeners.remove(l);
 	}
 
-	public synchronized void removeSERVERInfoListener(final SERVERInfoListener l) {
+	public void removeSERVERInfoListener(final SERVERInfoListener l) {
 		SERVERListeners.remove(l);
 	}
 
-	public synchronized void removeSMInfoListener(final SMInfoListener l) {
+	public void removeSMInfoListener(final SMInfoListener l) {
 		SMListeners.remove(l);
 	}
 
-	public synchronized void removeGMInfoListener(final GMInfoListener l) {
+	public void removeGMInfoListener(final GMInfoListener l) {
 		GMListeners.remove(l);
 	}
 
-	public synchronized void removeCRCFInfoListener(final CRCFInfoListener l) {
+	public void removeCRCFInfoListener(final CRCFInfoListener l) {
 		CRCFListeners.remove(l);
 	}
 
@@ -539,6 +688,23 @@ public class InfoChannel implements Runnable {
 		return id;
 	}
 
+	/**
+	 * let a dispatcher deliver FB, GA and GL events on its worker threads,
+	 * so slow listeners do not hold up reading the info channel. Listeners
+	 * of the other device groups are still called by the info thread.
+	 *
+	 * @param pEventDispatcher
+	 *            the dispatcher, <code>null</code> to deliver all events on
+	 *            the info thread again
+	 */
+	public void setEventDispatcher(final InfoEventDispatcher pEventDispatcher) {
+		eventDispatcher = pEventDispatcher;
+	}
+
+	public InfoEventDispatcher getEventDispatcher() {
+		return eventDispatcher;
+	}
+
 	/**
 	 * Handler for CRCF Messages, is registered as GMInfoListener. Calls
 	 * CRCFInfoListener.
@@ -569,21 +735,19 @@ public class InfoChannel implements Runnable {
 				if (tokenLine.hasMoreElements()) {
 					attribute_value = tokenLine.nextURLStringToken();
 				}
-				synchronized (CRCFListeners) {
-					for (final CRCFInfoListener l : CRCFListeners) {
-						if (method.equals("GET")) {
-							l.CRCFget(timestamp, bus, sendTo, replyTo, actor,
-									actor_id, attribute);
-						} else if (method.equals("SET")) {
-							l.CRCFset(timestamp, bus, sendTo, replyTo, actor,
-									actor_id, attribute, attribute_value);
-						} else if (method.equals("INFO")) {
-							l.CRCFinfo(timestamp, bus, sendTo, replyTo, actor,
-									actor_id, attribute, attribute_value);
-						} else if (method.equals("LIST")) {
-							l.CRCFlist(timestamp, bus, sendTo, replyTo, actor,
-									actor_id, attribute);
-						}
+				for (final CRCFInfoListener l : CRCFListeners.getListeners()) {
+					if (method.equals("GET")) {
+						l.CRCFget(timestamp, bus, sendTo, replyTo, actor,
+								actor_id, attribute);
+					} else if (method.equals("SET")) {
+						l.CRCFset(timestamp, bus, sendTo, replyTo, actor,
+								actor_id, attribute, attribute_value);
+					} else if (method.equals("INFO")) {
+						l.CRCFinfo(timestamp, bus, sendTo, replyTo, actor,
+								actor_id, attribute, attribute_value);
+					} else if (method.equals("LIST")) {
+						l.CRCFlist(timestamp, bus, sendTo, replyTo, actor,
+								actor_id, attribute);
 					}
 				}
 			}
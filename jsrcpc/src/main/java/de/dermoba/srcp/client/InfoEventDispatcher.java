@@ -0,0 +1,212 @@
+/*
+ * Created on 17.10.2026
+ *
+ */
+package de.dermoba.srcp.client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Delivers info events to the listeners on a pool of worker threads instead
+ * of the reader thread of the {@link InfoChannel}.
+ *
+ * Events are distributed over a fixed number of lanes, each with a bounded
+ * queue and one worker. The lane is chosen by bus, device group and
+ * address, so all events of one device are delivered in the order they
+ * were received while events of unrelated devices are delivered in
+ * parallel. Events which concern a whole device group (e.g. FB TERM) are
+ * only ordered with the events of address 0.
+ *
+ * Listeners called from a dispatcher must be thread safe.
+ */
+public class InfoEventDispatcher {
+
+	/** what to do with an event if the queue of its lane is full */
+	public enum OverflowPolicy {
+		/** wait for room, the reader thread stalls */
+		BLOCK,
+		/** discard the new event */
+		DROP_NEWEST,
+		/** discard the oldest queued event of the lane */
+		DROP_OLDEST
+	}
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/** how often a reader blocked on a full lane checks for shutdown */
+	private static final long BLOCK_CHECK_MILLIS = 100;
+
+	private static Logger logger = Logger.getLogger(InfoEventDispatcher.class);
+
+	private final BlockingQueue<Runnable>[] queues;
+
+	private final Thread[] workers;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	private volatile boolean running = true;
+
+	/**
+	 * creates a dispatcher with one lane per available processor, the
+	 * default queue capacity and the BLOCK policy.
+	 */
+	public InfoEventDispatcher() {
+		this(Runtime.getRuntime().availableProcessors(),
+				DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * @param pLanes
+	 *            number of lanes (worker threads)
+	 * @param pQueueCapacity
+	 *            number of events each lane can queue
+	 * @param pOverflowPolicy
+	 *            what to do if a lane is full
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public InfoEventDispatcher(final int pLanes, final int pQueueCapacity,
+			final OverflowPolicy pOverflowPolicy) {
+		if (pLanes < 1 || pQueueCapacity < 1) {
+			throw new IllegalArgumentException("lanes and capacity must be positive");
+		}
+		overflowPolicy = pOverflowPolicy;
+		queues = new BlockingQueue[pLanes];
+		workers = new Thread[pLanes];
+		for (int i = 0; i < pLanes; i++) {
+			queues[i] = new ArrayBlockingQueue<Runnable>(pQueueCapacity);
+			workers[i] = new Thread(new Worker(queues[i]),
+					"SRCP info dispatcher " + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * queue an event for delivery.
+	 *
+	 * @param bus
+	 *            bus of the device
+	 * @param deviceGroup
+	 *            device group index of the device
+	 * @param address
+	 *            address of the device
+	 * @param event
+	 *            calls the listeners
+	 */
+	public void dispatch(final int bus, final int deviceGroup,
+			final int address, final Runnable event) {
+		if (!running) {
+			droppedEvents.incrementAndGet();
+			return;
+		}
+		final BlockingQueue<Runnable> queue = queues[lane(bus, deviceGroup,
+				address)];
+		switch (overflowPolicy) {
+		case BLOCK:
+			try {
+				// wake up now and then, the workers may have been shut down
+				while (!queue.offer(event, BLOCK_CHECK_MILLIS,
+						TimeUnit.MILLISECONDS)) {
+					if (!running) {
+						droppedEvents.incrementAndGet();
+						return;
+					}
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				droppedEvents.incrementAndGet();
+			}
+			break;
+		case DROP_NEWEST:
+			if (!queue.offer(event)) {
+				droppedEvents.incrementAndGet();
+			}
+			break;
+		case DROP_OLDEST:
+			while (!queue.offer(event)) {
+				if (queue.poll() != null) {
+					droppedEvents.incrementAndGet();
+				}
+			}
+			break;
+		}
+	}
+
+	private int lane(final int bus, final int deviceGroup, final int address) {
+		int h = (bus * 31 + deviceGroup) * 31 + address;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return (h & 0x7fffffff) % queues.length;
+	}
+
+	/**
+	 * @return the number of events discarded because a lane was full or the
+	 *         dispatcher has been shut down
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	/**
+	 * @return the number of events waiting for delivery
+	 */
+	public int getQueuedEvents() {
+		int queued = 0;
+		for (final BlockingQueue<Runnable> queue : queues) {
+			queued += queue.size();
+		}
+		return queued;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * stops the workers, events still queued are discarded. A reader
+	 * blocked on a full lane gives up within BLOCK_CHECK_MILLIS.
+	 */
+	public void shutdown() {
+		running = false;
+		for (final Thread worker : workers) {
+			worker.interrupt();
+		}
+		for (final BlockingQueue<Runnable> queue : queues) {
+			droppedEvents.addAndGet(queue.size());
+			queue.clear();
+		}
+	}
+
+	private class Worker implements Runnable {
+
+		private final BlockingQueue<Runnable> queue;
+
+		Worker(final BlockingQueue<Runnable> pQueue) {
+			queue = pQueue;
+		}
+
+		public void run() {
+			while (running) {
+				final Runnable event;
+				try {
+					event = queue.take();
+				} catch (final InterruptedException e) {
+					continue;
+				}
+				try {
+					event.run();
+				} catch (final RuntimeException e) {
+					logger.error("info listener failed", e);
+				}
+			}
+		}
+	}
+}
@@ -44,13 +44,25 @@ public class ReceivedExceptionFactory extends Properties {
 	 */
     public static SRCPException parseResponse(String request, String response)
         throws SRCPException, NumberFormatException {
+        return parseResponse(request, new Response (response));
+    }
+
+    /**
+	 * create a SRCPException object from an already parsed protocol reply
+	 *
+	 * @param request	The String sent to the server
+	 * @param resp		The reply received from the server
+	 * @return			an SRCPException object corresponding to the error number
+	 * @throws SRCPException
+	 */
+    public static SRCPException parseResponse(String request, Response resp)
+        throws SRCPException {
         if (instance == null) {
             instance = new ReceivedExceptionFactory();
         }
         if (instance == null) {
         	return null;
         }
-        Response resp = new Response (response);
         SRCPException ex = null;
         try {
             if(resp.getCode() >= 400) {
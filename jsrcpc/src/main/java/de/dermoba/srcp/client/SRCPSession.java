@@ -14,6 +14,7 @@ public class SRCPSession {
     private CommandChannel commandChannel = null;
     private InfoChannel infoChannel = null;
     private ReceivedExceptionFactory exceptionHandler;
+    private SRCPStateCache stateCache = null;
 
     /**
      * creates a new SRCP session by connecting to serverName with port serverPort
@@ -46,6 +47,7 @@ public class SRCPSession {
         	// no interrupt expected :-)
         }
         commandChannel = new CommandChannel(serverName, serverPort);
+        stateCache = new SRCPStateCache(infoChannel, commandChannel);
     }
     
     public void connect() throws SRCPException {
@@ -56,6 +58,7 @@ public class SRCPSession {
     public void disconnect() throws SRCPException {
     	commandChannel.disconnect();
     	infoChannel.disconnect();
+    	stateCache.clear();
     }
 
     public CommandChannel getCommandChannel() {
@@ -66,6 +69,14 @@ public class SRCPSession {
         return infoChannel;
     }
 
+    /**
+     * @return the cache answering GET commands of the devices, disabled
+     *         until {@link SRCPStateCache#setEnabled(boolean)} is called
+     */
+    public SRCPStateCache getStateCache() {
+        return stateCache;
+    }
+
     public String getServerName() {
         return serverName;
     }
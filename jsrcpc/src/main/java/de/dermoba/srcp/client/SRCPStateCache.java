@@ -0,0 +1,572 @@
+/*
+ * Created on 17.10.2026
+ *
+ */
+package de.dermoba.srcp.client;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import de.dermoba.srcp.common.Response;
+import de.dermoba.srcp.common.TokenizedLine;
+import de.dermoba.srcp.common.exception.SRCPException;
+import de.dermoba.srcp.common.exception.SRCPUnsufficientDataException;
+import de.dermoba.srcp.devices.GLData;
+import de.dermoba.srcp.devices.listener.FBInfoListener;
+import de.dermoba.srcp.devices.listener.GAInfoListener;
+import de.dermoba.srcp.devices.listener.GLInfoListener;
+import de.dermoba.srcp.model.locomotives.SRCPLocomotiveDirection;
+import de.dermoba.srcp.model.locomotives.SRCPLocomotiveFunctions;
+
+/**
+ * The state of the GL, GA and FB devices of a session, fed by the info
+ * channel, which answers the GET commands of the devices locally.
+ *
+ * The cache is disabled by default, then every GET goes to the server. When
+ * enabled, a GET is answered from the cache if the entry of the device is
+ * fresh, otherwise it is sent to the server and its reply is stored
+ * (read-through).
+ *
+ * Freshness is tracked per device with the timestamps of the server: SET
+ * commands sent through the devices are counted, while one is in flight
+ * the entry is stale. When the server acknowledges it, the entry stays
+ * stale until state stamped at or after the acknowledge arrives, i.e. the
+ * info the server sends when it has executed the command. Entries are
+ * also stale while the info channel is not connected, and optionally
+ * after a maximum age without confirmation.
+ *
+ * Entries are only updated with state at least as new as the one they
+ * have, so a late GET reply does not overwrite newer info.
+ */
+public class SRCPStateCache implements GLInfoListener, GAInfoListener,
+		FBInfoListener {
+
+	private static final String[] INFO = { "INFO" };
+
+	private final InfoChannel infoChannel;
+
+	private final CommandChannel commandChannel;
+
+	private final ConcurrentMap<Long, GLEntry> locomotives = new ConcurrentHashMap<Long, GLEntry>();
+
+	private final ConcurrentMap<Long, GAEntry> accessories = new ConcurrentHashMap<Long, GAEntry>();
+
+	private final ConcurrentMap<Long, FBEntry> feedbacks = new ConcurrentHashMap<Long, FBEntry>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private volatile boolean enabled = false;
+
+	private volatile long maxAgeNanos = 0;
+
+	SRCPStateCache(final InfoChannel infoChannel,
+			final CommandChannel commandChannel) {
+		this.infoChannel = infoChannel;
+		this.commandChannel = commandChannel;
+	}
+
+	/**
+	 * switches the cache on or off. Switching it on registers it with the
+	 * info channel, switching it off forgets all entries.
+	 */
+	public synchronized void setEnabled(final boolean enabled) {
+		if (this.enabled == enabled) {
+			return;
+		}
+		if (enabled) {
+			infoChannel.addGLInfoListener(this);
+			infoChannel.addGAInfoListener(this);
+			infoChannel.addFBInfoListener(this);
+		} else {
+			infoChannel.removeGLInfoListener(this);
+			infoChannel.removeGAInfoListener(this);
+			infoChannel.removeFBInfoListener(this);
+		}
+		this.enabled = enabled;
+		clear();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param maxAgeMillis
+	 *            time in ms an entry stays fresh after it has been confirmed
+	 *            by the server, 0 for no limit
+	 */
+	public void setMaxAge(final long maxAgeMillis) {
+		maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+	}
+
+	public long getMaxAge() {
+		return TimeUnit.NANOSECONDS.toMillis(maxAgeNanos);
+	}
+
+	/**
+	 * forgets all entries.
+	 */
+	public void clear() {
+		locomotives.clear();
+		accessories.clear();
+		feedbacks.clear();
+	}
+
+	/**
+	 * @return the number of GETs answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of GETs sent to the server while enabled
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private static long key(final int bus, final int address) {
+		return ((long) bus << 32) | (address & 0xffffffffL);
+	}
+
+	/**
+	 * SRCP syntax GET &lt;bus&gt; GL &lt;addr&gt;
+	 *
+	 * @return a copy of the cached data, the caller may change its array of
+	 *         functions
+	 */
+	public GLData getGL(final int bus, final int address,
+			final String command) throws SRCPException {
+		if (!enabled) {
+			return new GLData(commandChannel.send(command));
+		}
+		final GLEntry entry = locomotives.get(key(bus, address));
+		if (entry != null) {
+			synchronized (entry) {
+				if (entry.data != null && isFresh(entry)) {
+					hits.incrementAndGet();
+					return entry.data.copy();
+				}
+			}
+		}
+		misses.incrementAndGet();
+		final GLData data = new GLData(commandChannel.send(command));
+		updateGL(data);
+		return data.copy();
+	}
+
+	/**
+	 * SRCP syntax GET &lt;bus&gt; GA &lt;addr&gt; &lt;port&gt;
+	 */
+	public String getGA(final int bus, final int address, final int port,
+			final String command) throws SRCPException {
+		if (!enabled) {
+			return commandChannel.send(command);
+		}
+		final GAEntry entry = accessories.get(key(bus, address));
+		if (entry != null && port >= 0) {
+			synchronized (entry) {
+				if (entry.hasPort(port) && isFresh(entry)) {
+					hits.incrementAndGet();
+					return formatTimestamp(entry.timestamps[port]) + " 100 INFO "
+							+ bus + " GA " + address + " " + port + " "
+							+ entry.values[port];
+				}
+			}
+		}
+		misses.incrementAndGet();
+		final String reply = commandChannel.send(command);
+		final TokenizedLine line = parseInfo(reply, "GA");
+		if (line != null) {
+			try {
+				final double timestamp = new Response(reply).getTimestamp();
+				final int replyAddress = line.nextIntToken();
+				final int replyPort = line.nextIntToken();
+				final int value = line.nextIntToken();
+				GAset(timestamp, bus, replyAddress, replyPort, value);
+			} catch (final SRCPUnsufficientDataException e) {
+				// not cached
+			} catch (final NumberFormatException e) {
+				// not cached
+			}
+		}
+		return reply;
+	}
+
+	/**
+	 * SRCP syntax GET &lt;bus&gt; FB &lt;addr&gt;
+	 */
+	public String getFB(final int bus, final int address, final String command)
+			throws SRCPException {
+		if (!enabled) {
+			return commandChannel.send(command);
+		}
+		final FBEntry entry = feedbacks.get(key(bus, address));
+		if (entry != null) {
+			synchronized (entry) {
+				if (entry.timestamp >= 0 && isFresh(entry)) {
+					hits.incrementAndGet();
+					return formatTimestamp(entry.timestamp) + " 100 INFO "
+							+ bus + " FB " + address + " " + entry.value;
+				}
+			}
+		}
+		misses.incrementAndGet();
+		final String reply = commandChannel.send(command);
+		final TokenizedLine line = parseInfo(reply, "FB");
+		if (line != null) {
+			try {
+				final double timestamp = new Response(reply).getTimestamp();
+				final int replyAddress = line.nextIntToken();
+				final int value = line.nextIntToken();
+				FBset(timestamp, bus, replyAddress, value);
+			} catch (final SRCPUnsufficientDataException e) {
+				// not cached
+			} catch (final NumberFormatException e) {
+				// not cached
+			}
+		}
+		return reply;
+	}
+
+	/**
+	 * @return the line positioned behind the device group if reply is an
+	 *         INFO 100 of the group, null otherwise
+	 */
+	private static TokenizedLine parseInfo(final String reply,
+			final String group) {
+		final TokenizedLine line = new TokenizedLine(reply);
+		try {
+			line.nextDoubleToken();
+			if (line.nextIntToken() != 100
+					|| line.nextTokenIndex(INFO) != 0) {
+				return null;
+			}
+			line.nextIntToken();
+			if (!group.equals(line.nextStringToken())) {
+				return null;
+			}
+			return line;
+		} catch (final SRCPUnsufficientDataException e) {
+			return null;
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * sends a SET command of a GL, the entry of the locomotive is stale
+	 * until its new state arrives.
+	 */
+	public String sendGL(final int bus, final int address,
+			final String command) throws SRCPException {
+		return send(enabled ? glEntry(bus, address)
+				: null, command);
+	}
+
+	/** non-blocking variant of {@link #sendGL(int, int, String)} */
+	public CompletableFuture<Response> sendGLAsync(final int bus,
+			final int address, final String command) {
+		return sendAsync(enabled ? glEntry(bus, address) : null, command);
+	}
+
+	/**
+	 * sends a SET command of a GA, the entry of the accessory is stale until
+	 * its new state arrives.
+	 */
+	public String sendGA(final int bus, final int address,
+			final String command) throws SRCPException {
+		return send(enabled ? gaEntry(bus, address)
+				: null, command);
+	}
+
+	/** non-blocking variant of {@link #sendGA(int, int, String)} */
+	public CompletableFuture<Response> sendGAAsync(final int bus,
+			final int address, final String command) {
+		return sendAsync(enabled ? gaEntry(bus, address) : null, command);
+	}
+
+	/**
+	 * sends a SET command of a FB, the entry of the feedback is stale until
+	 * its new state arrives.
+	 */
+	public String sendFB(final int bus, final int address,
+			final String command) throws SRCPException {
+		return send(enabled ? fbEntry(bus, address)
+				: null, command);
+	}
+
+	/** non-blocking variant of {@link #sendFB(int, int, String)} */
+	public CompletableFuture<Response> sendFBAsync(final int bus,
+			final int address, final String command) {
+		return sendAsync(enabled ? fbEntry(bus, address) : null, command);
+	}
+
+	private String send(final Entry entry, final String command)
+			throws SRCPException {
+		if (entry == null) {
+			return commandChannel.send(command);
+		}
+		entry.commandSent();
+		double acknowledged = Double.NaN;
+		try {
+			final String reply = commandChannel.send(command);
+			try {
+				acknowledged = new Response(reply).getTimestamp();
+			} catch (final SRCPUnsufficientDataException e) {
+				// treated like a failed command
+			}
+			return reply;
+		} finally {
+			entry.commandDone(acknowledged);
+		}
+	}
+
+	private CompletableFuture<Response> sendAsync(final Entry entry,
+			final String command) {
+		if (entry == null) {
+			return commandChannel.sendAsync(command);
+		}
+		entry.commandSent();
+		final CompletableFuture<Response> reply = commandChannel
+				.sendAsync(command);
+		reply.whenComplete(new BiConsumer<Response, Throwable>() {
+			public void accept(final Response r, final Throwable t) {
+				entry.commandDone(t == null ? r.getTimestamp() : Double.NaN);
+			}
+		});
+		return reply;
+	}
+
+	private GLEntry glEntry(final int bus, final int address) {
+		final Long key = key(bus, address);
+		final GLEntry entry = locomotives.get(key);
+		if (entry != null) {
+			return entry;
+		}
+		return putIfAbsent(locomotives, key, new GLEntry());
+	}
+
+	private GAEntry gaEntry(final int bus, final int address) {
+		final Long key = key(bus, address);
+		final GAEntry entry = accessories.get(key);
+		if (entry != null) {
+			return entry;
+		}
+		return putIfAbsent(accessories, key, new GAEntry());
+	}
+
+	private FBEntry fbEntry(final int bus, final int address) {
+		final Long key = key(bus, address);
+		final FBEntry entry = feedbacks.get(key);
+		if (entry != null) {
+			return entry;
+		}
+		return putIfAbsent(feedbacks, key, new FBEntry());
+	}
+
+	private static <E> E putIfAbsent(final ConcurrentMap<Long, E> map,
+			final Long key, final E newEntry) {
+		final E entry = map.putIfAbsent(key, newEntry);
+		return entry != null ? entry : newEntry;
+	}
+
+	/** must be called holding the monitor of the entry */
+	private boolean isFresh(final Entry entry) {
+		if (entry.pendingCommands > 0
+				|| entry.timestamp < entry.acknowledged
+				|| !infoChannel.isConnected()) {
+			return false;
+		}
+		final long maxAge = maxAgeNanos;
+		return maxAge == 0 || System.nanoTime() - entry.confirmed <= maxAge;
+	}
+
+	private void updateGL(final GLData data) {
+		final GLEntry entry = glEntry(data.bus, data.address);
+		synchronized (entry) {
+			if (entry.confirm(data.timestamp)) {
+				entry.data = data;
+			}
+		}
+	}
+
+	public void GLset(final double timestamp, final int bus,
+			final int address, final SRCPLocomotiveDirection drivemode,
+			final int v, final int vMax, final boolean[] functions) {
+		GLset(timestamp, bus, address, drivemode, v, vMax,
+				SRCPLocomotiveFunctions.valueOf(functions));
+	}
+
+	@Override
+	public void GLset(final double timestamp, final int bus,
+			final int address, final SRCPLocomotiveDirection drivemode,
+			final int v, final int vMax,
+			final SRCPLocomotiveFunctions functions) {
+		updateGL(new GLData(timestamp, bus, address, drivemode, v, vMax,
+				functions));
+	}
+
+	public void GLinit(final double timestamp, final int bus,
+			final int address, final String protocol, final String[] params) {
+		// the state is reported by a following set
+	}
+
+	public void GLterm(final double timestamp, final int bus,
+			final int address) {
+		locomotives.remove(key(bus, address));
+	}
+
+	public void GAset(final double timestamp, final int bus,
+			final int address, final int port, final int value) {
+		if (port < 0) {
+			return;
+		}
+		final GAEntry entry = gaEntry(bus, address);
+		synchronized (entry) {
+			entry.set(timestamp, port, value);
+		}
+	}
+
+	public void GAinit(final double timestamp, final int bus,
+			final int address, final String protocol, final String[] params) {
+		// the state is reported by a following set
+	}
+
+	public void GAterm(final double timestamp, final int bus,
+			final int address) {
+		accessories.remove(key(bus, address));
+	}
+
+	public void FBset(final double timestamp, final int bus,
+			final int address, final int value) {
+		final FBEntry entry = fbEntry(bus, address);
+		synchronized (entry) {
+			if (entry.confirm(timestamp)) {
+				entry.value = value;
+			}
+		}
+	}
+
+	public void FBterm(final double timestamp, final int bus) {
+		final Iterator<Long> keys = feedbacks.keySet().iterator();
+		while (keys.hasNext()) {
+			if ((keys.next() >> 32) == bus) {
+				keys.remove();
+			}
+		}
+	}
+
+	/**
+	 * formats a timestamp of the server like the server does, seconds with
+	 * three decimals.
+	 */
+	static String formatTimestamp(final double timestamp) {
+		final long millis = Math.round(timestamp * 1000);
+		final long fraction = millis % 1000;
+		return (millis / 1000) + (fraction < 10 ? ".00" : fraction < 100 ? ".0"
+				: ".") + fraction;
+	}
+
+	/**
+	 * the state of one device, guarded by its monitor.
+	 */
+	private static class Entry {
+
+		/** server time of the state, -1 while it is unknown */
+		double timestamp = -1;
+
+		/** server time the last SET command was acknowledged */
+		double acknowledged = -1;
+
+		/** SET commands sent but not answered yet */
+		int pendingCommands = 0;
+
+		/** local time the state was last confirmed by the server */
+		long confirmed;
+
+		/**
+		 * @return true if state stamped at timestamp is not older than the
+		 *         current one and should be taken
+		 */
+		boolean confirm(final double timestamp) {
+			if (timestamp < this.timestamp) {
+				return false;
+			}
+			this.timestamp = timestamp;
+			confirmed = System.nanoTime();
+			return true;
+		}
+
+		synchronized void commandSent() {
+			pendingCommands++;
+		}
+
+		/**
+		 * @param acknowledged
+		 *            the timestamp of the acknowledge, NaN if the command
+		 *            failed
+		 */
+		synchronized void commandDone(final double acknowledged) {
+			pendingCommands--;
+			if (acknowledged > this.acknowledged) {
+				this.acknowledged = acknowledged;
+			}
+		}
+	}
+
+	private static final class GLEntry extends Entry {
+
+		GLData data;
+	}
+
+	private static final class GAEntry extends Entry {
+
+		int[] values = new int[2];
+
+		/** server time per port, -1 if the port is unknown */
+		double[] timestamps = { -1, -1 };
+
+		boolean hasPort(final int port) {
+			return port < timestamps.length && timestamps[port] >= 0;
+		}
+
+		void set(final double timestamp, final int port, final int value) {
+			if (port >= timestamps.length) {
+				final int length = Math.max(port + 1, timestamps.length * 2);
+				final int[] newValues = new int[length];
+				final double[] newTimestamps = new double[length];
+				System.arraycopy(values, 0, newValues, 0, values.length);
+				System.arraycopy(timestamps, 0, newTimestamps, 0,
+						timestamps.length);
+				for (int i = timestamps.length; i < length; i++) {
+					newTimestamps[i] = -1;
+				}
+				values = newValues;
+				timestamps = newTimestamps;
+			}
+			if (timestamp < timestamps[port]) {
+				return;
+			}
+			values[port] = value;
+			timestamps[port] = timestamp;
+			if (timestamp > this.timestamp) {
+				this.timestamp = timestamp;
+			}
+			confirmed = System.nanoTime();
+		}
+	}
+
+	private static final class FBEntry extends Entry {
+
+		int value;
+	}
+}
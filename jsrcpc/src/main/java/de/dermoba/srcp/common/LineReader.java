@@ -0,0 +1,181 @@
+/*
+ * Created on 17.10.2026
+ *
+ */
+package de.dermoba.srcp.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reads LF terminated lines from a socket. In contrast to
+ * {@link SocketReader} the input is pulled in blocks into a reusable byte
+ * buffer and lines are framed and decoded there, so reading a line costs
+ * neither a call per character nor any intermediate buffers.
+ *
+ * A trailing CR (CRLF line ends) and any other leading or trailing white
+ * space is removed, just like {@link SocketReader#read()} does.
+ *
+ * Instances are not thread safe, every socket is expected to be read by a
+ * single thread.
+ */
+public class LineReader {
+
+    private static final int LINEFEED = 0x0a;
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final InputStream inputStream;
+
+    private final Charset charset = Charset.defaultCharset();
+
+    private byte[] buffer;
+
+    /** start of the data not yet returned as a line */
+    private int position = 0;
+
+    /** end of the valid data in the buffer */
+    private int limit = 0;
+
+    private char[] lineChars = new char[256];
+
+    private CharBuffer lineView = CharBuffer.wrap(lineChars);
+
+    public LineReader(Socket communicationSocket) throws IOException {
+        this(communicationSocket.getInputStream());
+    }
+
+    public LineReader(InputStream pInputStream) {
+        this(pInputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public LineReader(InputStream pInputStream, int bufferSize) {
+        inputStream = pInputStream;
+        buffer = new byte[bufferSize];
+    }
+
+    /**
+     * read the next line.
+     *
+     * @return the trimmed line as String
+     * @throws IOException
+     *             if the socket fails or has been closed by the peer
+     */
+    public String read() throws IOException {
+        return readLine().toString();
+    }
+
+    /**
+     * read the next line without creating a String for it. The returned
+     * sequence is a view on an internal buffer and is only valid until the
+     * next call to one of the read methods of this reader; call
+     * <code>toString()</code> on it to keep the line.
+     *
+     * @return the trimmed line
+     * @throws IOException
+     *             if the socket fails or has been closed by the peer
+     */
+    public CharSequence readLine() throws IOException {
+        int scan = position;
+        int end;
+        while (true) {
+            end = indexOfLinefeed(scan);
+            if (end >= 0) {
+                break;
+            }
+            scan = limit;
+            int shift = fill();
+            scan -= shift;
+        }
+        final int start = position;
+        position = end + 1;
+        return decode(start, end);
+    }
+
+    private int indexOfLinefeed(int from) {
+        final byte[] b = buffer;
+        for (int i = from; i < limit; i++) {
+            if (b[i] == LINEFEED) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * read more data into the buffer, compacting or growing it if there is
+     * no room left.
+     *
+     * @return the number of bytes the pending data has been moved towards
+     *         the start of the buffer
+     */
+    private int fill() throws IOException {
+        int shift = 0;
+        if (limit == buffer.length) {
+            if (position > 0) {
+                shift = position;
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            } else {
+                final byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, limit);
+                buffer = larger;
+            }
+        }
+        final int count = inputStream.read(buffer, limit, buffer.length - limit);
+        if (count < 0) {
+            throw new EOFException();
+        }
+        limit += count;
+        return shift;
+    }
+
+    private CharSequence decode(int start, int end) {
+        final byte[] b = buffer;
+        while (start < end && (b[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (b[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        final int length = end - start;
+        boolean ascii = true;
+        for (int i = start; i < end; i++) {
+            if (b[i] < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        if (!ascii) {
+            // rare case, let the platform charset do the work
+            final String line = new String(b, start, length, charset);
+            ensureLineCapacity(line.length());
+            line.getChars(0, line.length(), lineChars, 0);
+            return view(line.length());
+        }
+        ensureLineCapacity(length);
+        final char[] c = lineChars;
+        for (int i = 0; i < length; i++) {
+            c[i] = (char) b[start + i];
+        }
+        return view(length);
+    }
+
+    private void ensureLineCapacity(int length) {
+        if (lineChars.length < length) {
+            lineChars = new char[Math.max(length, lineChars.length * 2)];
+            lineView = CharBuffer.wrap(lineChars);
+        }
+    }
+
+    private CharSequence view(int length) {
+        lineView.clear();
+        lineView.limit(length);
+        return lineView;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Created on 17.10.2026
+ *
+ */
+package de.dermoba.srcp.common;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * A copy-on-write list of listeners. Adding and removing copies the array
+ * and publishes the new one, reading is a single volatile read of the
+ * current array. Listeners can therefore be informed without holding a
+ * lock, and a slow listener never blocks somebody registering another one.
+ *
+ * @param <L>
+ *            the listener type
+ */
+public class ListenerList<L> {
+
+    private final L[] empty;
+
+    private volatile L[] listeners;
+
+    @SuppressWarnings("unchecked")
+    public ListenerList(Class<L> listenerType) {
+        empty = (L[]) Array.newInstance(listenerType, 0);
+        listeners = empty;
+    }
+
+    public synchronized void add(L listener) {
+        final L[] current = listeners;
+        final L[] copy = Arrays.copyOf(current, current.length + 1);
+        copy[current.length] = listener;
+        listeners = copy;
+    }
+
+    /**
+     * removes the first occurrence of the listener.
+     *
+     * @return true if the listener was registered
+     */
+    public synchronized boolean remove(L listener) {
+        final L[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].equals(listener)) {
+                if (current.length == 1) {
+                    listeners = empty;
+                } else {
+                    final L[] copy = Arrays.copyOf(current,
+                            current.length - 1);
+                    System.arraycopy(current, i + 1, copy, i,
+                            current.length - i - 1);
+                    listeners = copy;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the listeners registered at the time of the call. The array must not
+     * be modified.
+     */
+    public L[] getListeners() {
+        return listeners;
+    }
+
+    public boolean isEmpty() {
+        return listeners.length == 0;
+    }
+}
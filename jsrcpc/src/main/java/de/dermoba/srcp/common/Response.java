@@ -17,6 +17,7 @@ public class Response {
 
 	private static Logger LOGGER = Logger.getLogger(Response.class);
 
+	private final String responseString;
 	private double timestamp;
 	private int code;
 	private String detail;
@@ -31,17 +32,12 @@ public class Response {
 	 */
 	public Response(final String responseString)
 			throws SRCPUnsufficientDataException {
+		this.responseString = responseString;
 		final TokenizedLine line = new TokenizedLine(responseString);
 		try {
 			timestamp = line.nextDoubleToken();
 			code = line.nextIntToken();
-			final StringBuffer detailTokens = new StringBuffer();
-			while (line.hasMoreElements()) {
-				if (detailTokens.length() > 0) {
-					detailTokens.append(' ');
-				}
-				detailTokens.append(line.nextStringToken());
-			}
+			detail = line.remainder();
 		} catch (final NumberFormatException e) {
 			LOGGER.error("error parsing response: " + responseString);
 			throw new SRCPUnsufficientDataException(e);
@@ -68,4 +64,15 @@ public class Response {
 	public String getDetail() {
 		return detail;
 	}
+
+	/**
+	 * @return the string returned by the server
+	 */
+	public String getResponseString() {
+		return responseString;
+	}
+
+	public String toString() {
+		return responseString;
+	}
 }
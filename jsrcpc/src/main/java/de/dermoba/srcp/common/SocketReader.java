@@ -8,6 +8,11 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.Socket;
 
+/**
+ * @deprecated reads the socket one character at a time, use
+ *             {@link LineReader} instead.
+ */
+@Deprecated
 public class SocketReader {
 
     private static final int LINEFEED = 0x0a;
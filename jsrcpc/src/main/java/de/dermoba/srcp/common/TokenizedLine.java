@@ -6,7 +6,6 @@ package de.dermoba.srcp.common;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.util.ArrayList;
 
 import de.dermoba.srcp.common.exception.SRCPUnsufficientDataException;
 import de.dermoba.srcp.common.exception.SRCPWrongValueException;
@@ -14,7 +13,13 @@ import de.dermoba.srcp.common.exception.SRCPWrongValueException;
 /**
  * create an object containing a complete line and pass tokens taken
  * from this line.
- * tokens will be decoded as URL in RFC 2396. 
+ * tokens will be decoded as URL in RFC 2396.
+ *
+ * The line is not split up front, a cursor walks over it instead. Numbers
+ * are parsed in place, so only {@link #nextStringToken()} creates a String
+ * for a token. An instance can be reused for the next line with
+ * {@link #reset(CharSequence)}; the line must not change while it is
+ * tokenized.
  *
  * @author kurt
  * @author Michael Oppenauer
@@ -22,29 +27,98 @@ import de.dermoba.srcp.common.exception.SRCPWrongValueException;
  */
 public class TokenizedLine {
 
-    private ArrayList<String> tokens = null;
-    private int tokenPosition = 0;
+    /** powers of ten which are exactly representable as double */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+            1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+            1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /** largest mantissa which converts to double without rounding */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private CharSequence line;
+    private int length;
+
+    /** start of the next token or length if there is none */
+    private int position;
+
+/**
+ * create a new tokenizer without a line, use {@link #reset(CharSequence)}
+ * to pass one.
+ */
+    public TokenizedLine() {
+        this("");
+    }
 
 /**
  * create a new tokenizer for a complete String.
  *
  * @param in	String containing white space
  */
-    public TokenizedLine(String in) {
-        tokens = new ArrayList<String>();
-        String[] t = in.split("\\s");
-        for (int i = 0; i < t.length; i++) {
-            if (t[i].length() > 0) {
-                tokens.add(t[i]);
+    public TokenizedLine(CharSequence in) {
+        reset(in);
+    }
+
+/**
+ * start tokenizing a new line.
+ *
+ * @param in	line containing white space
+ * @return		this tokenizer
+ */
+    public TokenizedLine reset(CharSequence in) {
+        line = in;
+        length = in.length();
+        position = 0;
+        skipWhiteSpace();
+        return this;
+    }
+
+    public String nextStringToken() throws SRCPUnsufficientDataException {
+        final int start = position;
+        final int end = consumeToken();
+        return line.subSequence(start, end).toString();
+    }
+
+    /**
+     * skip the next token without looking at it.
+     */
+    public void skipToken() throws SRCPUnsufficientDataException {
+        consumeToken();
+    }
+
+    /**
+     * compare the next token with a list of candidates, like equals().
+     *
+     * @param candidates	the expected tokens
+     * @return				the index of the matching candidate or -1
+     */
+    public int nextTokenIndex(String[] candidates)
+            throws SRCPUnsufficientDataException {
+        final int start = position;
+        final int end = consumeToken();
+        final int tokenLength = end - start;
+        for (int i = 0; i < candidates.length; i++) {
+            final String candidate = candidates[i];
+            if (candidate.length() == tokenLength
+                    && regionMatches(start, candidate)) {
+                return i;
             }
         }
+        return -1;
     }
 
-    public String nextStringToken() throws SRCPUnsufficientDataException {
-        if (tokenPosition >= tokens.size()) {
-            throw new SRCPUnsufficientDataException();
+    /**
+     * take the rest of the line as it is, including inner white space.
+     *
+     * @return	the remaining tokens, an empty String if there are none
+     */
+    public String remainder() {
+        int end = length;
+        while (end > position && isWhiteSpace(line.charAt(end - 1))) {
+            end--;
         }
-        return tokens.get(tokenPosition++).trim();
+        final String rest = line.subSequence(position, end).toString();
+        position = length;
+        return rest;
     }
 
     public String nextURLStringToken() throws SRCPUnsufficientDataException, SRCPWrongValueException {
@@ -54,12 +128,17 @@ public class TokenizedLine {
 			throw new SRCPWrongValueException(e);
 		}
     }
-    
+
     public double nextDoubleToken() throws SRCPUnsufficientDataException, NumberFormatException  {
-        return Double.parseDouble(nextStringToken());
+        final int start = position;
+        final int end = consumeToken();
+        return parseDouble(start, end);
     }
+
     public int nextIntToken() throws SRCPUnsufficientDataException, NumberFormatException  {
-        return Integer.parseInt(nextStringToken());
+        final int start = position;
+        final int end = consumeToken();
+        return parseInt(start, end);
     }
 
     public int nextIntToken(int min) throws SRCPUnsufficientDataException, NumberFormatException, SRCPWrongValueException {
@@ -75,10 +154,142 @@ public class TokenizedLine {
     }
 
     public boolean hasMoreElements() {
-        return tokenPosition < tokens.size();
+        return position < length;
     }
 
     public String toString() {
-        return tokens.toString();
+        final StringBuilder buffer = new StringBuilder("[");
+        int i = 0;
+        while (i < length) {
+            while (i < length && isWhiteSpace(line.charAt(i))) {
+                i++;
+            }
+            final int start = i;
+            while (i < length && !isWhiteSpace(line.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (buffer.length() > 1) {
+                    buffer.append(", ");
+                }
+                buffer.append(line, start, i);
+            }
+        }
+        return buffer.append(']').toString();
+    }
+
+    /**
+     * move the cursor behind the next token.
+     *
+     * @return the end of the token
+     */
+    private int consumeToken() throws SRCPUnsufficientDataException {
+        if (position >= length) {
+            throw new SRCPUnsufficientDataException();
+        }
+        int end = position;
+        while (end < length && !isWhiteSpace(line.charAt(end))) {
+            end++;
+        }
+        position = end;
+        skipWhiteSpace();
+        return end;
+    }
+
+    private void skipWhiteSpace() {
+        while (position < length && isWhiteSpace(line.charAt(position))) {
+            position++;
+        }
+    }
+
+    /** separators and control characters, like a split at \s plus trim() */
+    private static boolean isWhiteSpace(char c) {
+        return c <= ' ';
+    }
+
+    private boolean regionMatches(int start, String candidate) {
+        for (int i = 0; i < candidate.length(); i++) {
+            final char c = line.charAt(start + i);
+            final char d = candidate.charAt(i);
+            if (c != d) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** same result and exceptions as Integer.parseInt() for the token */
+    private int parseInt(int start, int end) throws NumberFormatException {
+        int i = start;
+        boolean negative = false;
+        final char first = line.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) {
+                throw numberFormatException(start, end);
+            }
+        }
+        // accumulate negatively, the negative range is the larger one
+        final int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        final int multiplyLimit = limit / 10;
+        int result = 0;
+        for (; i < end; i++) {
+            final int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                throw numberFormatException(start, end);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormatException(start, end);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * parses plain decimals like timestamps in place. The mantissa and the
+     * power of ten are both exact doubles, so the division is correctly
+     * rounded and gives the same result as Double.parseDouble(); anything
+     * else is handed to Double.parseDouble().
+     */
+    private double parseDouble(int start, int end) throws NumberFormatException {
+        int i = start;
+        boolean negative = false;
+        final char first = line.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            final char c = line.charAt(i);
+            if (c == '.' && !fraction) {
+                fraction = true;
+            } else if (c >= '0' && c <= '9' && mantissa < MAX_EXACT_MANTISSA / 10) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else {
+                break;
+            }
+        }
+        if (i < end || digits == 0 || mantissa >= MAX_EXACT_MANTISSA
+                || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(line.subSequence(start, end).toString());
+        }
+        final double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private NumberFormatException numberFormatException(int start, int end) {
+        return new NumberFormatException("For input string: \""
+                + line.subSequence(start, end) + "\"");
     }
 }
@@ -4,7 +4,10 @@
  */
 package de.dermoba.srcp.devices;
 
+import java.util.concurrent.CompletableFuture;
+
 import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.common.Response;
 import de.dermoba.srcp.common.exception.SRCPException;
 
 public class FB {
@@ -36,15 +39,30 @@ public class FB {
                         + paramBuf);
     }
 
-    /** SRCP syntax GET &lt;bus&gt; FB &lt;addr&gt; */
+    /**
+     * SRCP syntax GET &lt;bus&gt; FB &lt;addr&gt;, answered by the state
+     * cache of the session if it is enabled and knows the current state.
+     */
     public String get(int address) throws SRCPException {
-        return session.getCommandChannel()
-                .send("GET " + bus + " FB " + address);
+        return session.getStateCache().getFB(bus, address,
+                "GET " + bus + " FB " + address);
+    }
+
+    /** non-blocking variant of {@link #get(int)} */
+    public CompletableFuture<Response> getAsync(int address) {
+        return session.getCommandChannel().sendAsync(
+                "GET " + bus + " FB " + address);
     }
 
     /** SRCP syntax: SET &lt;bus&gt; FB &lt;addr&gt; &lt;value&gt; */
     public String set(int address, int value) throws SRCPException {
-        return session.getCommandChannel().send(
+        return session.getStateCache().sendFB(bus, address,
+                "SET " + bus + " FB " + address + " " + value);
+    }
+
+    /** non-blocking variant of {@link #set(int, int)} */
+    public CompletableFuture<Response> setAsync(int address, int value) {
+        return session.getStateCache().sendFBAsync(bus, address,
                 "SET " + bus + " FB " + address + " " + value);
     }
 
@@ -4,7 +4,10 @@
  */
 package de.dermoba.srcp.devices;
 
+import java.util.concurrent.CompletableFuture;
+
 import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.common.Response;
 import de.dermoba.srcp.common.exception.SRCPException;
 
 public class GA {
@@ -55,24 +58,48 @@ public class GA {
      * &lt;delay&gt;
      */
     public String set(int port, int value, int delay) throws SRCPException {
+        return session.getStateCache().sendGA(bus, address,
+                setCommand(port, value, delay));
+    }
+
+    /**
+     * non-blocking variant of {@link #set(int, int, int)}, the returned
+     * future is completed when the server has acknowledged the command.
+     */
+    public CompletableFuture<Response> setAsync(int port, int value, int delay) {
+        return session.getStateCache().sendGAAsync(bus, address,
+                setCommand(port, value, delay));
+    }
+
+    private String setCommand(int port, int value, int delay) {
         if (session.isOldProtocol()) {
-            return session.getCommandChannel().send(
-                    "SET  GA " + protocol + " " + address + " " + port + " "
-                            + value + " " + delay);
+            return "SET  GA " + protocol + " " + address + " " + port + " "
+                    + value + " " + delay;
         }
-        return session.getCommandChannel().send(
-                "SET " + bus + " GA " + address + " " + port + " " + value
-                        + " " + delay);
+        return "SET " + bus + " GA " + address + " " + port + " " + value
+                + " " + delay;
     }
 
-    /** SRCP syntax GET &lt;bus&gt; GA &lt;addr&gt; &lt;port&gt; */
+    /**
+     * SRCP syntax GET &lt;bus&gt; GA &lt;addr&gt; &lt;port&gt;, answered by
+     * the state cache of the session if it is enabled and knows the current
+     * state.
+     */
     public String get(int port) throws SRCPException {
+        return session.getStateCache().getGA(bus, address, port,
+                getCommand(port));
+    }
+
+    /** non-blocking variant of {@link #get(int)} */
+    public CompletableFuture<Response> getAsync(int port) {
+        return session.getCommandChannel().sendAsync(getCommand(port));
+    }
+
+    private String getCommand(int port) {
         if (session.isOldProtocol()) {
-            return session.getCommandChannel().send(
-                    "GET GA " + protocol + " " + address + " " + port);
+            return "GET GA " + protocol + " " + address + " " + port;
         }
-        return session.getCommandChannel().send(
-                "GET " + bus + " GA " + address + " " + port);
+        return "GET " + bus + " GA " + address + " " + port;
     }
 
     /** SRCP syntax: TERM &lt;bus&gt; GA &lt;addr&gt; */
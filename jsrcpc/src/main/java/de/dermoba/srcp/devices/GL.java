@@ -4,9 +4,13 @@
  */
 package de.dermoba.srcp.devices;
 
+import java.util.concurrent.CompletableFuture;
+
 import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.common.Response;
 import de.dermoba.srcp.common.exception.SRCPException;
 import de.dermoba.srcp.model.locomotives.SRCPLocomotiveDirection;
+import de.dermoba.srcp.model.locomotives.SRCPLocomotiveFunctions;
 
 public class GL {
 
@@ -57,32 +61,79 @@ public class GL {
      */
     public String set(SRCPLocomotiveDirection drivemode, int v, int vmax, boolean[] f)
             throws SRCPException {
-        StringBuffer functionBuf = new StringBuffer();
-        if (f != null) {
-            for (int i = 0; i < f.length; i++) {
-                functionBuf.append(f[i] ? "1 " : "0 ");
-            }
-        }
+        return set(drivemode, v, vmax, SRCPLocomotiveFunctions.valueOf(f));
+    }
+
+    /**
+     * SRCP syntax SET &lt;bus&gt; GL &lt;addr&gt; &lt;drivemode&gt; &lt;V&gt;
+     * &lt;V_max&gt; &lt;f1&gt; .. &lt;fn&gt;
+     */
+    public String set(SRCPLocomotiveDirection drivemode, int v, int vmax,
+            SRCPLocomotiveFunctions functions) throws SRCPException {
+        return session.getStateCache().sendGL(bus, address,
+                setCommand(drivemode, v, vmax, functions));
+    }
+
+    /**
+     * non-blocking variant of
+     * {@link #set(SRCPLocomotiveDirection, int, int, boolean[])}, the
+     * returned future is completed when the server has acknowledged the
+     * command.
+     */
+    public CompletableFuture<Response> setAsync(
+            SRCPLocomotiveDirection drivemode, int v, int vmax, boolean[] f) {
+        return setAsync(drivemode, v, vmax, SRCPLocomotiveFunctions.valueOf(f));
+    }
+
+    /**
+     * non-blocking variant of
+     * {@link #set(SRCPLocomotiveDirection, int, int, SRCPLocomotiveFunctions)}
+     */
+    public CompletableFuture<Response> setAsync(
+            SRCPLocomotiveDirection drivemode, int v, int vmax,
+            SRCPLocomotiveFunctions functions) {
+        return session.getStateCache().sendGLAsync(bus, address,
+                setCommand(drivemode, v, vmax, functions));
+    }
+
+    private String setCommand(SRCPLocomotiveDirection drivemode, int v,
+            int vmax, SRCPLocomotiveFunctions functions) {
+        final StringBuilder command = new StringBuilder(64);
         if (session.isOldProtocol()) {
-            return session.getCommandChannel().send(
-                    "SET GL " + protocol + " " + address + " "
-                            + drivemode.getDirection() + " " + v + " " + vmax
-                            + " " + functionBuf);
+            command.append("SET GL ").append(protocol);
+        } else {
+            command.append("SET ").append(bus).append(" GL");
         }
-        return session.getCommandChannel().send(
-                "SET " + bus + " GL " + address + " "
-                        + drivemode.getDirection() + " " + v + " " + vmax + " "
-                        + functionBuf);
+        command.append(' ').append(address).append(' ')
+                .append(drivemode.getDirection()).append(' ').append(v)
+                .append(' ').append(vmax).append(' ');
+        if (functions != null) {
+            functions.appendTo(command);
+        }
+        return command.toString();
     }
 
-    /** SRCP syntax GET &lt;bus&gt; GL &lt;addr&gt; */
+    /**
+     * SRCP syntax GET &lt;bus&gt; GL &lt;addr&gt;, answered by the state
+     * cache of the session if it is enabled and knows the current state.
+     */
     public GLData get() throws SRCPException {
+        return session.getStateCache().getGL(bus, address, getCommand());
+    }
+
+    /**
+     * non-blocking variant of {@link #get()}, the reply can be turned into
+     * a {@link GLData} with its response string.
+     */
+    public CompletableFuture<Response> getAsync() {
+        return session.getCommandChannel().sendAsync(getCommand());
+    }
+
+    private String getCommand() {
         if (session.isOldProtocol()) {
-            return new GLData(session.getCommandChannel().send(
-                    "GET GL " + address));
+            return "GET GL " + address;
         }
-        return new GLData(session.getCommandChannel().send(
-                "GET " + bus + " GL " + address));
+        return "GET " + bus + " GL " + address;
     }
 
     /** SRCP syntax: TERM &lt;bus&gt; GL &lt;addr&gt; */
@@ -1,9 +1,10 @@
 package de.dermoba.srcp.devices;
 
-import java.util.ArrayList;
-
+import de.dermoba.srcp.common.TokenizedLine;
 import de.dermoba.srcp.common.exception.SRCPNoDataException;
+import de.dermoba.srcp.common.exception.SRCPUnsufficientDataException;
 import de.dermoba.srcp.model.locomotives.SRCPLocomotiveDirection;
+import de.dermoba.srcp.model.locomotives.SRCPLocomotiveFunctions;
 
 public class GLData {
     public final double timestamp;
@@ -12,32 +13,61 @@ public class GLData {
     public final SRCPLocomotiveDirection drivemode;
     public final int v;
     public final int vMax;
+    public final SRCPLocomotiveFunctions functions;
+    /** the functions as array, see {@link #functions} */
     public final boolean[] f;
 
+    public GLData(double timestamp, int bus, int address,
+            SRCPLocomotiveDirection drivemode, int v, int vMax,
+            SRCPLocomotiveFunctions functions) {
+        this.timestamp = timestamp;
+        this.bus = bus;
+        this.address = address;
+        this.drivemode = drivemode;
+        this.v = v;
+        this.vMax = vMax;
+        this.functions = functions;
+        this.f = functions.toArray();
+    }
+
     public GLData(String data) throws SRCPNoDataException {
-        String[] tokens = data.split(" ");
+        final TokenizedLine tokens = new TokenizedLine(data);
 
-        if (tokens.length < 9) {
-            throw new SRCPNoDataException();
+        try {
+            timestamp = tokens.nextDoubleToken();
+            tokens.skipToken();
+            tokens.skipToken();
+            bus = tokens.nextIntToken();
+            tokens.skipToken();
+            address = tokens.nextIntToken();
+            drivemode = SRCPLocomotiveDirection.valueOf(tokens.nextIntToken());
+            v = tokens.nextIntToken();
+            vMax = tokens.nextIntToken();
+        } catch (SRCPUnsufficientDataException e) {
+            throw new SRCPNoDataException(e);
         }
 
-        timestamp = Double.parseDouble(tokens[0]);
-        bus = Integer.parseInt(tokens[3]);
-        address = Integer.parseInt(tokens[5]);
-        drivemode = SRCPLocomotiveDirection.valueOf(Integer.parseInt(tokens[6]));
-        v = Integer.parseInt(tokens[7]);
-        vMax = Integer.parseInt(tokens[8]);
-
-        ArrayList<Boolean> functions = new ArrayList<Boolean>();
+        long mask = 0;
+        int count = 0;
 
-        for (int index = 9; index < tokens.length; index++) {
-            final int function = Integer.parseInt(tokens[index]);
-
-            functions.add(function == 1);
-        }
-        f = new boolean[functions.size()];
-        for (int index = 0; index < f.length; index++) {
-            f[index] = ((Boolean) functions.get(index)).booleanValue();
+        while (tokens.hasMoreElements()
+                && count < SRCPLocomotiveFunctions.MAX_FUNCTIONS) {
+            try {
+                if (tokens.nextIntToken() == 1) {
+                    mask |= 1L << count;
+                }
+            } catch (SRCPUnsufficientDataException e) {
+                break;
+            }
+            count++;
         }
+        functions = SRCPLocomotiveFunctions.valueOf(mask, count);
+        f = functions.toArray();
+    }
+
+    /** @return the same data with an array of its own in {@link #f} */
+    public GLData copy() {
+        return new GLData(timestamp, bus, address, drivemode, v, vMax,
+                functions);
     }
 }
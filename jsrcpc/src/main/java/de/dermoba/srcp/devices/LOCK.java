@@ -4,7 +4,10 @@
  */
 package de.dermoba.srcp.devices;
 
+import java.util.concurrent.CompletableFuture;
+
 import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.common.Response;
 import de.dermoba.srcp.common.exception.SRCPException;
 
 public class LOCK {
@@ -16,15 +19,28 @@ public class LOCK {
         bus = pBus;
     }
 
+    public int getBus() {
+        return bus;
+    }
+
     /** SRCP syntax GET &lt;bus&gt; LOCK &lt;devicegroup&gt; &lt;addr&gt; */
     public String get(String pDevicegroup, int pAddr) throws SRCPException {
         if (!session.isOldProtocol()) {
             return session.getCommandChannel().send(
-                    "GET " + bus + " LOCK " + " " + pDevicegroup + " " + pAddr);
+                    "GET " + bus + " LOCK " + pDevicegroup + " " + pAddr);
         }
         return "";
     }
 
+    /** non-blocking variant of {@link #get(String, int)} */
+    public CompletableFuture<Response> getAsync(String pDevicegroup, int pAddr) {
+        if (!session.isOldProtocol()) {
+            return session.getCommandChannel().sendAsync(
+                    "GET " + bus + " LOCK " + pDevicegroup + " " + pAddr);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * SRCP syntax: SET &lt;bus&gt; LOCK &lt;device group&gt; &lt;addr&gt;
      * &lt;duration&gt;
@@ -40,6 +56,21 @@ public class LOCK {
         return "";
     }
 
+    /**
+     * non-blocking variant of {@link #set(String, int, int)}. With the old
+     * protocol nothing is sent and the future is completed with
+     * <code>null</code>.
+     */
+    public CompletableFuture<Response> setAsync(String pDevicegroup,
+            int pAddr, int pDuration) {
+        if (!session.isOldProtocol()) {
+            return session.getCommandChannel().sendAsync(
+                    "SET " + bus + " LOCK " + pDevicegroup + " " + pAddr + " "
+                            + pDuration);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
     /** SRCP syntax: TERM &lt;bus&gt; LOCK &lt;device group&gt; &lt;addr&gt; */
     public String term(String pDevicegroup, int pAddr) throws SRCPException {
         if (!session.isOldProtocol()) {
@@ -48,4 +79,13 @@ public class LOCK {
         }
         return "";
     }
+
+    /** non-blocking variant of {@link #term(String, int)} */
+    public CompletableFuture<Response> termAsync(String pDevicegroup, int pAddr) {
+        if (!session.isOldProtocol()) {
+            return session.getCommandChannel().sendAsync(
+                    "TERM " + bus + " LOCK " + pDevicegroup + " " + pAddr);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
 }
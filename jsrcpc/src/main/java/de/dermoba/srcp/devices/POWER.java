@@ -4,7 +4,10 @@
  */
 package de.dermoba.srcp.devices;
 
+import java.util.concurrent.CompletableFuture;
+
 import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.common.Response;
 import de.dermoba.srcp.common.exception.SRCPException;
 
 public class POWER {
@@ -58,6 +61,27 @@ public class POWER {
 
     /** SRCP syntax: SET &lt;bus&gt; POWER ON|OFF [&lt;freetext&gt;] */
     public String set(boolean on, String freetext) throws SRCPException {
+        return session.getCommandChannel().send(setCommand(on, freetext));
+    }
+
+    /** non-blocking variant of {@link #set(boolean)} */
+    public CompletableFuture<Response> setAsync(boolean on) {
+        return setAsync(on, "");
+    }
+
+    /** non-blocking variant of {@link #set(boolean, String)} */
+    public CompletableFuture<Response> setAsync(boolean on, String freetext) {
+        return session.getCommandChannel().sendAsync(setCommand(on, freetext));
+    }
+
+    /**
+     * @return the SET command, for callers which send it themselves
+     */
+    public String getSetCommand(boolean on, String freetext) {
+        return setCommand(on, freetext);
+    }
+
+    private String setCommand(boolean on, String freetext) {
         String power = "";
         if (on) {
             power = POWER_ON;
@@ -65,10 +89,9 @@ public class POWER {
             power = POWER_OFF;
         }
         if (session.isOldProtocol()) {
-            return session.getCommandChannel().send("SET POWER " + power);
+            return "SET POWER " + power;
         }
-        return session.getCommandChannel().send(
-                "SET " + bus + " POWER " + power + " " + freetext);
+        return "SET " + bus + " POWER " + power + " " + freetext;
     }
 
     /** SRCP syntax: TERM &lt;bus&gt; POWER */
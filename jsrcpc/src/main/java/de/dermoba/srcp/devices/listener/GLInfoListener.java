@@ -1,11 +1,22 @@
 package de.dermoba.srcp.devices.listener;
 
 import de.dermoba.srcp.model.locomotives.SRCPLocomotiveDirection;
+import de.dermoba.srcp.model.locomotives.SRCPLocomotiveFunctions;
 
 public interface GLInfoListener {
 	public void GLset(double timestamp, int bus, int address, SRCPLocomotiveDirection drivemode,
 			int v, int vMax, boolean[] functions);
 
+	/**
+	 * called by the info channel. The default implementation passes the
+	 * functions on as array, listeners override it to avoid the copy.
+	 */
+	public default void GLset(double timestamp, int bus, int address,
+			SRCPLocomotiveDirection drivemode, int v, int vMax,
+			SRCPLocomotiveFunctions functions) {
+		GLset(timestamp, bus, address, drivemode, v, vMax, functions.toArray());
+	}
+
 	public void GLinit(double timestamp, int bus, int address, String protocol,
 			String[] params);
 
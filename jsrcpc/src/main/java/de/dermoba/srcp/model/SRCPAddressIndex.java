@@ -0,0 +1,205 @@
+package de.dermoba.srcp.model;
+
+import java.util.Arrays;
+
+/**
+ * Maps (bus, address) pairs to devices without creating key objects. The
+ * pair is packed into a long and looked up in an open addressing table
+ * with linear probing, so a lookup neither allocates nor follows pointers.
+ *
+ * Instances are not thread safe.
+ *
+ * @param <V>
+ *            the device type
+ */
+public class SRCPAddressIndex<V> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+
+	/** null marks a free slot */
+	private Object[] values;
+
+	private int size = 0;
+
+	public SRCPAddressIndex() {
+		this(MIN_CAPACITY);
+	}
+
+	public SRCPAddressIndex(final int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		values = new Object[capacity];
+	}
+
+	/**
+	 * @return the packed key of a bus and an address
+	 */
+	public static long key(final int bus, final int address) {
+		return ((long) bus << 32) | (address & 0xffffffffL);
+	}
+
+	public V get(final int bus, final int address) {
+		return get(key(bus, address));
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(final long key) {
+		final long[] k = keys;
+		final Object[] v = values;
+		final int mask = k.length - 1;
+		int i = slot(key, mask);
+		while (v[i] != null) {
+			if (k[i] == key) {
+				return (V) v[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	public boolean containsKey(final int bus, final int address) {
+		return get(key(bus, address)) != null;
+	}
+
+	/**
+	 * @return the device previously mapped to the address
+	 */
+	public V put(final int bus, final int address, final V value) {
+		return put(key(bus, address), value, true);
+	}
+
+	/**
+	 * maps the address only if no device is mapped to it yet.
+	 *
+	 * @return the device mapped to the address before the call
+	 */
+	public V putIfAbsent(final int bus, final int address, final V value) {
+		return put(key(bus, address), value, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	private V put(final long key, final V value, final boolean replace) {
+		if (value == null) {
+			throw new IllegalArgumentException("null values are not supported");
+		}
+		final int mask = keys.length - 1;
+		int i = slot(key, mask);
+		while (values[i] != null) {
+			if (keys[i] == key) {
+				final V old = (V) values[i];
+				if (replace) {
+					values[i] = value;
+				}
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the device which was mapped to the address
+	 */
+	public V remove(final int bus, final int address) {
+		return remove(key(bus, address), null);
+	}
+
+	/**
+	 * removes the mapping only if the address is mapped to the given device.
+	 *
+	 * @return true if the mapping has been removed
+	 */
+	public boolean remove(final int bus, final int address, final V value) {
+		return value != null && remove(key(bus, address), value) != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V remove(final long key, final V expected) {
+		final int mask = keys.length - 1;
+		int i = slot(key, mask);
+		while (values[i] != null) {
+			if (keys[i] == key) {
+				final V old = (V) values[i];
+				if (expected != null && old != expected) {
+					return null;
+				}
+				deleteSlot(i, mask);
+				size--;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * frees a slot and moves following entries of the probe sequence back,
+	 * so no tombstones are needed.
+	 */
+	private void deleteSlot(int free, final int mask) {
+		int i = free;
+		while (true) {
+			i = (i + 1) & mask;
+			if (values[i] == null) {
+				break;
+			}
+			final int home = slot(keys[i], mask);
+			// move the entry if its home is not between free and i
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				keys[free] = keys[i];
+				values[free] = values[i];
+				free = i;
+			}
+		}
+		values[free] = null;
+		keys[free] = 0;
+	}
+
+	private void resize(final int capacity) {
+		final long[] oldKeys = keys;
+		final Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		final int mask = capacity - 1;
+		for (int j = 0; j < oldValues.length; j++) {
+			if (oldValues[j] != null) {
+				int i = slot(oldKeys[j], mask);
+				while (values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private static int slot(final long key, final int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		return (int) h & mask;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		Arrays.fill(keys, 0);
+		size = 0;
+	}
+}
@@ -0,0 +1,269 @@
+package de.dermoba.srcp.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Delivers the change events of the model controls to their listeners
+ * asynchronously.
+ *
+ * A control posts an event together with a snapshot of the device state.
+ * Events which do not change the state of the device are dropped. Events
+ * of the same device within the window replace each other, only the newest
+ * one is delivered when the window ends; if the device is back in the
+ * state last delivered by then, nothing is delivered at all.
+ *
+ * The bus holds the devices weakly, the state last delivered for a device
+ * is forgotten when the device is no longer used elsewhere.
+ *
+ * All events of a window are handed to the executor as one task, in the
+ * order the devices first changed. With an executor like
+ * {@code SwingUtilities::invokeLater} and a window of one frame, a
+ * dashboard is updated once per frame however many INFO lines arrive.
+ *
+ * @see de.dermoba.srcp.model.turnouts.SRCPTurnoutControl#setEventBus(SRCPModelEventBus)
+ * @see de.dermoba.srcp.model.locomotives.SRCPLocomotiveControl#setEventBus(SRCPModelEventBus)
+ * @see de.dermoba.srcp.model.locking.SRCPLockControl#setEventBus(SRCPModelEventBus)
+ * @see de.dermoba.srcp.model.power.SRCPPowerControl#setEventBus(SRCPModelEventBus)
+ */
+public class SRCPModelEventBus {
+
+	public static final int DEFAULT_WINDOW = 20;
+
+	private static Logger logger = Logger.getLogger(SRCPModelEventBus.class);
+
+	private static int threadCount = 0;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final Executor executor;
+
+	private final int windowMillis;
+
+	/** guarded by this */
+	private final Map<Key, Object> delivered = new HashMap<Key, Object>();
+
+	/** the keys of collected devices, guarded by this */
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+
+	/** guarded by this */
+	private Map<Key, Event> pending = new LinkedHashMap<Key, Event>();
+
+	/** guarded by this */
+	private boolean flushScheduled = false;
+
+	private volatile boolean shutdown = false;
+
+	/**
+	 * creates a bus delivering on its own thread with the default window.
+	 */
+	public SRCPModelEventBus() {
+		this(null, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param executor
+	 *            delivers the events of a window, null to deliver on the
+	 *            thread of the bus
+	 * @param windowMillis
+	 *            the time in ms events of a device are coalesced, 0 to
+	 *            deliver each change
+	 */
+	public SRCPModelEventBus(final Executor executor, final int windowMillis) {
+		if (windowMillis < 0) {
+			throw new IllegalArgumentException("window must not be negative");
+		}
+		final int number;
+		synchronized (SRCPModelEventBus.class) {
+			number = ++threadCount;
+		}
+		scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "SRCP model events "
+						+ number);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.executor = executor;
+		this.windowMillis = windowMillis;
+	}
+
+	public int getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * posts a change of a device.
+	 *
+	 * @param source
+	 *            the control posting the event, events of different sources
+	 *            for the same device are kept apart
+	 * @param device
+	 *            the device which changed, compared by identity
+	 * @param state
+	 *            a snapshot of the state the listeners see, compared with
+	 *            equals to drop events which change nothing
+	 * @param delivery
+	 *            informs the listeners of the state
+	 */
+	public void post(final Object source, final Object device,
+			final Object state, final Runnable delivery) {
+		if (shutdown) {
+			return;
+		}
+		final Key key = new Key(source, device, collected);
+		synchronized (this) {
+			expungeCollected();
+			final Event event = pending.get(key);
+			final Object last = event != null ? event.state : delivered
+					.get(key);
+			if (last != null && last.equals(state)) {
+				return;
+			}
+			if (event != null) {
+				event.state = state;
+				event.delivery = delivery;
+				return;
+			}
+			pending.put(key, new Event(state, delivery));
+			if (flushScheduled) {
+				return;
+			}
+			flushScheduled = true;
+		}
+		scheduler.schedule(new Runnable() {
+			public void run() {
+				flush();
+			}
+		}, windowMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * forgets the states delivered so far, e.g. after a reconnect, so that
+	 * the next change of every device is delivered.
+	 */
+	public synchronized void reset() {
+		delivered.clear();
+		expungeCollected();
+	}
+
+	/**
+	 * stops the bus, events which have not been delivered are dropped.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		scheduler.shutdownNow();
+		synchronized (this) {
+			pending.clear();
+			delivered.clear();
+		}
+	}
+
+	/** removes the states of the devices which have been collected */
+	private void expungeCollected() {
+		Reference<?> key;
+		while ((key = collected.poll()) != null) {
+			delivered.remove(key);
+		}
+	}
+
+	private void flush() {
+		final List<Runnable> deliveries;
+		synchronized (this) {
+			flushScheduled = false;
+			deliveries = new ArrayList<Runnable>(pending.size());
+			for (final Map.Entry<Key, Event> entry : pending.entrySet()) {
+				final Event event = entry.getValue();
+				final Object previous = delivered.put(entry.getKey(),
+						event.state);
+				if (previous == null || !previous.equals(event.state)) {
+					deliveries.add(event.delivery);
+				}
+			}
+			pending = new LinkedHashMap<Key, Event>();
+		}
+		if (deliveries.isEmpty()) {
+			return;
+		}
+		final Runnable batch = new Runnable() {
+			public void run() {
+				for (final Runnable delivery : deliveries) {
+					try {
+						delivery.run();
+					} catch (final RuntimeException e) {
+						logger.error("listener failed", e);
+					}
+				}
+			}
+		};
+		if (executor == null) {
+			batch.run();
+		} else {
+			executor.execute(batch);
+		}
+	}
+
+	private static final class Event {
+
+		private Object state;
+
+		private Runnable delivery;
+
+		private Event(final Object state, final Runnable delivery) {
+			this.state = state;
+			this.delivery = delivery;
+		}
+	}
+
+	/**
+	 * identifies a device of a source, the device is referenced weakly. A
+	 * key whose device has been collected only equals itself.
+	 */
+	private static final class Key extends WeakReference<Object> {
+
+		private final Object source;
+
+		private final int hash;
+
+		private Key(final Object source, final Object device,
+				final ReferenceQueue<Object> queue) {
+			super(device, queue);
+			this.source = source;
+			hash = 31 * System.identityHashCode(source)
+					+ System.identityHashCode(device);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			final Object device = get();
+			return device != null && source == other.source
+					&& device == other.get();
+		}
+	}
+}
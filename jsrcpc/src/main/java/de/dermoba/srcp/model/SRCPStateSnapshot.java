@@ -0,0 +1,478 @@
+package de.dermoba.srcp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+
+import org.apache.log4j.Logger;
+
+import de.dermoba.srcp.client.InfoChannel;
+import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.devices.listener.GAInfoListener;
+import de.dermoba.srcp.devices.listener.GLInfoListener;
+import de.dermoba.srcp.devices.listener.LOCKInfoListener;
+import de.dermoba.srcp.devices.listener.POWERInfoListener;
+import de.dermoba.srcp.model.locking.SRCPLockControl;
+import de.dermoba.srcp.model.locomotives.SRCPLocomotiveControl;
+import de.dermoba.srcp.model.locomotives.SRCPLocomotiveDirection;
+import de.dermoba.srcp.model.locomotives.SRCPLocomotiveFunctions;
+import de.dermoba.srcp.model.power.SRCPPowerControl;
+import de.dermoba.srcp.model.turnouts.SRCPTurnoutControl;
+
+/**
+ * Keeps the state of the GL, GA, LOCK and POWER devices reported by the
+ * info channel in a memory mapped file, so that a restarted client knows
+ * the state of the layout at once instead of querying every device.
+ *
+ * The file has a fixed layout: a header of {@value #HEADER_SIZE} bytes
+ * followed by records of {@value #RECORD_SIZE} bytes, one per device. Each
+ * info overwrites the record of its device in place; the operating system
+ * writes the pages back, so the state survives a crash of the client.
+ * {@link #force()} writes it to the disk explicitly.
+ *
+ * <pre>
+ * header: int magic, int version, int record count, int record size
+ * record: 0  byte   type (0 free, 1 GL, 2 GA, 3 POWER, 4 LOCK)
+ *         1  byte   GL direction, POWER on, LOCK device group
+ *         4  int    bus
+ *         8  int    address
+ *         12 int    GL speed, GA port, LOCK session
+ *         16 int    GL maximum speed, GA value, LOCK duration
+ *         20 int    GL number of functions
+ *         24 long   GL functions
+ *         32 double timestamp of the server
+ * </pre>
+ *
+ * A GA record keeps the last port reported with its value; the turnout
+ * control derives the state of a turnout from the port alone, so only the
+ * port is restored.
+ *
+ * On startup, register the locomotives and turnouts and set the sessions of
+ * the controls, then {@link #restore()} the snapshot before connecting. The
+ * info channel reports the current state of all devices when it connects,
+ * which overwrites the restored state where it differs. Afterwards
+ * {@link #reconcile()} drops the restored locks the server did not report,
+ * no GET commands are sent.
+ */
+public class SRCPStateSnapshot implements GLInfoListener, GAInfoListener,
+		LOCKInfoListener, POWERInfoListener {
+
+	public static final int MAGIC = 0x53524350;
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 16;
+
+	public static final int RECORD_SIZE = 40;
+
+	private static final int DEFAULT_RECORDS = 1024;
+
+	private static final byte FREE = 0;
+	private static final byte TYPE_GL = 1;
+	private static final byte TYPE_GA = 2;
+	private static final byte TYPE_POWER = 3;
+	private static final byte TYPE_LOCK = 4;
+
+	/** the device groups of locks, stored by their index */
+	private static final String[] DEVICE_GROUPS = { "GL", "GA", "FB", "GM",
+			"SM", "POWER" };
+
+	private static Logger logger = Logger.getLogger(SRCPStateSnapshot.class);
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private MappedByteBuffer buffer;
+
+	private int records;
+
+	/**
+	 * the record of each device, by type, locks by type and device group
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final SRCPAddressIndex<Integer>[] slots = new SRCPAddressIndex[TYPE_LOCK
+			+ DEVICE_GROUPS.length];
+
+	private final Deque<Integer> freeRecords = new ArrayDeque<Integer>();
+
+	/** restored records which no info has confirmed yet */
+	private final BitSet unconfirmed = new BitSet();
+
+	private SRCPSession session;
+
+	/**
+	 * opens the snapshot file, creating it if it does not exist or has an
+	 * unknown format.
+	 */
+	public SRCPStateSnapshot(final File path) throws IOException {
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = new SRCPAddressIndex<Integer>();
+		}
+		if (!load()) {
+			records = DEFAULT_RECORDS;
+			map();
+			for (int i = 0; i < records; i++) {
+				buffer.put(offset(i), FREE);
+			}
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(12, RECORD_SIZE);
+			buffer.putInt(8, records);
+			freeRecords.clear();
+			for (int i = 0; i < records; i++) {
+				freeRecords.add(i);
+			}
+		}
+	}
+
+	/**
+	 * maps an existing snapshot and indexes its records.
+	 *
+	 * @return false if the file is empty or not a snapshot
+	 */
+	private boolean load() throws IOException {
+		if (channel.size() < HEADER_SIZE) {
+			return false;
+		}
+		final MappedByteBuffer header = channel.map(
+				FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+				|| header.getInt(12) != RECORD_SIZE) {
+			logger.warn("ignoring snapshot with unknown format");
+			return false;
+		}
+		records = header.getInt(8);
+		if (records <= 0
+				|| channel.size() < HEADER_SIZE + (long) records * RECORD_SIZE) {
+			logger.warn("ignoring truncated snapshot");
+			return false;
+		}
+		map();
+		for (int i = 0; i < records; i++) {
+			final int o = offset(i);
+			final byte type = buffer.get(o);
+			final int kind = kind(type, buffer.get(o + 1));
+			if (kind < 0) {
+				freeRecords.add(i);
+				continue;
+			}
+			slots[kind].put(buffer.getInt(o + 4), buffer.getInt(o + 8), i);
+		}
+		return true;
+	}
+
+	private void map() throws IOException {
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE
+				+ (long) records * RECORD_SIZE);
+	}
+
+	private static int offset(final int record) {
+		return HEADER_SIZE + record * RECORD_SIZE;
+	}
+
+	/**
+	 * @return the index of the slots of a record, -1 for a free record
+	 */
+	private static int kind(final byte type, final byte group) {
+		switch (type) {
+		case TYPE_GL:
+		case TYPE_GA:
+		case TYPE_POWER:
+			return type - 1;
+		case TYPE_LOCK:
+			if (group < 0 || group >= DEVICE_GROUPS.length) {
+				return -1;
+			}
+			return TYPE_POWER + group;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the offset of the record of the device, a new record if it
+	 *         has none
+	 */
+	private int record(final byte type, final byte group, final int bus,
+			final int address) throws IOException {
+		final SRCPAddressIndex<Integer> index = slots[kind(type, group)];
+		Integer record = index.get(bus, address);
+		if (record == null) {
+			if (freeRecords.isEmpty()) {
+				grow();
+			}
+			record = freeRecords.poll();
+			index.put(bus, address, record);
+			final int o = offset(record);
+			buffer.put(o + 1, group);
+			buffer.putInt(o + 4, bus);
+			buffer.putInt(o + 8, address);
+			buffer.put(o, type);
+		}
+		unconfirmed.clear(record);
+		return offset(record);
+	}
+
+	private void grow() throws IOException {
+		final int grown = records * 2;
+		final int old = records;
+		records = grown;
+		map();
+		for (int i = old; i < grown; i++) {
+			buffer.put(offset(i), FREE);
+			freeRecords.add(i);
+		}
+		buffer.putInt(8, records);
+	}
+
+	private void free(final byte type, final byte group, final int bus,
+			final int address) {
+		final Integer record = slots[kind(type, group)].remove(bus, address);
+		if (record != null) {
+			buffer.put(offset(record), FREE);
+			unconfirmed.clear(record);
+			freeRecords.add(record);
+		}
+	}
+
+	/**
+	 * registers the snapshot with the info channel of the session, it is
+	 * updated with every info from now on.
+	 */
+	public synchronized void attach(final SRCPSession session) {
+		detach();
+		this.session = session;
+		final InfoChannel infoChannel = session.getInfoChannel();
+		infoChannel.addGLInfoListener(this);
+		infoChannel.addGAInfoListener(this);
+		infoChannel.addLOCKInfoListener(this);
+		infoChannel.addPOWERInfoListener(this);
+	}
+
+	public synchronized void detach() {
+		if (session == null) {
+			return;
+		}
+		final InfoChannel infoChannel = session.getInfoChannel();
+		infoChannel.removeGLInfoListener(this);
+		infoChannel.removeGAInfoListener(this);
+		infoChannel.removeLOCKInfoListener(this);
+		infoChannel.removePOWERInfoListener(this);
+		session = null;
+	}
+
+	/**
+	 * applies the snapshot to the controls, as if the info channel had
+	 * reported it. Only devices known to the controls are affected,
+	 * locomotives and turnouts are set directly without sending commands.
+	 *
+	 * @return the number of devices restored
+	 */
+	public synchronized int restore() {
+		final SRCPPowerControl powerControl = SRCPPowerControl.getInstance();
+		final SRCPLockControl lockControl = SRCPLockControl.getInstance();
+		final SRCPTurnoutControl turnoutControl = SRCPTurnoutControl
+				.getInstance();
+		final SRCPLocomotiveControl locomotiveControl = SRCPLocomotiveControl
+				.getInstance();
+		final SRCPLocomotiveDirection[] directions = SRCPLocomotiveDirection
+				.values();
+		int restored = 0;
+		// power first, locks before the devices they lock
+		for (final byte type : new byte[] { TYPE_POWER, TYPE_LOCK, TYPE_GA,
+				TYPE_GL }) {
+			for (int i = 0; i < records; i++) {
+				final int o = offset(i);
+				if (buffer.get(o) != type) {
+					continue;
+				}
+				final byte flag = buffer.get(o + 1);
+				if (kind(type, flag) < 0) {
+					continue;
+				}
+				final int bus = buffer.getInt(o + 4);
+				final int address = buffer.getInt(o + 8);
+				final double timestamp = buffer.getDouble(o + 32);
+				switch (type) {
+				case TYPE_POWER:
+					powerControl.POWERset(timestamp, bus, flag != 0, "");
+					break;
+				case TYPE_LOCK:
+					lockControl.LOCKset(timestamp, bus, address,
+							DEVICE_GROUPS[flag], buffer.getInt(o + 16),
+							buffer.getInt(o + 12));
+					break;
+				case TYPE_GA:
+					turnoutControl.restorePort(bus, address,
+							buffer.getInt(o + 12));
+					break;
+				case TYPE_GL:
+					if (flag < 0 || flag >= directions.length) {
+						continue;
+					}
+					locomotiveControl.restoreState(bus, address,
+							directions[flag], buffer.getInt(o + 12),
+							SRCPLocomotiveFunctions.valueOf(
+									buffer.getLong(o + 24),
+									buffer.getInt(o + 20)));
+					break;
+				}
+				unconfirmed.set(i);
+				restored++;
+			}
+		}
+		logger.info(restored + " devices restored");
+		return restored;
+	}
+
+	/**
+	 * drops the restored locks which the info channel has not confirmed
+	 * since {@link #restore()}, the lock control is told they are gone.
+	 * Call it when the info channel has reported the initial state.
+	 *
+	 * @return the number of restored devices which were not confirmed
+	 */
+	public synchronized int reconcile() {
+		final SRCPLockControl lockControl = SRCPLockControl.getInstance();
+		final int count = unconfirmed.cardinality();
+		for (int i = unconfirmed.nextSetBit(0); i >= 0; i = unconfirmed
+				.nextSetBit(i + 1)) {
+			final int o = offset(i);
+			if (buffer.get(o) != TYPE_LOCK) {
+				continue;
+			}
+			final byte group = buffer.get(o + 1);
+			final int bus = buffer.getInt(o + 4);
+			final int address = buffer.getInt(o + 8);
+			free(TYPE_LOCK, group, bus, address);
+			lockControl.LOCKterm(0, bus, address, DEVICE_GROUPS[group]);
+		}
+		unconfirmed.clear();
+		return count;
+	}
+
+	/**
+	 * writes the snapshot to the disk.
+	 */
+	public synchronized void force() {
+		buffer.force();
+	}
+
+	public synchronized void close() throws IOException {
+		detach();
+		buffer.force();
+		channel.close();
+		file.close();
+	}
+
+	public void GLset(final double timestamp, final int bus,
+			final int address, final SRCPLocomotiveDirection drivemode,
+			final int v, final int vMax, final boolean[] functions) {
+		GLset(timestamp, bus, address, drivemode, v, vMax,
+				SRCPLocomotiveFunctions.valueOf(functions));
+	}
+
+	@Override
+	public synchronized void GLset(final double timestamp, final int bus,
+			final int address, final SRCPLocomotiveDirection drivemode,
+			final int v, final int vMax, final SRCPLocomotiveFunctions functions) {
+		try {
+			final int o = record(TYPE_GL, (byte) 0, bus, address);
+			buffer.put(o + 1, (byte) drivemode.ordinal());
+			buffer.putInt(o + 12, v);
+			buffer.putInt(o + 16, vMax);
+			buffer.putInt(o + 20, functions.getCount());
+			buffer.putLong(o + 24, functions.getMask());
+			buffer.putDouble(o + 32, timestamp);
+		} catch (final IOException e) {
+			logger.error("writing snapshot failed", e);
+		}
+	}
+
+	public void GLinit(final double timestamp, final int bus,
+			final int address, final String protocol, final String[] params) {
+	}
+
+	public synchronized void GLterm(final double timestamp, final int bus,
+			final int address) {
+		free(TYPE_GL, (byte) 0, bus, address);
+	}
+
+	public synchronized void GAset(final double timestamp, final int bus,
+			final int address, final int port, final int value) {
+		try {
+			final int o = record(TYPE_GA, (byte) 0, bus, address);
+			buffer.putInt(o + 12, port);
+			buffer.putInt(o + 16, value);
+			buffer.putDouble(o + 32, timestamp);
+		} catch (final IOException e) {
+			logger.error("writing snapshot failed", e);
+		}
+	}
+
+	public void GAinit(final double timestamp, final int bus,
+			final int address, final String protocol, final String[] params) {
+	}
+
+	public synchronized void GAterm(final double timestamp, final int bus,
+			final int address) {
+		free(TYPE_GA, (byte) 0, bus, address);
+	}
+
+	public synchronized void LOCKset(final double timestamp, final int bus,
+			final int address, final String deviceGroup, final int duration,
+			final int sessionID) {
+		final byte group = group(deviceGroup);
+		if (group < 0) {
+			return;
+		}
+		try {
+			final int o = record(TYPE_LOCK, group, bus, address);
+			buffer.putInt(o + 12, sessionID);
+			buffer.putInt(o + 16, duration);
+			buffer.putDouble(o + 32, timestamp);
+		} catch (final IOException e) {
+			logger.error("writing snapshot failed", e);
+		}
+	}
+
+	public synchronized void LOCKterm(final double timestamp, final int bus,
+			final int address, final String deviceGroup) {
+		final byte group = group(deviceGroup);
+		if (group >= 0) {
+			free(TYPE_LOCK, group, bus, address);
+		}
+	}
+
+	public synchronized void POWERset(final double timestamp, final int bus,
+			final boolean powerOn, final String freeText) {
+		try {
+			final int o = record(TYPE_POWER, (byte) 0, bus, 0);
+			buffer.put(o + 1, (byte) (powerOn ? 1 : 0));
+			buffer.putDouble(o + 32, timestamp);
+		} catch (final IOException e) {
+			logger.error("writing snapshot failed", e);
+		}
+	}
+
+	public synchronized void POWERterm(final double timestamp, final int bus) {
+		free(TYPE_POWER, (byte) 0, bus, 0);
+	}
+
+	private static byte group(final String deviceGroup) {
+		for (byte i = 0; i < DEVICE_GROUPS.length; i++) {
+			if (DEVICE_GROUPS[i].equals(deviceGroup)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
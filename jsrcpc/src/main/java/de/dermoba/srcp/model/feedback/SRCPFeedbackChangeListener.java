@@ -0,0 +1,9 @@
+package de.dermoba.srcp.model.feedback;
+
+public interface SRCPFeedbackChangeListener {
+
+	/**
+	 * called when a contact changes, not for infos which repeat its state.
+	 */
+	public void feedbackChanged(int bus, int address, boolean occupied);
+}
@@ -0,0 +1,297 @@
+package de.dermoba.srcp.model.feedback;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+
+import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.devices.listener.FBInfoListener;
+
+/**
+ * Keeps the state of the feedback contacts reported by the info channel.
+ *
+ * The contacts of a bus are stored as bits, one per address, so a layout
+ * with thousands of contacts takes a few hundred bytes per bus. Queries do
+ * not allocate and do not block: a single contact is one array access,
+ * counts and ranges are evaluated 64 contacts at a time. The listeners are
+ * informed on the info thread, once per change of a contact.
+ *
+ * The control can be used from several threads.
+ */
+public class SRCPFeedbackControl implements FBInfoListener {
+	private static Logger logger = Logger.getLogger(SRCPFeedbackControl.class);
+
+	/** addresses above are ignored, they would only waste memory */
+	public static final int MAX_ADDRESS = 65535;
+
+	private static SRCPFeedbackControl instance;
+
+	private final List<SRCPFeedbackChangeListener> listeners = new CopyOnWriteArrayList<SRCPFeedbackChangeListener>();
+
+	private volatile SRCPSession session;
+
+	/** the contacts by bus, grown on demand */
+	private volatile Bus[] buses = new Bus[0];
+
+	private SRCPFeedbackControl() {
+		logger.info("SRCPFeedbackControl loaded");
+	}
+
+	public static synchronized SRCPFeedbackControl getInstance() {
+		if (instance == null) {
+			instance = new SRCPFeedbackControl();
+		}
+		return instance;
+	}
+
+	public SRCPSession getSession() {
+		return session;
+	}
+
+	public void setSession(final SRCPSession session) {
+		final SRCPSession previous = this.session;
+		if (previous != null) {
+			previous.getInfoChannel().removeFBInfoListener(this);
+		}
+		this.session = session;
+		if (session != null) {
+			session.getInfoChannel().addFBInfoListener(this);
+		}
+	}
+
+	/**
+	 * @return true if the contact is occupied, false if it is free or
+	 *         unknown
+	 */
+	public boolean isOccupied(final int bus, final int address) {
+		final Bus b = getBus(bus);
+		if (b == null || address < 0) {
+			return false;
+		}
+		final AtomicLongArray words = b.words;
+		final int word = address >>> 6;
+		return word < words.length()
+				&& (words.get(word) & (1L << address)) != 0;
+	}
+
+	/**
+	 * @return the number of occupied contacts of the bus
+	 */
+	public int getOccupiedCount(final int bus) {
+		final Bus b = getBus(bus);
+		return b == null ? 0 : b.occupied;
+	}
+
+	/**
+	 * @return the number of occupied contacts from address from to address
+	 *         to, both inclusive
+	 */
+	public int getOccupiedCount(final int bus, final int from, final int to) {
+		final Bus b = getBus(bus);
+		if (b == null || to < 0 || from > to) {
+			return 0;
+		}
+		final AtomicLongArray words = b.words;
+		final int last = Math.min(to, (words.length() << 6) - 1);
+		int count = 0;
+		for (int word = Math.max(from, 0) >>> 6; word <= last >>> 6
+				&& from <= last; word++) {
+			count += Long.bitCount(words.get(word) & mask(word, from, last));
+		}
+		return count;
+	}
+
+	/**
+	 * @return true if a contact from address from to address to, both
+	 *         inclusive, is occupied
+	 */
+	public boolean isAnyOccupied(final int bus, final int from, final int to) {
+		return nextOccupied(bus, from, to) >= 0;
+	}
+
+	/**
+	 * finds the occupied contacts of a range without allocating, e.g.
+	 *
+	 * <pre>
+	 * for (int a = control.nextOccupied(bus, from, to); a &gt;= 0; a = control
+	 * 		.nextOccupied(bus, a + 1, to)) {
+	 * 	...
+	 * }
+	 * </pre>
+	 *
+	 * @return the lowest occupied address from address from to address to,
+	 *         both inclusive, -1 if all are free
+	 */
+	public int nextOccupied(final int bus, final int from, final int to) {
+		final Bus b = getBus(bus);
+		if (b == null || to < 0 || from > to) {
+			return -1;
+		}
+		final AtomicLongArray words = b.words;
+		final int last = Math.min(to, (words.length() << 6) - 1);
+		if (from > last) {
+			return -1;
+		}
+		for (int word = Math.max(from, 0) >>> 6; word <= last >>> 6; word++) {
+			final long bits = words.get(word) & mask(word, from, last);
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a copy of the contacts of the bus, bit i is set if address i
+	 *         is occupied
+	 */
+	public BitSet getSnapshot(final int bus) {
+		final Bus b = getBus(bus);
+		if (b == null) {
+			return new BitSet();
+		}
+		final AtomicLongArray words = b.words;
+		final long[] copy = new long[words.length()];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = words.get(i);
+		}
+		return BitSet.valueOf(copy);
+	}
+
+	/**
+	 * @return the bits of word of the range from..last
+	 */
+	private static long mask(final int word, final int from, final int last) {
+		long mask = -1L;
+		if (word == from >>> 6 && from > 0) {
+			mask &= -1L << from;
+		}
+		if (word == last >>> 6) {
+			mask &= -1L >>> (63 - (last & 63));
+		}
+		return mask;
+	}
+
+	public void addFeedbackChangeListener(
+			final SRCPFeedbackChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeFeedbackChangeListener(
+			final SRCPFeedbackChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	public void removeAllFeedbackChangeListener() {
+		listeners.clear();
+	}
+
+	public void FBset(final double timestamp, final int bus, final int address,
+			final int value) {
+		if (bus < 0 || address < 0 || address > MAX_ADDRESS) {
+			logger.warn("ignoring FB " + bus + " " + address);
+			return;
+		}
+		final boolean occupied = value != 0;
+		final Bus b = getOrCreateBus(bus);
+		synchronized (b) {
+			final int word = address >>> 6;
+			if (word >= b.words.length()) {
+				if (!occupied) {
+					return;
+				}
+				b.grow(word + 1);
+			}
+			final long bit = 1L << address;
+			final long bits = b.words.get(word);
+			if (((bits & bit) != 0) == occupied) {
+				return;
+			}
+			b.words.set(word, bits ^ bit);
+			b.occupied += occupied ? 1 : -1;
+		}
+		informListeners(bus, address, occupied);
+	}
+
+	/**
+	 * forgets the contacts of the bus, the occupied ones are reported as
+	 * free.
+	 */
+	public void FBterm(final double timestamp, final int bus) {
+		final Bus b = getBus(bus);
+		if (b == null) {
+			return;
+		}
+		final long[] cleared;
+		synchronized (b) {
+			final AtomicLongArray words = b.words;
+			cleared = new long[words.length()];
+			for (int i = 0; i < cleared.length; i++) {
+				cleared[i] = words.getAndSet(i, 0);
+			}
+			b.occupied = 0;
+		}
+		for (int word = 0; word < cleared.length; word++) {
+			for (long bits = cleared[word]; bits != 0; bits &= bits - 1) {
+				informListeners(bus, (word << 6)
+						+ Long.numberOfTrailingZeros(bits), false);
+			}
+		}
+	}
+
+	private void informListeners(final int bus, final int address,
+			final boolean occupied) {
+		for (final SRCPFeedbackChangeListener l : listeners) {
+			l.feedbackChanged(bus, address, occupied);
+		}
+	}
+
+	private Bus getBus(final int bus) {
+		final Bus[] b = buses;
+		return bus >= 0 && bus < b.length ? b[bus] : null;
+	}
+
+	private Bus getOrCreateBus(final int bus) {
+		final Bus b = getBus(bus);
+		if (b != null) {
+			return b;
+		}
+		synchronized (this) {
+			final Bus[] all = buses;
+			if (bus < all.length && all[bus] != null) {
+				return all[bus];
+			}
+			// the published array is never written, readers do not lock
+			final Bus[] copy = Arrays.copyOf(all, Math.max(all.length,
+					bus + 1));
+			final Bus created = new Bus();
+			copy[bus] = created;
+			buses = copy;
+			return created;
+		}
+	}
+
+	/**
+	 * the contacts of a bus, written under its monitor and read without
+	 */
+	private static final class Bus {
+
+		private volatile AtomicLongArray words = new AtomicLongArray(0);
+
+		private volatile int occupied = 0;
+
+		private void grow(final int length) {
+			final AtomicLongArray old = words;
+			final AtomicLongArray grown = new AtomicLongArray(Math.max(
+					length, old.length() * 2));
+			for (int i = 0; i < old.length(); i++) {
+				grown.set(i, old.get(i));
+			}
+			words = grown;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package de.dermoba.srcp.model.locking;
+
+import de.dermoba.srcp.model.SRCPAddress;
+
+/**
+ * A lock on one device held by this session for a limited duration and
+ * renewed by the {@link SRCPLeaseManager} before it expires.
+ */
+public class SRCPLease {
+
+	private final String deviceGroup;
+
+	private final SRCPAddress address;
+
+	private final Object controlObject;
+
+	private final int duration;
+
+	/** local time the lock expires unless renewed */
+	private volatile long expiresAt;
+
+	private volatile boolean held = false;
+
+	private volatile Throwable failure;
+
+	/** true while a renewal is in flight */
+	volatile boolean renewing = false;
+
+	SRCPLease(final String deviceGroup, final SRCPAddress address,
+			final Object controlObject, final int duration) {
+		this.deviceGroup = deviceGroup;
+		this.address = address;
+		this.controlObject = controlObject;
+		this.duration = duration;
+	}
+
+	public String getDeviceGroup() {
+		return deviceGroup;
+	}
+
+	public SRCPAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return the object registered for the device with the
+	 *         {@link SRCPLockControl}
+	 */
+	public Object getControlObject() {
+		return controlObject;
+	}
+
+	/**
+	 * @return the duration of the lock in seconds, 0 if it does not expire
+	 */
+	public int getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return true while the lock is held by this session
+	 */
+	public boolean isHeld() {
+		return held;
+	}
+
+	/**
+	 * @return the reason the lock could not be acquired or was lost, null
+	 *         if it is held or was released
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return the local time in ns ({@link System#nanoTime()}) the lock
+	 *         expires unless renewed
+	 */
+	long getExpiresAt() {
+		return expiresAt;
+	}
+
+	void granted(final long sentAt) {
+		expiresAt = sentAt + duration * 1000000000L;
+		failure = null;
+		held = true;
+	}
+
+	void lost(final Throwable failure) {
+		this.failure = failure;
+		held = false;
+	}
+
+	void released() {
+		held = false;
+	}
+
+	@Override
+	public String toString() {
+		return "lease of " + deviceGroup + " " + address + " ("
+				+ (held ? "held" : "not held") + ")";
+	}
+}
@@ -0,0 +1,280 @@
+package de.dermoba.srcp.model.locking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+
+import de.dermoba.srcp.common.Response;
+import de.dermoba.srcp.model.SRCPAddress;
+
+/**
+ * Holds locks of this session as leases and renews them before they
+ * expire.
+ *
+ * Locks of many devices are acquired in one batch: the LOCK SET commands
+ * are pipelined on the command channel without waiting for the replies.
+ * The expiry of each lease is tracked locally, a single scheduler thread
+ * checks the leases periodically and renews all of them which have less
+ * than half of their duration left in one pipelined batch.
+ *
+ * A lease is lost if its renewal fails, if it expires before a renewal
+ * got through, or if the info channel reports that the lock was
+ * terminated or taken by another session. Lost leases are reported to the
+ * {@link SRCPLockChangeListener}s of the {@link SRCPLockControl}.
+ */
+public class SRCPLeaseManager {
+
+	public static final int DEFAULT_CHECK_INTERVAL = 250;
+
+	private static Logger logger = Logger.getLogger(SRCPLeaseManager.class);
+
+	private final SRCPLockControl lockControl;
+
+	private final ScheduledExecutorService scheduler;
+
+	/** the leases held or being acquired, by control object */
+	private final ConcurrentMap<Object, SRCPLease> leases = new ConcurrentHashMap<Object, SRCPLease>();
+
+	SRCPLeaseManager(final SRCPLockControl lockControl) {
+		this(lockControl, DEFAULT_CHECK_INTERVAL);
+	}
+
+	/**
+	 * @param checkInterval
+	 *            the time in ms between two checks for leases to renew
+	 */
+	SRCPLeaseManager(final SRCPLockControl lockControl, final int checkInterval) {
+		this.lockControl = lockControl;
+		final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+				1, new ThreadFactory() {
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r,
+								"SRCP lease manager");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		scheduler = executor;
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					renewLeases();
+				} catch (final RuntimeException e) {
+					logger.error("renewing leases failed", e);
+				}
+			}
+		}, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * acquires the locks of the devices in one pipelined batch. The devices
+	 * must have been registered with the {@link SRCPLockControl}.
+	 *
+	 * @param duration
+	 *            the duration of the locks in seconds, 0 for locks which
+	 *            do not expire
+	 * @return completes when all replies have arrived with one lease per
+	 *         address, in the same order. Leases which could not be
+	 *         acquired are not held and report the reason with
+	 *         {@link SRCPLease#getFailure()}.
+	 */
+	public CompletableFuture<List<SRCPLease>> acquire(
+			final String deviceGroup, final List<SRCPAddress> addresses,
+			final int duration) {
+		if (duration < 0) {
+			throw new IllegalArgumentException("duration must not be negative");
+		}
+		final List<SRCPLease> batch = new ArrayList<SRCPLease>(
+				addresses.size());
+		final CompletableFuture<?>[] replies = new CompletableFuture<?>[addresses
+				.size()];
+		int i = 0;
+		for (final SRCPAddress address : addresses) {
+			final Object object = lockControl.getControlObject(deviceGroup,
+					address.getBus1(), address.getAddress1());
+			final SRCPLease lease = new SRCPLease(deviceGroup, address,
+					object, duration);
+			batch.add(lease);
+			if (object == null) {
+				lease.lost(new SRCPLockingException("Object to lock not found"));
+				replies[i++] = CompletableFuture.completedFuture(null);
+				continue;
+			}
+			final SRCPLease previous = leases.put(object, lease);
+			if (previous != null && previous != lease) {
+				// replaced, the new lease takes over the lock
+				previous.released();
+			}
+			replies[i++] = setLock(lease);
+		}
+		return CompletableFuture.allOf(replies).thenApply(
+				new Function<Void, List<SRCPLease>>() {
+					public List<SRCPLease> apply(final Void v) {
+						return batch;
+					}
+				});
+	}
+
+	/**
+	 * @return the lease of the control object or null
+	 */
+	public SRCPLease getLease(final Object controlObject) {
+		return leases.get(controlObject);
+	}
+
+	/**
+	 * @return the leases held or being acquired
+	 */
+	public List<SRCPLease> getLeases() {
+		return new ArrayList<SRCPLease>(leases.values());
+	}
+
+	/**
+	 * stops renewing the lease and releases the lock.
+	 *
+	 * @return completes when the server has answered
+	 */
+	public CompletableFuture<Void> release(final SRCPLease lease) {
+		if (lease.getControlObject() == null
+				|| !leases.remove(lease.getControlObject(), lease)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		lease.released();
+		return lockControl
+				.getLockDevice(lease.getAddress().getBus1())
+				.termAsync(lease.getDeviceGroup(),
+						lease.getAddress().getAddress1())
+				.handle(new BiFunction<Response, Throwable, Void>() {
+					public Void apply(final Response r, final Throwable t) {
+						if (t != null) {
+							logger.warn("releasing " + lease + " failed", t);
+						}
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * releases all leases in one pipelined batch.
+	 */
+	public CompletableFuture<Void> releaseAll() {
+		final List<SRCPLease> all = getLeases();
+		final CompletableFuture<?>[] replies = new CompletableFuture<?>[all
+				.size()];
+		for (int i = 0; i < replies.length; i++) {
+			replies[i] = release(all.get(i));
+		}
+		return CompletableFuture.allOf(replies);
+	}
+
+	/**
+	 * stops the scheduler, the leases are not renewed anymore.
+	 */
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * sends LOCK SET for the lease, without waiting for the reply.
+	 */
+	private CompletableFuture<Void> setLock(final SRCPLease lease) {
+		final long sentAt = System.nanoTime();
+		return lockControl
+				.getLockDevice(lease.getAddress().getBus1())
+				.setAsync(lease.getDeviceGroup(),
+						lease.getAddress().getAddress1(), lease.getDuration())
+				.handle(new BiFunction<Response, Throwable, Void>() {
+					public Void apply(final Response r, Throwable t) {
+						lease.renewing = false;
+						if (leases.get(lease.getControlObject()) != lease) {
+							// released meanwhile
+							return null;
+						}
+						if (t == null) {
+							lease.granted(sentAt);
+							return null;
+						}
+						if (t instanceof CompletionException
+								&& t.getCause() != null) {
+							t = t.getCause();
+						}
+						lost(lease, t, true);
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * renews all leases with less than half of their duration left, runs in
+	 * the scheduler thread.
+	 */
+	private void renewLeases() {
+		final long now = System.nanoTime();
+		int renewed = 0;
+		for (final SRCPLease lease : leases.values()) {
+			if (!lease.isHeld() || lease.getDuration() == 0 || lease.renewing) {
+				continue;
+			}
+			final long remaining = lease.getExpiresAt() - now;
+			if (remaining <= 0) {
+				lost(lease, new SRCPLockingException("lease expired"), true);
+				continue;
+			}
+			if (remaining > lease.getDuration() * 500000000L) {
+				continue;
+			}
+			lease.renewing = true;
+			setLock(lease);
+			renewed++;
+		}
+		if (renewed > 0 && logger.isDebugEnabled()) {
+			logger.debug("renewing " + renewed + " leases");
+		}
+	}
+
+	/**
+	 * @param inform
+	 *            false if the listeners have been informed by the lock
+	 *            control already
+	 */
+	private void lost(final SRCPLease lease, final Throwable reason,
+			final boolean inform) {
+		if (!leases.remove(lease.getControlObject(), lease)) {
+			return;
+		}
+		final boolean wasHeld = lease.isHeld();
+		lease.lost(reason);
+		logger.warn(lease.getDeviceGroup() + " " + lease.getAddress()
+				+ " lost: " + reason.getMessage());
+		if (wasHeld && inform) {
+			lockControl.informListeners(lease.getControlObject(), false);
+		}
+	}
+
+	/**
+	 * called by the lock control for LOCK infos.
+	 *
+	 * @param sessionID
+	 *            the session holding the lock now, -1 if it was terminated
+	 */
+	void lockChanged(final Object controlObject, final int sessionID) {
+		final SRCPLease lease = leases.get(controlObject);
+		if (lease == null || !lease.isHeld()
+				|| sessionID == lockControl.getSessionID()) {
+			return;
+		}
+		lost(lease, new SRCPLockingException(sessionID < 0 ? "lock terminated"
+				: "lock taken by session " + sessionID), false);
+	}
+}
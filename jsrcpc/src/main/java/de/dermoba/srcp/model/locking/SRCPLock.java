@@ -22,9 +22,9 @@ import de.dermoba.srcp.devices.LOCK;
 
 public class SRCPLock {
 
-	private LOCK	lock;
-	private boolean	locked;
-	private int		sessionID;
+	private volatile LOCK		lock;
+	private volatile boolean	locked;
+	private volatile int		sessionID;
 
 	public SRCPLock(LOCK lock, boolean locked, int sessionID) {
 		super();
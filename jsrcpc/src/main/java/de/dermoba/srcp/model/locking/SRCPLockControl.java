@@ -18,10 +18,11 @@
 
 package de.dermoba.srcp.model.locking;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
@@ -32,25 +33,36 @@ import de.dermoba.srcp.devices.LOCK;
 import de.dermoba.srcp.devices.listener.LOCKInfoListener;
 import de.dermoba.srcp.model.Constants;
 import de.dermoba.srcp.model.SRCPAddress;
+import de.dermoba.srcp.model.SRCPAddressIndex;
+import de.dermoba.srcp.model.SRCPModelEventBus;
 
 public class SRCPLockControl implements LOCKInfoListener, Constants {
 	private static Logger logger = Logger.getLogger(SRCPLockControl.class);
 	private static SRCPLockControl instance = null;
-	private SRCPSession session;
+	private volatile SRCPSession session;
+	private volatile SRCPModelEventBus eventBus;
 
-	Map<String, Map<SRCPAddress, Object>> addressToControlObject;
+	/**
+	 * the index of a device group is guarded by its own monitor
+	 */
+	ConcurrentMap<String, SRCPAddressIndex<Object>> addressToControlObject;
 	Map<Object, SRCPLock> locks;
 
+	/** one stateless LOCK device per bus, shared by all locks of the bus */
+	private final ConcurrentMap<Integer, LOCK> lockDevices;
+
 	private final List<SRCPLockChangeListener> listeners;
-	private int lockDuration = Constants.DEFAULT_LOCK_DURATION;
+	private volatile int lockDuration = Constants.DEFAULT_LOCK_DURATION;
+	private SRCPLeaseManager leaseManager;
 
 	private SRCPLockControl() {
-		addressToControlObject = new HashMap<String, Map<SRCPAddress, Object>>();
-		locks = new HashMap<Object, SRCPLock>();
-		listeners = new ArrayList<SRCPLockChangeListener>();
+		addressToControlObject = new ConcurrentHashMap<String, SRCPAddressIndex<Object>>();
+		locks = new ConcurrentHashMap<Object, SRCPLock>();
+		lockDevices = new ConcurrentHashMap<Integer, LOCK>();
+		listeners = new CopyOnWriteArrayList<SRCPLockChangeListener>();
 	}
 
-	public static SRCPLockControl getInstance() {
+	public static synchronized SRCPLockControl getInstance() {
 		if (instance == null) {
 			instance = new SRCPLockControl();
 		}
@@ -59,31 +71,104 @@ public class SRCPLockControl implements LOCKInfoListener, Constants {
 
 	public void registerControlObject(final String deviceGroup,
 			final SRCPAddress address, final Object object) {
-		if (addressToControlObject.get(deviceGroup) == null) {
-			addressToControlObject.put(deviceGroup,
-					new HashMap<SRCPAddress, Object>());
+		SRCPAddressIndex<Object> index = addressToControlObject
+				.get(deviceGroup);
+		if (index == null) {
+			final SRCPAddressIndex<Object> newIndex = new SRCPAddressIndex<Object>();
+			index = addressToControlObject.putIfAbsent(deviceGroup, newIndex);
+			if (index == null) {
+				index = newIndex;
+			}
 		}
 
-		if (addressToControlObject.get(deviceGroup).get(address) != null) {
-			// got it already
-			return;
+		synchronized (index) {
+			if (index.get(address.getBus1(), address.getAddress1()) != null) {
+				// got it already
+				return;
+			}
+			// the lock must be known before other threads find the object
+			final SRCPLock lock = new SRCPLock(
+					getLockDevice(address.getBus1()), false, -1);
+			locks.put(object, lock);
+			index.put(address.getBus1(), address.getAddress1(), object);
 		}
-		addressToControlObject.get(deviceGroup).put(address, object);
-		final SRCPLock lock = new SRCPLock(
-				new LOCK(session, address.getBus1()), false, -1);
-		locks.put(object, lock);
 	}
 
 	public void unregisterControlObject(final String deviceGroup,
 			final SRCPAddress address) {
-		if (addressToControlObject.get(deviceGroup) == null) {
+		unregisterControlObject(deviceGroup, address.getBus1(),
+				address.getAddress1());
+	}
+
+	public void unregisterControlObject(final String deviceGroup,
+			final int bus, final int address) {
+		final SRCPAddressIndex<Object> index = addressToControlObject
+				.get(deviceGroup);
+		if (index == null) {
 			return;
 		}
-		addressToControlObject.get(deviceGroup).remove(address);
+		synchronized (index) {
+			index.remove(bus, address);
+		}
+	}
+
+	/**
+	 * @return the object registered for the device or <code>null</code>
+	 */
+	Object getControlObject(final String deviceGroup, final int bus,
+			final int address) {
+		final SRCPAddressIndex<Object> index = addressToControlObject
+				.get(deviceGroup);
+		if (index == null) {
+			return null;
+		}
+		synchronized (index) {
+			return index.get(bus, address);
+		}
+	}
+
+	/**
+	 * @return the LOCK device of the bus for the current session
+	 */
+	LOCK getLockDevice(final int bus) {
+		LOCK lock = lockDevices.get(bus);
+		if (lock == null) {
+			final LOCK newLock = new LOCK(session, bus);
+			lock = lockDevices.putIfAbsent(bus, newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+
+	/**
+	 * @return the id of the command session, -1 without session
+	 */
+	int getSessionID() {
+		final SRCPSession s = session;
+		return s == null ? -1 : s.getCommandChannelID();
+	}
+
+	/**
+	 * @return the manager for locks held as renewed leases, started on first
+	 *         use
+	 */
+	public synchronized SRCPLeaseManager getLeaseManager() {
+		if (leaseManager == null) {
+			leaseManager = new SRCPLeaseManager(this);
+		}
+		return leaseManager;
 	}
 
 	public void setSession(final SRCPSession session) {
 		this.session = session;
+		lockDevices.clear();
+		for (final SRCPLock lock : locks.values()) {
+			if (lock.getLock() != null) {
+				lock.setLock(getLockDevice(lock.getLock().getBus()));
+			}
+		}
 		if (session != null) {
 			session.getInfoChannel().addLOCKInfoListener(this);
 		}
@@ -93,14 +178,12 @@ public class SRCPLockControl implements LOCKInfoListener, Constants {
 			final SRCPAddress address) throws SRCPLockingException,
 			SRCPDeviceLockedException {
 		logger.info("acquireLock( " + deviceGroup + " , " + address + " )");
-		if (addressToControlObject.get(deviceGroup) == null) {
-			throw new SRCPLockingException("Object to lock not found");
-		}
-		if (addressToControlObject.get(deviceGroup).get(address) == null) {
+		final Object obj = getControlObject(deviceGroup, address.getBus1(),
+				address.getAddress1());
+		if (obj == null) {
 			throw new SRCPLockingException("Object to lock not found");
 		}
 
-		final Object obj = addressToControlObject.get(deviceGroup).get(address);
 		final SRCPLock sLock = locks.get(obj);
 		final LOCK lock = sLock.getLock();
 		try {
@@ -116,15 +199,12 @@ public class SRCPLockControl implements LOCKInfoListener, Constants {
 			SRCPDeviceLockedException {
 
 		logger.info("releaseLock( " + deviceGroup + " , " + address + " )");
-		if (addressToControlObject.get(deviceGroup) == null) {
-			throw new SRCPLockingException("Object to unlock not found");
-		}
-		if (addressToControlObject.get(deviceGroup).get(address) == null) {
+		final Object obj = getControlObject(deviceGroup, address.getBus1(),
+				address.getAddress1());
+		if (obj == null) {
 			throw new SRCPLockingException("Object to unlock not found");
 		}
 
-		final Object obj = addressToControlObject.get(deviceGroup).get(address);
-
 		final SRCPLock sLock = locks.get(obj);
 		final LOCK lock = sLock.getLock();
 		try {
@@ -142,40 +222,75 @@ public class SRCPLockControl implements LOCKInfoListener, Constants {
 	public void LOCKset(final double timestamp, final int bus,
 			final int address, final String deviceGroup, final int duration,
 			final int sessionID) {
-		logger.debug("LOCKset( " + bus + " , " + address + " , " + deviceGroup
-				+ " , " + duration + " , " + sessionID + " )");
-		final SRCPAddress addr = new SRCPAddress(bus, address);
-
-		if (addressToControlObject.get(deviceGroup) != null) {
-			final Object object = addressToControlObject.get(deviceGroup).get(
-					addr);
-			if (object != null) {
-				final SRCPLock sLock = locks.get(object);
-				sLock.setLocked(true);
-				sLock.setSessionID(sessionID);
-				informListeners(object, true);
+		if (logger.isDebugEnabled()) {
+			logger.debug("LOCKset( " + bus + " , " + address + " , " + deviceGroup
+					+ " , " + duration + " , " + sessionID + " )");
+		}
+		final Object object = getControlObject(deviceGroup, bus, address);
+		if (object != null) {
+			final SRCPLock sLock = locks.get(object);
+			sLock.setLocked(true);
+			sLock.setSessionID(sessionID);
+			informListeners(object, true);
+			final SRCPLeaseManager manager = getExistingLeaseManager();
+			if (manager != null) {
+				manager.lockChanged(object, sessionID);
 			}
 		}
 	}
 
 	public void LOCKterm(final double timestamp, final int bus,
 			final int address, final String deviceGroup) {
-		logger.debug("LOCKterm( " + bus + " , " + address + " , " + deviceGroup
-				+ " )");
-		final SRCPAddress addr = new SRCPAddress(bus, address);
-		if (addressToControlObject.get(deviceGroup) != null) {
-			final Object object = addressToControlObject.get(deviceGroup).get(
-					addr);
-			if (object != null) {
-				final SRCPLock sLock = locks.get(object);
-				sLock.setLocked(false);
-				sLock.setSessionID(-1);
-				informListeners(object, false);
+		if (logger.isDebugEnabled()) {
+			logger.debug("LOCKterm( " + bus + " , " + address + " , " + deviceGroup
+					+ " )");
+		}
+		final Object object = getControlObject(deviceGroup, bus, address);
+		if (object != null) {
+			final SRCPLock sLock = locks.get(object);
+			sLock.setLocked(false);
+			sLock.setSessionID(-1);
+			informListeners(object, false);
+			final SRCPLeaseManager manager = getExistingLeaseManager();
+			if (manager != null) {
+				manager.lockChanged(object, -1);
 			}
 		}
 	}
 
-	private void informListeners(final Object object, final boolean locked) {
+	private synchronized SRCPLeaseManager getExistingLeaseManager() {
+		return leaseManager;
+	}
+
+	/**
+	 * delivers the change events through the bus instead of informing the
+	 * listeners at once on the thread which changed the state.
+	 * 
+	 * @param eventBus
+	 *            the bus, null to inform the listeners at once
+	 */
+	public void setEventBus(final SRCPModelEventBus eventBus) {
+		this.eventBus = eventBus;
+	}
+
+	public SRCPModelEventBus getEventBus() {
+		return eventBus;
+	}
+
+	void informListeners(final Object object, final boolean locked) {
+		final SRCPModelEventBus bus = eventBus;
+		if (bus == null) {
+			fireLockChanged(object, locked);
+			return;
+		}
+		bus.post(this, object, locked, new Runnable() {
+			public void run() {
+				fireLockChanged(object, locked);
+			}
+		});
+	}
+
+	private void fireLockChanged(final Object object, final boolean locked) {
 		for (final SRCPLockChangeListener l : listeners) {
 			l.lockChanged(object, locked);
 		}
@@ -197,12 +312,8 @@ public class SRCPLockControl implements LOCKInfoListener, Constants {
 	public boolean isLocked(final String deviceGroup,
 			final SRCPAddress lookupAddress) {
 
-		final Map<SRCPAddress, Object> deviceGroupLocks = addressToControlObject
-				.get(deviceGroup);
-		if (deviceGroupLocks == null) {
-			return false;
-		}
-		final Object object = deviceGroupLocks.get(lookupAddress);
+		final Object object = getControlObject(deviceGroup,
+				lookupAddress.getBus1(), lookupAddress.getAddress1());
 
 		if (object != null) {
 			final SRCPLock sLock = locks.get(object);
@@ -215,8 +326,8 @@ public class SRCPLockControl implements LOCKInfoListener, Constants {
 	public int getLockingSessionID(final String deviceGroup,
 			final SRCPAddress lookupAddress) {
 
-		final Object object = addressToControlObject.get(deviceGroup).get(
-				lookupAddress);
+		final Object object = getControlObject(deviceGroup,
+				lookupAddress.getBus1(), lookupAddress.getAddress1());
 		if (object != null) {
 			final SRCPLock sLock = locks.get(object);
 			return sLock.getSessionID();
@@ -0,0 +1,269 @@
+package de.dermoba.srcp.model.locomotives;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.common.exception.SRCPException;
+import de.dermoba.srcp.model.locking.SRCPLockControl;
+
+/**
+ * Decorates a strategy so that speed and function changes are sent at most
+ * once per tick and locomotive.
+ *
+ * setSpeed() only stores the new state in the slot of the locomotive and
+ * updates the model, so a following increaseSpeed() builds on it. The
+ * locomotive is marked as having a pending command until the state is sent,
+ * so an older GL INFO does not revert the model meanwhile. Every
+ * tick the newest state of each changed locomotive is sent with the
+ * decorated strategy, intermediate states are dropped. Emergency stops
+ * discard the slot and are sent at once.
+ *
+ * Since commands are sent later, errors of setSpeed() can not be reported
+ * to the caller, they are logged. The future of setSpeedAsync() completes
+ * with the reply to the state which is finally sent for the locomotive, a
+ * state discarded by an emergency stop cancels it.
+ */
+public class CoalescingLocomotiveStrategy extends LocomotiveStrategy {
+
+	private static Logger logger = Logger
+			.getLogger(CoalescingLocomotiveStrategy.class);
+
+	private final LocomotiveStrategy delegate;
+
+	private final ScheduledExecutorService executor;
+
+	/** the newest unsent state per locomotive, guarded by itself */
+	private final Map<SRCPLocomotive, Pending> pending = new IdentityHashMap<SRCPLocomotive, Pending>();
+
+	/** locomotives with a flush queued, guarded by pending */
+	private final Set<SRCPLocomotive> queued = Collections
+			.newSetFromMap(new IdentityHashMap<SRCPLocomotive, Boolean>());
+
+	private final ScheduledFuture<?> tick;
+
+	/**
+	 * @param delegate
+	 *            the strategy which sends the commands
+	 * @param executor
+	 *            runs the ticks and the commands, should have more than one
+	 *            thread so that a slow reply does not delay other
+	 *            locomotives
+	 * @param tickMillis
+	 *            the interval of the ticks in ms
+	 */
+	public CoalescingLocomotiveStrategy(final LocomotiveStrategy delegate,
+			final ScheduledExecutorService executor, final long tickMillis) {
+		this.delegate = delegate;
+		this.executor = executor;
+		tick = executor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				tick();
+			}
+		}, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public LocomotiveStrategy getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void setSpeed(final SRCPLocomotive locomotive, final int speed,
+			final SRCPLocomotiveFunctions functions) throws SRCPException {
+		coalesce(locomotive, speed, functions, null);
+	}
+
+	@Override
+	public CompletableFuture<Void> setSpeedAsync(
+			final SRCPLocomotive locomotive, final int speed,
+			final SRCPLocomotiveFunctions functions) {
+		final CompletableFuture<Void> reply = new CompletableFuture<Void>();
+		if (!coalesce(locomotive, speed, functions, reply)) {
+			reply.complete(null);
+		}
+		return reply;
+	}
+
+	/**
+	 * stores the state in the slot of the locomotive, the waiters of a
+	 * replaced state wait for the new one.
+	 *
+	 * @return false if the speed is out of range and nothing is sent
+	 */
+	private boolean coalesce(final SRCPLocomotive locomotive, final int speed,
+			SRCPLocomotiveFunctions functions,
+			final CompletableFuture<Void> reply) {
+		if (speed < 0 || speed > locomotive.getDrivingSteps()) {
+			// ignored by the strategies as well
+			return false;
+		}
+		if (functions == null) {
+			functions = locomotive.getFunctionState();
+		}
+		synchronized (pending) {
+			final Pending p = new Pending(speed, functions);
+			final Pending replaced = pending.put(locomotive, p);
+			if (replaced != null) {
+				p.replies.addAll(replaced.replies);
+			}
+			if (reply != null) {
+				p.replies.add(reply);
+			}
+		}
+		locomotive.setCommandPending(true);
+		locomotive.setCurrentSpeed(speed);
+		locomotive.setFunctionState(functions);
+		return true;
+	}
+
+	@Override
+	public void emergencyStop(final SRCPLocomotive locomotive,
+			final SRCPLocomotiveFunctions functions) throws SRCPException {
+		synchronized (locomotive) {
+			discard(locomotive);
+			delegate.emergencyStop(locomotive, functions);
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> emergencyStopAsync(
+			final SRCPLocomotive locomotive,
+			final SRCPLocomotiveFunctions functions) {
+		synchronized (locomotive) {
+			discard(locomotive);
+			return delegate.emergencyStopAsync(locomotive, functions);
+		}
+	}
+
+	@Override
+	public void initLocomotive(final SRCPLocomotive locomotive,
+			final SRCPSession session, final SRCPLockControl lockControl)
+			throws SRCPLocomotiveException {
+		delegate.initLocomotive(locomotive, session, lockControl);
+	}
+
+	@Override
+	public SRCPLocomotiveFunctions getEmergencyStopFunctionState(
+			final SRCPLocomotive locomotive, final int emergencyStopFunction) {
+		return delegate.getEmergencyStopFunctionState(locomotive,
+				emergencyStopFunction);
+	}
+
+	/**
+	 * drops the unsent state of the locomotive, its waiters are cancelled.
+	 */
+	private void discard(final SRCPLocomotive locomotive) {
+		final Pending p;
+		synchronized (pending) {
+			p = pending.remove(locomotive);
+		}
+		locomotive.setCommandPending(false);
+		if (p != null) {
+			for (final CompletableFuture<Void> reply : p.replies) {
+				reply.cancel(false);
+			}
+		}
+	}
+
+	private void tick() {
+		final List<SRCPLocomotive> due = new ArrayList<SRCPLocomotive>();
+		synchronized (pending) {
+			for (final SRCPLocomotive locomotive : pending.keySet()) {
+				if (queued.add(locomotive)) {
+					due.add(locomotive);
+				}
+			}
+		}
+		for (final SRCPLocomotive locomotive : due) {
+			executor.execute(new Runnable() {
+				public void run() {
+					flush(locomotive);
+				}
+			});
+		}
+	}
+
+	/**
+	 * sends the newest state of the locomotive. Holding the monitor of the
+	 * locomotive while taking and sending the state keeps the commands in
+	 * order if flushes of the same locomotive overlap.
+	 */
+	private void flush(final SRCPLocomotive locomotive) {
+		synchronized (locomotive) {
+			final Pending p;
+			synchronized (pending) {
+				queued.remove(locomotive);
+				p = pending.remove(locomotive);
+			}
+			if (p == null) {
+				return;
+			}
+			Throwable failure = null;
+			try {
+				delegate.setSpeed(locomotive, p.speed, p.functions);
+			} catch (final SRCPException e) {
+				logger.error("setting speed of " + locomotive + " failed", e);
+				failure = e;
+			} catch (final RuntimeException e) {
+				logger.error("setting speed of " + locomotive + " failed", e);
+				failure = e;
+			} finally {
+				locomotive.setCommandPending(false);
+			}
+			for (final CompletableFuture<Void> reply : p.replies) {
+				if (failure == null) {
+					reply.complete(null);
+				} else {
+					reply.completeExceptionally(failure);
+				}
+			}
+		}
+	}
+
+	/**
+	 * sends all pending states now, in the calling thread.
+	 */
+	public void flush() {
+		final List<SRCPLocomotive> locomotives;
+		synchronized (pending) {
+			locomotives = new ArrayList<SRCPLocomotive>(pending.keySet());
+		}
+		for (final SRCPLocomotive locomotive : locomotives) {
+			flush(locomotive);
+		}
+	}
+
+	/**
+	 * stops the ticks after sending all pending states.
+	 */
+	public void shutdown() {
+		tick.cancel(false);
+		flush();
+	}
+
+	private static final class Pending {
+
+		final int speed;
+
+		final SRCPLocomotiveFunctions functions;
+
+		/** completed with the reply to this state, guarded by pending */
+		final List<CompletableFuture<Void>> replies = new ArrayList<CompletableFuture<Void>>(
+				1);
+
+		Pending(final int speed, final SRCPLocomotiveFunctions functions) {
+			this.speed = speed;
+			this.functions = functions;
+		}
+	}
+}
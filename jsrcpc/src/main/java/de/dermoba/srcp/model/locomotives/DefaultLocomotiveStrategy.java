@@ -1,5 +1,8 @@
 package de.dermoba.srcp.model.locomotives;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 import de.dermoba.srcp.client.SRCPSession;
 import de.dermoba.srcp.common.Response;
 import de.dermoba.srcp.common.exception.SRCPException;
@@ -12,9 +15,9 @@ public class DefaultLocomotiveStrategy extends LocomotiveStrategy {
 
 	@Override
 	public void setSpeed(final SRCPLocomotive locomotive, final int speed,
-			boolean[] functions) throws SRCPException {
+			SRCPLocomotiveFunctions functions) throws SRCPException {
 		if (functions == null) {
-			functions = locomotive.getFunctions();
+			functions = locomotive.getFunctionState();
 		}
 
 		final String resp = setSpeedOnGl(locomotive.getGL(), locomotive, speed,
@@ -27,7 +30,25 @@ public class DefaultLocomotiveStrategy extends LocomotiveStrategy {
 		locomotive.setLastCommandAcknowledge(r.getTimestamp());
 
 		locomotive.setCurrentSpeed(speed);
-		locomotive.setFunctions(functions);
+		locomotive.setFunctionState(functions);
+	}
+
+	@Override
+	public CompletableFuture<Void> setSpeedAsync(
+			final SRCPLocomotive locomotive, final int speed,
+			final SRCPLocomotiveFunctions functions) {
+		final SRCPLocomotiveFunctions newFunctions = functions != null ? functions
+				: locomotive.getFunctionState();
+		final CompletableFuture<Response> reply = setSpeedOnGlAsync(
+				locomotive.getGL(), locomotive, speed, newFunctions);
+		if (reply == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return reply.thenAcceptAsync(new Consumer<Response>() {
+			public void accept(final Response r) {
+				acknowledged(locomotive, r.getTimestamp(), speed, newFunctions);
+			}
+		});
 	}
 
 	@Override
@@ -62,18 +83,18 @@ public class DefaultLocomotiveStrategy extends LocomotiveStrategy {
 	}
 
 	@Override
-	public boolean[] getEmergencyStopFunctions(final SRCPLocomotive locomotive,
-			final int emergencyStopFunction) {
+	public SRCPLocomotiveFunctions getEmergencyStopFunctionState(
+			final SRCPLocomotive locomotive, final int emergencyStopFunction) {
 		if (locomotive instanceof MMDigitalLocomotive) {
-			final boolean[] functions = new boolean[] { false, false, false,
-					false, false };
+			final SRCPLocomotiveFunctions functions = SRCPLocomotiveFunctions
+					.allOff(MMDigitalLocomotive.FUNCTION_COUNT);
 			if (emergencyStopFunction != -1
-					&& emergencyStopFunction < functions.length) {
-				functions[emergencyStopFunction] = true;
+					&& emergencyStopFunction < functions.getCount()) {
+				return functions.with(emergencyStopFunction, true);
 			}
 			return functions;
 		} else {
-			return new boolean[] { true };
+			return SRCPLocomotiveFunctions.valueOf(1L, 1);
 		}
 	}
 }
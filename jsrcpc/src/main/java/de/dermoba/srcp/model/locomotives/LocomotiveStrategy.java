@@ -1,21 +1,120 @@
 package de.dermoba.srcp.model.locomotives;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.common.Response;
 import de.dermoba.srcp.common.exception.SRCPException;
+import de.dermoba.srcp.common.exception.SRCPIOException;
 import de.dermoba.srcp.devices.GL;
 import de.dermoba.srcp.model.locking.SRCPLockControl;
 
 public abstract class LocomotiveStrategy {
 
+	/**
+	 * sets speed and functions.
+	 */
 	public abstract void setSpeed(final SRCPLocomotive locomotive,
-			final int speed, boolean[] functions) throws SRCPException;
+			final int speed, final SRCPLocomotiveFunctions functions)
+			throws SRCPException;
+
+	/**
+	 * @deprecated use
+	 *             {@link #setSpeed(SRCPLocomotive, int, SRCPLocomotiveFunctions)}
+	 */
+	@Deprecated
+	public void setSpeed(final SRCPLocomotive locomotive, final int speed,
+			final boolean[] functions) throws SRCPException {
+		setSpeed(locomotive, speed, SRCPLocomotiveFunctions.valueOf(functions));
+	}
+
+	/**
+	 * non-blocking variant of
+	 * {@link #setSpeed(SRCPLocomotive, int, SRCPLocomotiveFunctions)}, the
+	 * model is updated when the server has acknowledged the command. The
+	 * default implementation sends the command in the calling thread.
+	 */
+	public CompletableFuture<Void> setSpeedAsync(
+			final SRCPLocomotive locomotive, final int speed,
+			final SRCPLocomotiveFunctions functions) {
+		final CompletableFuture<Void> done = new CompletableFuture<Void>();
+		try {
+			setSpeed(locomotive, speed, functions);
+			done.complete(null);
+		} catch (final SRCPException e) {
+			done.completeExceptionally(e);
+		}
+		return done;
+	}
+
+	/**
+	 * non-blocking variant of
+	 * {@link #emergencyStop(SRCPLocomotive, SRCPLocomotiveFunctions)}
+	 */
+	public CompletableFuture<Void> emergencyStopAsync(
+			final SRCPLocomotive locomotive,
+			final SRCPLocomotiveFunctions functions) {
+		return setSpeedAsync(locomotive, 0, functions);
+	}
+
+	/**
+	 * updates the model when the server has acknowledged a command sent
+	 * with setSpeedAsync(), under the monitor of the locomotive. Call it
+	 * from an asynchronous stage: the reader thread completing the reply
+	 * must not wait for the monitor, its holder may wait for a reply. A
+	 * reply older than the last acknowledged one is ignored.
+	 */
+	protected static void acknowledged(final SRCPLocomotive locomotive,
+			final double timestamp, final int speed,
+			final SRCPLocomotiveFunctions functions) {
+		synchronized (locomotive) {
+			if (timestamp < locomotive.getLastCommandAcknowledge()) {
+				return;
+			}
+			locomotive.setLastCommandAcknowledge(timestamp);
+			locomotive.setCurrentSpeed(speed);
+			locomotive.setFunctionState(functions);
+		}
+	}
+
+	/**
+	 * waits for a reply, failures are thrown as the {@link SRCPException}
+	 * they carry.
+	 */
+	protected static <T> T await(final CompletableFuture<T> future)
+			throws SRCPException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SRCPIOException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof SRCPException) {
+				throw (SRCPException) e.getCause();
+			}
+			throw new SRCPIOException(e.getCause());
+		}
+	}
 
 	public abstract void initLocomotive(final SRCPLocomotive locomotive,
 			final SRCPSession session, final SRCPLockControl lockControl)
 			throws SRCPLocomotiveException;
 
+	/**
+	 * @deprecated use
+	 *             {@link #setSpeedOnGl(GL, SRCPLocomotive, int, SRCPLocomotiveFunctions)}
+	 */
+	@Deprecated
 	protected String setSpeedOnGl(final GL gl, final SRCPLocomotive locomotive,
 			final int speed, final boolean[] functions) throws SRCPException {
+		return setSpeedOnGl(gl, locomotive, speed,
+				SRCPLocomotiveFunctions.valueOf(functions));
+	}
+
+	protected String setSpeedOnGl(final GL gl, final SRCPLocomotive locomotive,
+			final int speed, final SRCPLocomotiveFunctions functions)
+			throws SRCPException {
 		final int drivingSteps = locomotive.getDrivingSteps();
 		if (speed < 0 || speed > drivingSteps) {
 			return "";
@@ -39,7 +138,53 @@ public abstract class LocomotiveStrategy {
 		return resp;
 	}
 
-	public abstract boolean[] getEmergencyStopFunctions(
-			final SRCPLocomotive locomotive, int emergencyStopFunction);
+	/**
+	 * stops the locomotive at once, strategies which delay commands must not
+	 * delay this one.
+	 */
+	public void emergencyStop(final SRCPLocomotive locomotive,
+			final SRCPLocomotiveFunctions functions) throws SRCPException {
+		setSpeed(locomotive, 0, functions);
+	}
+
+	/**
+	 * non-blocking variant of
+	 * {@link #setSpeedOnGl(GL, SRCPLocomotive, int, SRCPLocomotiveFunctions)}
+	 * 
+	 * @return the future reply or <code>null</code> if the speed is out of
+	 *         range
+	 */
+	protected CompletableFuture<Response> setSpeedOnGlAsync(final GL gl,
+			final SRCPLocomotive locomotive, final int speed,
+			final SRCPLocomotiveFunctions functions) {
+		final int drivingSteps = locomotive.getDrivingSteps();
+		if (speed < 0 || speed > drivingSteps) {
+			return null;
+		}
+		SRCPLocomotiveDirection direction = locomotive.direction;
+		if (direction == SRCPLocomotiveDirection.UNDEF) {
+			direction = SRCPLocomotiveDirection.FORWARD;
+			locomotive.setDirection(direction);
+		}
+		return gl.setAsync(direction, speed, drivingSteps, functions);
+	}
+
+	/**
+	 * @return the functions to send with an emergency stop
+	 */
+	public abstract SRCPLocomotiveFunctions getEmergencyStopFunctionState(
+			final SRCPLocomotive locomotive, final int emergencyStopFunction);
+
+	/**
+	 * @deprecated use
+	 *             {@link #getEmergencyStopFunctionState(SRCPLocomotive, int)}
+	 */
+	@Deprecated
+	public boolean[] getEmergencyStopFunctions(
+			final SRCPLocomotive locomotive, final int emergencyStopFunction) {
+		final SRCPLocomotiveFunctions functions = getEmergencyStopFunctionState(
+				locomotive, emergencyStopFunction);
+		return functions == null ? null : functions.toArray();
+	}
 
 }
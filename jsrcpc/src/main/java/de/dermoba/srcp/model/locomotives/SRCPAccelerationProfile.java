@@ -0,0 +1,93 @@
+package de.dermoba.srcp.model.locomotives;
+
+/**
+ * How fast a locomotive changes its speed when driven by the
+ * {@link SRCPLocomotiveRampEngine}: the time in ms between two speed steps
+ * when accelerating and when braking.
+ *
+ * Instances are immutable and can be shared by any number of ramps.
+ */
+public final class SRCPAccelerationProfile {
+
+	/** changes the speed one step per tick of the ramp engine */
+	public static final SRCPAccelerationProfile FASTEST = new SRCPAccelerationProfile(
+			0, 0);
+
+	private final int accelerationStepMillis;
+
+	private final int brakingStepMillis;
+
+	/**
+	 * @param accelerationStepMillis
+	 *            time in ms between two steps when the speed increases
+	 * @param brakingStepMillis
+	 *            time in ms between two steps when the speed decreases
+	 */
+	public SRCPAccelerationProfile(final int accelerationStepMillis,
+			final int brakingStepMillis) {
+		if (accelerationStepMillis < 0 || brakingStepMillis < 0) {
+			throw new IllegalArgumentException(
+					"step times must not be negative");
+		}
+		this.accelerationStepMillis = accelerationStepMillis;
+		this.brakingStepMillis = brakingStepMillis;
+	}
+
+	/**
+	 * @param accelerationMillis
+	 *            time in ms to accelerate from standstill to full speed
+	 * @param brakingMillis
+	 *            time in ms to brake from full speed to standstill
+	 * @param drivingSteps
+	 *            the number of speed steps of the locomotive
+	 */
+	public static SRCPAccelerationProfile forDurations(
+			final int accelerationMillis, final int brakingMillis,
+			final int drivingSteps) {
+		if (drivingSteps < 1) {
+			throw new IllegalArgumentException(
+					"at least one driving step is required");
+		}
+		return new SRCPAccelerationProfile(accelerationMillis / drivingSteps,
+				brakingMillis / drivingSteps);
+	}
+
+	public int getAccelerationStepMillis() {
+		return accelerationStepMillis;
+	}
+
+	public int getBrakingStepMillis() {
+		return brakingStepMillis;
+	}
+
+	/**
+	 * @return the time in ms between two steps
+	 */
+	public int getStepMillis(final boolean accelerating) {
+		return accelerating ? accelerationStepMillis : brakingStepMillis;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SRCPAccelerationProfile)) {
+			return false;
+		}
+		final SRCPAccelerationProfile other = (SRCPAccelerationProfile) obj;
+		return accelerationStepMillis == other.accelerationStepMillis
+				&& brakingStepMillis == other.brakingStepMillis;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * accelerationStepMillis + brakingStepMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "SRCPAccelerationProfile[" + accelerationStepMillis + "ms/"
+				+ brakingStepMillis + "ms]";
+	}
+}
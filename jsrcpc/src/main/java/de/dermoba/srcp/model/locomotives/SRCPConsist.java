@@ -0,0 +1,112 @@
+package de.dermoba.srcp.model.locomotives;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Several locomotives driven as one unit, e.g. a double or triple headed
+ * train. The consist has its own speed steps and direction, each member
+ * follows them according to its {@link SRCPConsistMember} settings.
+ *
+ * The consist is driven by the {@link SRCPLocomotiveControl}, which sends
+ * the commands of all members back to back.
+ *
+ * A double MM locomotive, which drives two GL addresses for one logical
+ * locomotive, is a single member; its strategy pipelines its two commands
+ * as well.
+ */
+public class SRCPConsist {
+
+	private final String name;
+
+	private final int drivingSteps;
+
+	private final List<SRCPConsistMember> members = new CopyOnWriteArrayList<SRCPConsistMember>();
+
+	private volatile SRCPLocomotiveDirection direction = SRCPLocomotiveDirection.FORWARD;
+
+	private volatile int currentSpeed = 0;
+
+	/**
+	 * @param drivingSteps
+	 *            the number of speed steps of the consist, the speeds of
+	 *            the members are scaled to their own steps
+	 */
+	public SRCPConsist(final String name, final int drivingSteps) {
+		if (drivingSteps < 1) {
+			throw new IllegalArgumentException(
+					"at least one driving step is required");
+		}
+		this.name = name;
+		this.drivingSteps = drivingSteps;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getDrivingSteps() {
+		return drivingSteps;
+	}
+
+	public void addMember(final SRCPConsistMember member) {
+		members.add(member);
+	}
+
+	/**
+	 * adds the locomotive to the consist.
+	 *
+	 * @see SRCPConsistMember#SRCPConsistMember(SRCPLocomotive, boolean,
+	 *      double)
+	 */
+	public SRCPConsistMember addMember(final SRCPLocomotive locomotive,
+			final boolean reversed, final double speedScale) {
+		final SRCPConsistMember member = new SRCPConsistMember(locomotive,
+				reversed, speedScale);
+		members.add(member);
+		return member;
+	}
+
+	/**
+	 * @return true if the locomotive was a member
+	 */
+	public boolean removeMember(final SRCPLocomotive locomotive) {
+		for (final SRCPConsistMember member : members) {
+			if (member.getLocomotive() == locomotive) {
+				return members.remove(member);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return a read-only snapshot of the members
+	 */
+	public List<SRCPConsistMember> getMembers() {
+		return Collections.unmodifiableList(Arrays.asList(members
+				.toArray(new SRCPConsistMember[0])));
+	}
+
+	public SRCPLocomotiveDirection getDirection() {
+		return direction;
+	}
+
+	void setDirection(final SRCPLocomotiveDirection direction) {
+		this.direction = direction;
+	}
+
+	public int getCurrentSpeed() {
+		return currentSpeed;
+	}
+
+	void setCurrentSpeed(final int currentSpeed) {
+		this.currentSpeed = currentSpeed;
+	}
+
+	@Override
+	public String toString() {
+		return "SRCPConsist[" + name + ", " + members.size() + " members]";
+	}
+}
@@ -0,0 +1,93 @@
+package de.dermoba.srcp.model.locomotives;
+
+/**
+ * A locomotive in a {@link SRCPConsist} together with how it follows the
+ * consist: whether it runs reversed, e.g. because it is coupled back to
+ * back with the leading locomotive, and how its speed is scaled so that
+ * locomotives with different motors run at the same pace.
+ *
+ * Instances are immutable.
+ */
+public final class SRCPConsistMember {
+
+	private final SRCPLocomotive locomotive;
+
+	private final boolean reversed;
+
+	private final double speedScale;
+
+	/**
+	 * @param reversed
+	 *            true if the locomotive runs in the opposite direction of the
+	 *            consist
+	 * @param speedScale
+	 *            factor applied to the speed of the consist, 1 for none
+	 */
+	public SRCPConsistMember(final SRCPLocomotive locomotive,
+			final boolean reversed, final double speedScale) {
+		if (locomotive == null) {
+			throw new IllegalArgumentException("locomotive must not be null");
+		}
+		if (!(speedScale > 0)) {
+			throw new IllegalArgumentException("speed scale must be positive");
+		}
+		this.locomotive = locomotive;
+		this.reversed = reversed;
+		this.speedScale = speedScale;
+	}
+
+	public SRCPLocomotive getLocomotive() {
+		return locomotive;
+	}
+
+	public boolean isReversed() {
+		return reversed;
+	}
+
+	public double getSpeedScale() {
+		return speedScale;
+	}
+
+	/**
+	 * @return the direction of the locomotive when the consist runs in
+	 *         direction
+	 */
+	public SRCPLocomotiveDirection getDirection(
+			final SRCPLocomotiveDirection direction) {
+		if (!reversed) {
+			return direction;
+		}
+		switch (direction) {
+		case FORWARD:
+			return SRCPLocomotiveDirection.REVERSE;
+		case REVERSE:
+			return SRCPLocomotiveDirection.FORWARD;
+		case UNDEF:
+		default:
+			return direction;
+		}
+	}
+
+	/**
+	 * @param speed
+	 *            the speed of the consist
+	 * @param drivingSteps
+	 *            the number of speed steps of the consist
+	 * @return the speed of the locomotive, scaled to its own speed steps.
+	 *         A moving consist never leaves a member standing.
+	 */
+	public int getSpeed(final int speed, final int drivingSteps) {
+		if (speed <= 0) {
+			return 0;
+		}
+		final int steps = locomotive.getDrivingSteps();
+		final long scaled = Math.round((double) speed * speedScale * steps
+				/ drivingSteps);
+		return (int) Math.max(1, Math.min(steps, scaled));
+	}
+
+	@Override
+	public String toString() {
+		return locomotive + (reversed ? " reversed" : "") + " x" + speedScale;
+	}
+}
@@ -23,19 +23,27 @@ import de.dermoba.srcp.devices.GL;
 
 public abstract class SRCPLocomotive {
 
-	protected boolean initialized = false;
+	protected volatile boolean initialized = false;
 
-	protected SRCPLocomotiveDirection direction = SRCPLocomotiveDirection.FORWARD;
+	protected volatile SRCPLocomotiveDirection direction = SRCPLocomotiveDirection.FORWARD;
 
-	protected int currentSpeed = 0;
+	protected volatile int currentSpeed = 0;
 
-	private GL gl;
+	private volatile GL gl;
 
-	private SRCPSession session;
+	private volatile SRCPSession session;
 
 	protected int functionCount;
 
-	protected boolean[] functions;
+	/**
+	 * the function state of the array API, the array returned by
+	 * {@link #getFunctions()}. Changes to it are seen by
+	 * {@link #getFunctionState()}.
+	 */
+	protected volatile boolean[] functions;
+
+	/** the state last derived from or written to functions */
+	private volatile SRCPLocomotiveFunctions functionState;
 
 	protected String[] params;
 
@@ -47,7 +55,9 @@ public abstract class SRCPLocomotive {
 
 	protected int address;
 
-	private double lastCommandAcknowledge;
+	private volatile double lastCommandAcknowledge;
+
+	private volatile boolean commandPending;
 
 	private SRCPLocomotive extendingLocomotive;
 
@@ -117,6 +127,32 @@ public abstract class SRCPLocomotive {
 		this.functions = functions;
 	}
 
+	/**
+	 * @return the function state, it follows changes made to the array of
+	 *         {@link #getFunctions()}
+	 */
+	public SRCPLocomotiveFunctions getFunctionState() {
+		final boolean[] f = functions;
+		SRCPLocomotiveFunctions state = functionState;
+		if (f == null) {
+			return state;
+		}
+		if (state == null || !state.matches(f)) {
+			state = SRCPLocomotiveFunctions.valueOf(f);
+			functionState = state;
+		}
+		return state;
+	}
+
+	public void setFunctionState(final SRCPLocomotiveFunctions functions) {
+		if (functions.getCount() < functionCount) {
+			throw new IllegalArgumentException(
+					"function count must not be smaller than " + functionCount);
+		}
+		this.functionState = functions;
+		this.functions = functions.toArray();
+	}
+
 	public GL getGL() {
 		return this.gl;
 	}
@@ -175,6 +211,25 @@ public abstract class SRCPLocomotive {
 		this.lastCommandAcknowledge = lastCommandAcknowledge;
 	}
 
+	/**
+	 * @return true while a command changing the locomotive is not sent yet,
+	 *         infos of the server are older than the state of the model then
+	 */
+	public boolean isCommandPending() {
+		return commandPending;
+	}
+
+	/**
+	 * Set by a strategy which sends commands later, e.g. the
+	 * {@link CoalescingLocomotiveStrategy}.
+	 * 
+	 * @param commandPending
+	 *            true from changing the state until the command is sent
+	 */
+	public void setCommandPending(final boolean commandPending) {
+		this.commandPending = commandPending;
+	}
+
 	public void setExtendingLocomotive(final SRCPLocomotive extendingLocomotive) {
 		this.extendingLocomotive = extendingLocomotive;
 
@@ -18,11 +18,22 @@
 
 package de.dermoba.srcp.model.locomotives;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.apache.log4j.Logger;
 
@@ -34,6 +45,8 @@ import de.dermoba.srcp.model.Constants;
 import de.dermoba.srcp.model.InvalidAddressException;
 import de.dermoba.srcp.model.NoSessionException;
 import de.dermoba.srcp.model.SRCPAddress;
+import de.dermoba.srcp.model.SRCPAddressIndex;
+import de.dermoba.srcp.model.SRCPModelEventBus;
 import de.dermoba.srcp.model.SRCPModelException;
 import de.dermoba.srcp.model.locking.SRCPLockChangeListener;
 import de.dermoba.srcp.model.locking.SRCPLockControl;
@@ -41,6 +54,10 @@ import de.dermoba.srcp.model.locking.SRCPLockControl;
 /**
  * Controls all actions which can be performed on Locomotives.
  * 
+ * The control can be used from several threads. Commands to one locomotive
+ * are serialized by the monitor of the locomotive, commands to different
+ * locomotives run in parallel.
+ * 
  * @author fork
  * 
  */
@@ -53,8 +70,16 @@ public class SRCPLocomotiveControl implements GLInfoListener, Constants {
 	private final SRCPLockControl lockControl = SRCPLockControl.getInstance();
 
 	private final List<SRCPLocomotive> srcpLocomotives;
-	private final Map<SRCPAddress, SRCPLocomotive> addressLocomotiveCache;
-	private SRCPSession session;
+	/** guarded by itself */
+	private final SRCPAddressIndex<SRCPLocomotive> addressLocomotiveCache;
+	private volatile SRCPSession session;
+	private volatile SRCPModelEventBus eventBus;
+
+	/** the strategies in use, with or without coalescing */
+	@SuppressWarnings("rawtypes")
+	private volatile Map<Class, LocomotiveStrategy> strategies = locomotiveStrategies;
+	private ScheduledExecutorService coalescingExecutor;
+	private SRCPLocomotiveRampEngine rampEngine;
 
 	@SuppressWarnings("rawtypes")
 	private static final Map<Class, LocomotiveStrategy> locomotiveStrategies = new HashMap<Class, LocomotiveStrategy>();
@@ -69,12 +94,81 @@ public class SRCPLocomotiveControl implements GLInfoListener, Constants {
 
 	private SRCPLocomotiveControl() {
 		logger.info("SRCPLocomotiveControl loaded");
-		listeners = new ArrayList<SRCPLocomotiveChangeListener>();
-		srcpLocomotives = new ArrayList<SRCPLocomotive>();
-		addressLocomotiveCache = new HashMap<SRCPAddress, SRCPLocomotive>();
+		listeners = new CopyOnWriteArrayList<SRCPLocomotiveChangeListener>();
+		srcpLocomotives = new CopyOnWriteArrayList<SRCPLocomotive>();
+		addressLocomotiveCache = new SRCPAddressIndex<SRCPLocomotive>();
+	}
+
+	private LocomotiveStrategy getStrategy(final SRCPLocomotive locomotive) {
+		return strategies.get(locomotive.getClass());
+	}
+
+	/**
+	 * switches coalescing of speed and function changes on or off. With
+	 * coalescing, changes are sent at most once per tick and locomotive,
+	 * only the newest state is sent. Emergency stops are sent at once.
+	 * 
+	 * @param tickMillis
+	 *            the interval in ms, 0 switches coalescing off
+	 * @see CoalescingLocomotiveStrategy
+	 */
+	@SuppressWarnings("rawtypes")
+	public synchronized void setSpeedCoalescing(final int tickMillis) {
+		if (coalescingExecutor != null) {
+			// several locomotive classes share a wrapper
+			final Set<LocomotiveStrategy> wrappers = Collections
+					.newSetFromMap(new IdentityHashMap<LocomotiveStrategy, Boolean>());
+			wrappers.addAll(strategies.values());
+			for (final LocomotiveStrategy strategy : wrappers) {
+				((CoalescingLocomotiveStrategy) strategy).shutdown();
+			}
+			coalescingExecutor.shutdown();
+			coalescingExecutor = null;
+			strategies = locomotiveStrategies;
+		}
+		if (tickMillis <= 0) {
+			return;
+		}
+		coalescingExecutor = new ScheduledThreadPoolExecutor(Math.max(2,
+				Runtime.getRuntime().availableProcessors()),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r,
+								"SRCP speed coalescing "
+										+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		final Map<LocomotiveStrategy, LocomotiveStrategy> wrappers = new IdentityHashMap<LocomotiveStrategy, LocomotiveStrategy>();
+		final Map<Class, LocomotiveStrategy> coalescing = new HashMap<Class, LocomotiveStrategy>();
+		for (final Map.Entry<Class, LocomotiveStrategy> e : locomotiveStrategies
+				.entrySet()) {
+			LocomotiveStrategy wrapper = wrappers.get(e.getValue());
+			if (wrapper == null) {
+				wrapper = new CoalescingLocomotiveStrategy(e.getValue(),
+						coalescingExecutor, tickMillis);
+				wrappers.put(e.getValue(), wrapper);
+			}
+			coalescing.put(e.getKey(), wrapper);
+		}
+		strategies = coalescing;
 	}
 
-	public static SRCPLocomotiveControl getInstance() {
+	/**
+	 * @return the engine driving the acceleration and braking ramps of the
+	 *         locomotives, started on first use
+	 */
+	public synchronized SRCPLocomotiveRampEngine getRampEngine() {
+		if (rampEngine == null) {
+			rampEngine = new SRCPLocomotiveRampEngine(this);
+		}
+		return rampEngine;
+	}
+
+	public static synchronized SRCPLocomotiveControl getInstance() {
 		if (instance == null) {
 			instance = new SRCPLocomotiveControl();
 		}
@@ -94,22 +188,24 @@ public class SRCPLocomotiveControl implements GLInfoListener, Constants {
 
 	public void toggleDirection(final SRCPLocomotive locomotive)
 			throws SRCPLocomotiveException, SRCPModelException {
-		checkLocomotive(locomotive);
-		switch (locomotive.direction) {
-		case REVERSE:
-			locomotive.setDirection(SRCPLocomotiveDirection.FORWARD);
-			break;
-		case FORWARD:
-		case UNDEF:
-		default:
-			locomotive.setDirection(SRCPLocomotiveDirection.REVERSE);
-			break;
-
-		}
-		locomotive.setPreventDirectionToggle(true);
-		setSpeed(locomotive, 0, locomotive.getFunctions());
-		setSpeed(locomotive, 0, locomotive.getFunctions());
-		informListeners(locomotive);
+		synchronized (locomotive) {
+			checkLocomotive(locomotive);
+			switch (locomotive.direction) {
+			case REVERSE:
+				locomotive.setDirection(SRCPLocomotiveDirection.FORWARD);
+				break;
+			case FORWARD:
+			case UNDEF:
+			default:
+				locomotive.setDirection(SRCPLocomotiveDirection.REVERSE);
+				break;
+
+			}
+			locomotive.setPreventDirectionToggle(true);
+			setSpeed(locomotive, 0, locomotive.getFunctionState());
+			setSpeed(locomotive, 0, locomotive.getFunctionState());
+			informListeners(locomotive);
+		}
 	}
 
 	public SRCPLocomotiveDirection getDirection(final SRCPLocomotive locomotive) {
@@ -129,58 +225,254 @@ public class SRCPLocomotiveControl implements GLInfoListener, Constants {
 	public void setSpeed(final SRCPLocomotive locomotive, final int speed,
 			final boolean[] functions) throws SRCPLocomotiveException,
 			SRCPModelException {
+		setSpeed(locomotive, speed, SRCPLocomotiveFunctions.valueOf(functions));
+	}
 
-		checkLocomotive(locomotive);
-		try {
-			final LocomotiveStrategy strategy = locomotiveStrategies
-					.get(locomotive.getClass());
-			strategy.setSpeed(locomotive, speed, functions);
-			informListeners(locomotive);
-		} catch (final SRCPDeviceLockedException x) {
-			throw new SRCPLocomotiveLockedException(ERR_LOCKED);
-		} catch (final SRCPException x) {
-			throw new SRCPLocomotiveException(ERR_FAILED, x);
+	public void setSpeed(final SRCPLocomotive locomotive, final int speed,
+			final SRCPLocomotiveFunctions functions)
+			throws SRCPLocomotiveException, SRCPModelException {
+		synchronized (locomotive) {
+			checkLocomotive(locomotive);
+			try {
+				final LocomotiveStrategy strategy = getStrategy(locomotive);
+				strategy.setSpeed(locomotive, speed, functions);
+				informListeners(locomotive);
+			} catch (final SRCPDeviceLockedException x) {
+				throw new SRCPLocomotiveLockedException(ERR_LOCKED);
+			} catch (final SRCPException x) {
+				throw new SRCPLocomotiveException(ERR_FAILED, x);
+			}
 		}
+	}
+
+	/**
+	 * non-blocking variant of
+	 * {@link #setSpeed(SRCPLocomotive, int, SRCPLocomotiveFunctions)}. The
+	 * locomotive is checked in the calling thread, the command is sent
+	 * without waiting for the reply. The listeners are informed when the
+	 * server has acknowledged the command.
+	 * 
+	 * @return completes with the locomotive, or exceptionally with a
+	 *         {@link SRCPLocomotiveException}
+	 */
+	public CompletableFuture<SRCPLocomotive> setSpeedAsync(
+			final SRCPLocomotive locomotive, final int speed,
+			final SRCPLocomotiveFunctions functions)
+			throws SRCPLocomotiveException, SRCPModelException {
+		final CompletableFuture<Void> reply;
+		synchronized (locomotive) {
+			checkLocomotive(locomotive);
+			reply = getStrategy(locomotive).setSpeedAsync(locomotive, speed,
+					functions);
+		}
+		return acknowledged(locomotive, reply);
+	}
 
+	/**
+	 * @return completes with the locomotive after the listeners have been
+	 *         informed, or exceptionally with a
+	 *         {@link SRCPLocomotiveException}
+	 */
+	private CompletableFuture<SRCPLocomotive> acknowledged(
+			final SRCPLocomotive locomotive, final CompletableFuture<Void> reply) {
+		final CompletableFuture<SRCPLocomotive> done = new CompletableFuture<SRCPLocomotive>();
+		reply.whenComplete(new BiConsumer<Void, Throwable>() {
+			public void accept(final Void v, Throwable t) {
+				if (t == null) {
+					informListeners(locomotive);
+					done.complete(locomotive);
+					return;
+				}
+				if (t instanceof CompletionException && t.getCause() != null) {
+					t = t.getCause();
+				}
+				if (t instanceof SRCPDeviceLockedException) {
+					t = new SRCPLocomotiveLockedException(ERR_LOCKED);
+				} else if (t instanceof SRCPException) {
+					t = new SRCPLocomotiveException(ERR_FAILED, t);
+				}
+				done.completeExceptionally(t);
+			}
+		});
+		return done;
 	}
 
-	public void increaseSpeed(final SRCPLocomotive locomotive)
+	/**
+	 * sets the speed of all members of the consist. The commands of all
+	 * members are sent back to back without waiting for the replies, each
+	 * member gets the speed scaled to its settings.
+	 * 
+	 * @return completes with the consist when all members have acknowledged
+	 *         their command, or exceptionally with the
+	 *         {@link SRCPLocomotiveException} of a member
+	 */
+	public CompletableFuture<SRCPConsist> setSpeed(final SRCPConsist consist,
+			final int speed) throws SRCPLocomotiveException,
+			SRCPModelException {
+		if (speed < 0 || speed > consist.getDrivingSteps()) {
+			// ignored like the speed of a locomotive
+			return CompletableFuture.completedFuture(consist);
+		}
+		final List<SRCPConsistMember> members = consist.getMembers();
+		checkMembers(members);
+		final CompletableFuture<?>[] replies = new CompletableFuture<?>[members
+				.size()];
+		for (int i = 0; i < replies.length; i++) {
+			final SRCPConsistMember member = members.get(i);
+			final SRCPLocomotive locomotive = member.getLocomotive();
+			synchronized (locomotive) {
+				locomotive.setDirection(member.getDirection(consist
+						.getDirection()));
+				replies[i] = setSpeedAsync(locomotive,
+						member.getSpeed(speed, consist.getDrivingSteps()), null);
+			}
+		}
+		return CompletableFuture.allOf(replies).thenApply(
+				new Function<Void, SRCPConsist>() {
+					public SRCPConsist apply(final Void v) {
+						consist.setCurrentSpeed(speed);
+						return consist;
+					}
+				});
+	}
+
+	/**
+	 * reverses the consist, all members are stopped and change their
+	 * direction together.
+	 */
+	public CompletableFuture<SRCPConsist> toggleDirection(
+			final SRCPConsist consist) throws SRCPLocomotiveException,
+			SRCPModelException {
+		final List<SRCPConsistMember> members = consist.getMembers();
+		checkMembers(members);
+		consist.setDirection(consist.getDirection() == SRCPLocomotiveDirection.REVERSE ? SRCPLocomotiveDirection.FORWARD
+				: SRCPLocomotiveDirection.REVERSE);
+		final CompletableFuture<?>[] replies = new CompletableFuture<?>[2 * members
+				.size()];
+		// like toggleDirection(SRCPLocomotive), stop twice
+		for (int i = 0; i < replies.length; i++) {
+			final SRCPConsistMember member = members.get(i % members.size());
+			final SRCPLocomotive locomotive = member.getLocomotive();
+			synchronized (locomotive) {
+				locomotive.setDirection(member.getDirection(consist
+						.getDirection()));
+				locomotive.setPreventDirectionToggle(true);
+				replies[i] = setSpeedAsync(locomotive, 0,
+						locomotive.getFunctionState());
+			}
+		}
+		return CompletableFuture.allOf(replies).thenApply(
+				new Function<Void, SRCPConsist>() {
+					public SRCPConsist apply(final Void v) {
+						consist.setCurrentSpeed(0);
+						return consist;
+					}
+				});
+	}
+
+	/**
+	 * stops all members of the consist at once, their ramps are cancelled.
+	 */
+	public CompletableFuture<SRCPConsist> emergencyStop(
+			final SRCPConsist consist, final int emergencyStopFunction)
 			throws SRCPLocomotiveException, SRCPModelException {
-		checkLocomotive(locomotive);
-		final int newSpeed = locomotive.getCurrentSpeed() + 1;
+		final List<SRCPConsistMember> members = consist.getMembers();
+		final SRCPLocomotiveRampEngine engine;
+		synchronized (this) {
+			engine = rampEngine;
+		}
+		if (engine != null) {
+			for (final SRCPConsistMember member : members) {
+				engine.cancel(member.getLocomotive());
+			}
+		}
+		checkMembers(members);
+		final CompletableFuture<?>[] replies = new CompletableFuture<?>[members
+				.size()];
+		for (int i = 0; i < replies.length; i++) {
+			final SRCPLocomotive locomotive = members.get(i).getLocomotive();
+			synchronized (locomotive) {
+				final LocomotiveStrategy strategy = getStrategy(locomotive);
+				replies[i] = acknowledged(locomotive, strategy
+						.emergencyStopAsync(locomotive, strategy
+								.getEmergencyStopFunctionState(locomotive,
+										emergencyStopFunction)));
+			}
+		}
+		return CompletableFuture.allOf(replies).thenApply(
+				new Function<Void, SRCPConsist>() {
+					public SRCPConsist apply(final Void v) {
+						consist.setCurrentSpeed(0);
+						return consist;
+					}
+				});
+	}
+
+	/**
+	 * checks all members before the first command is sent, so initializing
+	 * a member does not delay the commands of the others.
+	 */
+	private void checkMembers(final List<SRCPConsistMember> members)
+			throws SRCPLocomotiveException, SRCPModelException {
+		for (final SRCPConsistMember member : members) {
+			synchronized (member.getLocomotive()) {
+				checkLocomotive(member.getLocomotive());
+			}
+		}
+	}
 
-		setSpeed(locomotive, newSpeed, locomotive.getFunctions());
+	public void increaseSpeed(final SRCPLocomotive locomotive)
+			throws SRCPLocomotiveException, SRCPModelException {
+		synchronized (locomotive) {
+			checkLocomotive(locomotive);
+			final int newSpeed = locomotive.getCurrentSpeed() + 1;
 
+			setSpeed(locomotive, newSpeed, locomotive.getFunctionState());
+		}
 	}
 
 	public void decreaseSpeed(final SRCPLocomotive locomotive)
 			throws SRCPLocomotiveException, SRCPModelException {
-		checkLocomotive(locomotive);
-		final int newSpeed = locomotive.getCurrentSpeed() - 1;
+		synchronized (locomotive) {
+			checkLocomotive(locomotive);
+			final int newSpeed = locomotive.getCurrentSpeed() - 1;
 
-		setSpeed(locomotive, newSpeed, locomotive.getFunctions());
+			setSpeed(locomotive, newSpeed, locomotive.getFunctionState());
+		}
 	}
 
 	public void increaseSpeedStep(final SRCPLocomotive locomotive)
 			throws SRCPLocomotiveException, SRCPModelException {
-		checkLocomotive(locomotive);
-		final int newSpeed = locomotive.getCurrentSpeed() + 1;
+		synchronized (locomotive) {
+			checkLocomotive(locomotive);
+			final int newSpeed = locomotive.getCurrentSpeed() + 1;
 
-		setSpeed(locomotive, newSpeed, locomotive.getFunctions());
+			setSpeed(locomotive, newSpeed, locomotive.getFunctionState());
+		}
 	}
 
 	public void decreaseSpeedStep(final SRCPLocomotive locomotive)
 			throws SRCPLocomotiveException, SRCPModelException {
-		checkLocomotive(locomotive);
-		final int newSpeed = locomotive.getCurrentSpeed() - 1;
-		setSpeed(locomotive, newSpeed, locomotive.getFunctions());
+		synchronized (locomotive) {
+			checkLocomotive(locomotive);
+			final int newSpeed = locomotive.getCurrentSpeed() - 1;
+			setSpeed(locomotive, newSpeed, locomotive.getFunctionState());
+		}
 	}
 
 	public void setFunctions(final SRCPLocomotive locomotive,
 			final boolean[] functions) throws SRCPLocomotiveException,
 			SRCPModelException {
-		checkLocomotive(locomotive);
-		setSpeed(locomotive, locomotive.getCurrentSpeed(), functions);
+		setFunctions(locomotive, SRCPLocomotiveFunctions.valueOf(functions));
+	}
+
+	public void setFunctions(final SRCPLocomotive locomotive,
+			final SRCPLocomotiveFunctions functions)
+			throws SRCPLocomotiveException, SRCPModelException {
+		synchronized (locomotive) {
+			checkLocomotive(locomotive);
+			setSpeed(locomotive, locomotive.getCurrentSpeed(), functions);
+		}
 	}
 
 	public boolean[] getFunctions(final SRCPLocomotive locomotive) {
@@ -191,31 +483,58 @@ public class SRCPLocomotiveControl implements GLInfoListener, Constants {
 		return locomotive.getFunctions();
 	}
 
+	public SRCPLocomotiveFunctions getFunctionState(
+			final SRCPLocomotive locomotive) {
+		if (locomotive == null) {
+			return SRCPLocomotiveFunctions.allOff(0);
+		}
+
+		return locomotive.getFunctionState();
+	}
+
 	public void emergencyStop(final SRCPLocomotive locomotive,
 			final int emergencyStopFunction) throws SRCPLocomotiveException,
 			SRCPModelException {
-		checkLocomotive(locomotive);
-		final LocomotiveStrategy locomotiveStrategy = locomotiveStrategies
-				.get(locomotive.getClass());
-		final boolean[] functions = locomotiveStrategy
-				.getEmergencyStopFunctions(locomotive, emergencyStopFunction);
-
-		setSpeed(locomotive, 0, functions);
+		final SRCPLocomotiveRampEngine engine;
+		synchronized (this) {
+			engine = rampEngine;
+		}
+		if (engine != null) {
+			engine.cancel(locomotive);
+		}
+		synchronized (locomotive) {
+			checkLocomotive(locomotive);
+			final LocomotiveStrategy locomotiveStrategy = getStrategy(locomotive);
+			final SRCPLocomotiveFunctions functions = locomotiveStrategy
+					.getEmergencyStopFunctionState(locomotive,
+							emergencyStopFunction);
+			try {
+				locomotiveStrategy.emergencyStop(locomotive, functions);
+				informListeners(locomotive);
+			} catch (final SRCPDeviceLockedException x) {
+				throw new SRCPLocomotiveLockedException(ERR_LOCKED);
+			} catch (final SRCPException x) {
+				throw new SRCPLocomotiveException(ERR_FAILED, x);
+			}
+		}
 	}
 
 	public void GLinit(final double timestamp, final int bus,
 			final int address, final String protocol, final String[] params) {
-		logger.debug("GLinit( " + bus + " , " + address + " , " + protocol
-				+ " , " + Arrays.toString(params) + " )");
-		final SRCPLocomotive locomotive = addressLocomotiveCache
-				.get(new SRCPAddress(bus, address));
+		if (logger.isDebugEnabled()) {
+			logger.debug("GLinit( " + bus + " , " + address + " , " + protocol
+					+ " , " + Arrays.toString(params) + " )");
+		}
+		final SRCPLocomotive locomotive = getLocomotive(bus, address);
 		if (locomotive == null) {
 			// ignore unknown locomotive
 			return;
 		}
 		try {
-			locomotive.setInitialized(true);
-			checkLocomotive(locomotive);
+			synchronized (locomotive) {
+				locomotive.setInitialized(true);
+				checkLocomotive(locomotive);
+			}
 
 			// informListeners(locomotive);
 		} catch (final SRCPModelException e1) {
@@ -225,41 +544,119 @@ public class SRCPLocomotiveControl implements GLInfoListener, Constants {
 	public void GLset(final double timestamp, final int bus, final int address,
 			final SRCPLocomotiveDirection drivemode, final int v,
 			final int vMax, final boolean[] functions) {
+		GLset(timestamp, bus, address, drivemode, v, vMax,
+				SRCPLocomotiveFunctions.valueOf(functions));
+	}
 
-		logger.debug("GLset( " + bus + " , " + address + " , " + drivemode
-				+ " , " + v + " , " + vMax + " , " + Arrays.toString(functions)
-				+ " )");
-		final SRCPLocomotive locomotive = addressLocomotiveCache
-				.get(new SRCPAddress(bus, address));
-		try {
-			checkLocomotive(locomotive);
-		} catch (final SRCPModelException e1) {
+	@Override
+	public void GLset(final double timestamp, final int bus, final int address,
+			final SRCPLocomotiveDirection drivemode, final int v,
+			final int vMax, final SRCPLocomotiveFunctions functions) {
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("GLset( " + bus + " , " + address + " , " + drivemode
+					+ " , " + v + " , " + vMax + " , " + functions + " )");
+		}
+		final SRCPLocomotive locomotive = getLocomotive(bus, address);
+		if (locomotive == null) {
 			// ignore unknown locomotive
+			return;
+		}
+		synchronized (locomotive) {
+			try {
+				checkLocomotive(locomotive);
+			} catch (final SRCPModelException e1) {
+				// ignore invalid locomotive
+			}
+			// Update locomotive if info is newer than our own.
+			if (!locomotive.isCommandPending()
+					&& timestamp > locomotive.getLastCommandAcknowledge()) {
+				applyState(locomotive, address, drivemode, v, functions);
+				// informListeners(locomotive);
+			}
+		}
+	}
+
+	/**
+	 * applies the state of a locomotive known from elsewhere, e.g. a
+	 * snapshot, like an info of the server but without checking or
+	 * initializing the locomotive.
+	 */
+	public void restoreState(final int bus, final int address,
+			final SRCPLocomotiveDirection drivemode, final int v,
+			final SRCPLocomotiveFunctions functions) {
+		final SRCPLocomotive locomotive = getLocomotive(bus, address);
+		if (locomotive == null) {
+			return;
+		}
+		synchronized (locomotive) {
+			applyState(locomotive, address, drivemode, v, functions);
 		}
-		// Update locomotive if known and if info is newer than our own.
-		if (locomotive != null
-				&& timestamp > locomotive.getLastCommandAcknowledge()) {
+		informListeners(locomotive);
+	}
+
+	private static void applyState(final SRCPLocomotive locomotive,
+			final int address, final SRCPLocomotiveDirection drivemode,
+			final int v, final SRCPLocomotiveFunctions functions) {
+		if (isSecondDecoder(locomotive, address)) {
+			// the second decoder only carries functions 5-9, its
+			// speed and direction follow the first one
+			locomotive.setFunctionState(locomotive.getFunctionState()
+					.slice(0, DoubleMMDigitalLocomotive.FUNCTION_COUNT1)
+					.append(functions.slice(0,
+							DoubleMMDigitalLocomotive.FUNCTION_COUNT2)));
+		} else {
 			locomotive.setDirection(drivemode);
 			locomotive.setCurrentSpeed(v);
-			locomotive.setFunctions(functions);
-			// informListeners(locomotive);
+			locomotive.setFunctionState(mergeFunctions(
+					locomotive.getFunctionState(), functions));
 		}
 	}
 
+	/**
+	 * @return true if address is the second decoder of a double MM
+	 *         locomotive
+	 */
+	private static boolean isSecondDecoder(final SRCPLocomotive locomotive,
+			final int address) {
+		return locomotive instanceof DoubleMMDigitalLocomotive
+				&& address != locomotive.getAddress()
+				&& address == ((DoubleMMDigitalLocomotive) locomotive)
+						.getAddress2();
+	}
+
+	/**
+	 * @return the reported functions, the ones of the locomotive beyond them
+	 *         (e.g. of a second decoder) are kept
+	 */
+	private static SRCPLocomotiveFunctions mergeFunctions(
+			final SRCPLocomotiveFunctions current,
+			final SRCPLocomotiveFunctions reported) {
+		if (reported.getCount() >= current.getCount()) {
+			return reported;
+		}
+		return reported.append(current.slice(reported.getCount(),
+				current.getCount()));
+	}
+
 	public void GLterm(final double timestamp, final int bus, final int address) {
-		logger.debug("GLterm( " + bus + " , " + address + " )");
+		if (logger.isDebugEnabled()) {
+			logger.debug("GLterm( " + bus + " , " + address + " )");
+		}
 
-		final SRCPLocomotive locomotive = addressLocomotiveCache
-				.get(new SRCPAddress(bus, address));
-		try {
-			checkLocomotive(locomotive);
-		} catch (final SRCPModelException e1) {
+		final SRCPLocomotive locomotive = getLocomotive(bus, address);
+		if (locomotive == null) {
 			// ignore unknown locomotive
+			return;
 		}
-		if (locomotive != null) {
+		synchronized (locomotive) {
+			try {
+				checkLocomotive(locomotive);
+			} catch (final SRCPModelException e1) {
+				// ignore invalid locomotive
+			}
 			locomotive.setGL(null);
-			lockControl.unregisterControlObject("GL", new SRCPAddress(bus,
-					address));
+			lockControl.unregisterControlObject("GL", bus, address);
 			locomotive.setInitialized(false);
 		}
 	}
@@ -282,14 +679,48 @@ public class SRCPLocomotiveControl implements GLInfoListener, Constants {
 		listeners.clear();
 	}
 
+	/**
+	 * delivers the change events through the bus instead of informing the
+	 * listeners at once on the thread which changed the state.
+	 * 
+	 * @param eventBus
+	 *            the bus, null to inform the listeners at once
+	 */
+	public void setEventBus(final SRCPModelEventBus eventBus) {
+		this.eventBus = eventBus;
+	}
+
+	public SRCPModelEventBus getEventBus() {
+		return eventBus;
+	}
+
 	private void informListeners(final SRCPLocomotive changedLocomotive) {
+		final SRCPModelEventBus bus = eventBus;
+		if (bus == null) {
+			fireLocomotiveChanged(changedLocomotive);
+			return;
+		}
+		final Object state;
+		synchronized (changedLocomotive) {
+			state = Arrays.asList(changedLocomotive.getDirection(),
+					changedLocomotive.getCurrentSpeed(),
+					changedLocomotive.getFunctionState(),
+					changedLocomotive.isInitialized());
+		}
+		bus.post(this, changedLocomotive, state, new Runnable() {
+			public void run() {
+				fireLocomotiveChanged(changedLocomotive);
+			}
+		});
+	}
+
+	private void fireLocomotiveChanged(final SRCPLocomotive changedLocomotive) {
 		for (final SRCPLocomotiveChangeListener l : listeners) {
 			l.locomotiveChanged(changedLocomotive);
 		}
-
 	}
 
-	private void checkLocomotive(final SRCPLocomotive locomotive)
+	void checkLocomotive(final SRCPLocomotive locomotive)
 			throws SRCPLocomotiveException, SRCPModelException {
 		if (locomotive == null) {
 			return;
@@ -305,10 +736,41 @@ public class SRCPLocomotiveControl implements GLInfoListener, Constants {
 			locomotive.setSession(session);
 		}
 
-		final LocomotiveStrategy strategy = locomotiveStrategies.get(locomotive
-				.getClass());
-		strategy.initLocomotive(locomotive, session, lockControl);
+		addLocomotive(locomotive);
 
+		final LocomotiveStrategy strategy = getStrategy(locomotive);
+		synchronized (locomotive) {
+			strategy.initLocomotive(locomotive, session, lockControl);
+		}
+
+	}
+
+	/**
+	 * registers a locomotive, so that infos of its address are applied
+	 * before it is used the first time. Registering it again has no effect.
+	 */
+	public void addLocomotive(final SRCPLocomotive locomotive) {
+		synchronized (addressLocomotiveCache) {
+			if (addressLocomotiveCache.get(locomotive.getBus(),
+					locomotive.getAddress()) != locomotive) {
+				if (!srcpLocomotives.contains(locomotive)) {
+					srcpLocomotives.add(locomotive);
+				}
+				addressLocomotiveCache.put(locomotive.getBus(),
+						locomotive.getAddress(), locomotive);
+				if (locomotive instanceof DoubleMMDigitalLocomotive) {
+					addressLocomotiveCache.put(locomotive.getBus(),
+							((DoubleMMDigitalLocomotive) locomotive)
+									.getAddress2(), locomotive);
+				}
+			}
+		}
+	}
+
+	private SRCPLocomotive getLocomotive(final int bus, final int address) {
+		synchronized (addressLocomotiveCache) {
+			return addressLocomotiveCache.get(bus, address);
+		}
 	}
 
 	public boolean acquireLock(final SRCPLocomotive locomotive)
@@ -0,0 +1,197 @@
+package de.dermoba.srcp.model.locomotives;
+
+/**
+ * The state of the functions of a locomotive, packed into the bits of a
+ * long. Function i is on if bit i is set; up to {@link #MAX_FUNCTIONS}
+ * functions are supported.
+ *
+ * Instances are immutable and can be shared freely, all modifying
+ * operations return a new instance.
+ */
+public final class SRCPLocomotiveFunctions {
+
+	public static final int MAX_FUNCTIONS = 64;
+
+	private static final SRCPLocomotiveFunctions[] ALL_OFF = new SRCPLocomotiveFunctions[MAX_FUNCTIONS + 1];
+	static {
+		for (int i = 0; i < ALL_OFF.length; i++) {
+			ALL_OFF[i] = new SRCPLocomotiveFunctions(0L, i);
+		}
+	}
+
+	private final long mask;
+
+	private final int count;
+
+	private SRCPLocomotiveFunctions(final long mask, final int count) {
+		this.mask = mask;
+		this.count = count;
+	}
+
+	/**
+	 * @param mask
+	 *            the function bits, bits at or above count are ignored
+	 * @param count
+	 *            the number of functions
+	 */
+	public static SRCPLocomotiveFunctions valueOf(final long mask,
+			final int count) {
+		checkCount(count);
+		final long m = mask & bits(count);
+		if (m == 0) {
+			return ALL_OFF[count];
+		}
+		return new SRCPLocomotiveFunctions(m, count);
+	}
+
+	/**
+	 * adapter for the array representation. Like the info parsers, it
+	 * ignores functions beyond {@link #MAX_FUNCTIONS}.
+	 *
+	 * @return the function state or <code>null</code> if functions is
+	 *         <code>null</code>
+	 */
+	public static SRCPLocomotiveFunctions valueOf(final boolean[] functions) {
+		if (functions == null) {
+			return null;
+		}
+		final int count = Math.min(functions.length, MAX_FUNCTIONS);
+		long m = 0;
+		for (int i = 0; i < count; i++) {
+			if (functions[i]) {
+				m |= 1L << i;
+			}
+		}
+		return valueOf(m, count);
+	}
+
+	public static SRCPLocomotiveFunctions allOff(final int count) {
+		checkCount(count);
+		return ALL_OFF[count];
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getMask() {
+		return mask;
+	}
+
+	public boolean isOn(final int function) {
+		if (function < 0 || function >= count) {
+			return false;
+		}
+		return (mask & (1L << function)) != 0;
+	}
+
+	/**
+	 * @return the state with function switched on or off. The count grows
+	 *         if function is not below it.
+	 */
+	public SRCPLocomotiveFunctions with(final int function, final boolean on) {
+		checkCount(function + 1);
+		final int newCount = Math.max(count, function + 1);
+		final long bit = 1L << function;
+		return valueOf(on ? mask | bit : mask & ~bit, newCount);
+	}
+
+	/**
+	 * @return the functions from (inclusive) to (exclusive), renumbered from
+	 *         0. Functions beyond the count are off.
+	 */
+	public SRCPLocomotiveFunctions slice(final int from, final int to) {
+		if (from < 0 || to < from) {
+			throw new IllegalArgumentException("invalid range " + from + ".."
+					+ to);
+		}
+		checkCount(to - from);
+		final long m = from >= MAX_FUNCTIONS ? 0L : mask >>> from;
+		return valueOf(m, to - from);
+	}
+
+	/**
+	 * @return this state followed by the functions of other
+	 */
+	public SRCPLocomotiveFunctions append(final SRCPLocomotiveFunctions other) {
+		checkCount(count + other.count);
+		if (other.count == 0) {
+			return this;
+		}
+		return valueOf(mask | (other.mask << count), count + other.count);
+	}
+
+	/**
+	 * @return true if functions holds this state, functions beyond
+	 *         {@link #MAX_FUNCTIONS} are ignored
+	 */
+	public boolean matches(final boolean[] functions) {
+		if (Math.min(functions.length, MAX_FUNCTIONS) != count) {
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			if (functions[i] != ((mask & (1L << i)) != 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean[] toArray() {
+		final boolean[] functions = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			functions[i] = (mask & (1L << i)) != 0;
+		}
+		return functions;
+	}
+
+	/**
+	 * appends the functions in SRCP notation, each followed by a blank.
+	 */
+	public StringBuilder appendTo(final StringBuilder buffer) {
+		for (int i = 0; i < count; i++) {
+			buffer.append((mask & (1L << i)) != 0 ? '1' : '0').append(' ');
+		}
+		return buffer;
+	}
+
+	private static long bits(final int count) {
+		return count == MAX_FUNCTIONS ? -1L : (1L << count) - 1;
+	}
+
+	private static void checkCount(final int count) {
+		if (count < 0 || count > MAX_FUNCTIONS) {
+			throw new IllegalArgumentException(
+					"function count must be between 0 and " + MAX_FUNCTIONS);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (mask ^ (mask >>> 32)) * 31 + count;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SRCPLocomotiveFunctions)) {
+			return false;
+		}
+		final SRCPLocomotiveFunctions other = (SRCPLocomotiveFunctions) obj;
+		return mask == other.mask && count == other.count;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder buffer = new StringBuilder("[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				buffer.append(", ");
+			}
+			buffer.append(isOn(i));
+		}
+		return buffer.append(']').toString();
+	}
+}
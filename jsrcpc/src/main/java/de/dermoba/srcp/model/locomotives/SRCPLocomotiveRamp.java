@@ -0,0 +1,68 @@
+package de.dermoba.srcp.model.locomotives;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A locomotive changing its speed step by step towards a target speed,
+ * driven by the {@link SRCPLocomotiveRampEngine}. The future completes with
+ * the locomotive when the server has acknowledged the target speed, or
+ * exceptionally with the {@link SRCPLocomotiveException} of the first step
+ * which failed.
+ *
+ * Cancelling the ramp stops it at the speed reached so far. A ramp is also
+ * cancelled when a new target speed is set for its locomotive or when the
+ * locomotive is stopped by an emergency stop.
+ */
+public class SRCPLocomotiveRamp extends CompletableFuture<SRCPLocomotive> {
+
+	private final SRCPLocomotive locomotive;
+
+	private final int targetSpeed;
+
+	private final SRCPAccelerationProfile profile;
+
+	/** the speed commanded last, -1 before the ramp has started */
+	private volatile int speed = -1;
+
+	/** the ramp this one replaced, until the speed is taken over from it */
+	SRCPLocomotiveRamp previous;
+
+	/** the tick of the next step, used by the wheel thread only */
+	long dueTick;
+
+	SRCPLocomotiveRamp(final SRCPLocomotive locomotive, final int targetSpeed,
+			final SRCPAccelerationProfile profile) {
+		this.locomotive = locomotive;
+		this.targetSpeed = targetSpeed;
+		this.profile = profile;
+	}
+
+	public SRCPLocomotive getLocomotive() {
+		return locomotive;
+	}
+
+	public int getTargetSpeed() {
+		return targetSpeed;
+	}
+
+	public SRCPAccelerationProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return the speed commanded last, -1 if the ramp has not started yet
+	 */
+	public int getSpeed() {
+		return speed;
+	}
+
+	void setSpeed(final int speed) {
+		this.speed = speed;
+	}
+
+	@Override
+	public String toString() {
+		return "ramp of " + locomotive + " to " + targetSpeed + " (" + speed
+				+ ")";
+	}
+}
@@ -0,0 +1,340 @@
+package de.dermoba.srcp.model.locomotives;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.Logger;
+
+import de.dermoba.srcp.model.SRCPModelException;
+
+/**
+ * Drives the speed of locomotives step by step towards a target speed, for
+ * acceleration and braking curves.
+ *
+ * All ramps are advanced by one thread using a hashed timer wheel: each
+ * ramp sits in the bucket of the tick of its next step, every tick the
+ * thread takes the due ramps out of the current bucket, sends one speed
+ * step for each of them and puts them back into the bucket of their
+ * following step. The cost of a tick depends on the ramps due in it, not
+ * on the number of ramps running.
+ *
+ * The steps of one tick are sent with
+ * {@link SRCPLocomotiveControl#setSpeedAsync(SRCPLocomotive, int, SRCPLocomotiveFunctions)}
+ * without waiting for the replies, so they reach the server as one burst.
+ * The listeners of the control are informed as each step is acknowledged.
+ *
+ * The speed commanded by a running ramp wins over speeds set directly with
+ * the control, cancel the ramp before.
+ */
+public class SRCPLocomotiveRampEngine {
+
+	public static final int DEFAULT_TICK_MILLIS = 10;
+
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private static final AtomicInteger engineCount = new AtomicInteger();
+
+	private static Logger logger = Logger
+			.getLogger(SRCPLocomotiveRampEngine.class);
+
+	private final SRCPLocomotiveControl control;
+
+	private final long tickNanos;
+
+	private final int tickMillis;
+
+	/** the buckets of the wheel, used by the wheel thread only */
+	private final List<SRCPLocomotiveRamp>[] wheel;
+
+	private final int mask;
+
+	/** the due ramps of the current tick, used by the wheel thread only */
+	private final List<SRCPLocomotiveRamp> due = new ArrayList<SRCPLocomotiveRamp>();
+
+	/** new ramps, handed over to the wheel thread */
+	private final Queue<SRCPLocomotiveRamp> submitted = new ConcurrentLinkedQueue<SRCPLocomotiveRamp>();
+
+	/** the ramp of each locomotive until it is done */
+	private final Map<SRCPLocomotive, SRCPLocomotiveRamp> active = Collections
+			.synchronizedMap(new IdentityHashMap<SRCPLocomotive, SRCPLocomotiveRamp>());
+
+	private final Thread thread;
+
+	private volatile boolean running = true;
+
+	/** the tick processed last, used by the wheel thread only */
+	private long tick = 0;
+
+	public SRCPLocomotiveRampEngine(final SRCPLocomotiveControl control) {
+		this(control, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * @param tickMillis
+	 *            the resolution of the wheel in ms
+	 * @param wheelSize
+	 *            the number of buckets, rounded up to a power of two. Steps
+	 *            further away than one revolution wait for their round.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public SRCPLocomotiveRampEngine(final SRCPLocomotiveControl control,
+			final int tickMillis, final int wheelSize) {
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException("tick must be at least 1 ms");
+		}
+		if (wheelSize < 1) {
+			throw new IllegalArgumentException(
+					"at least one bucket is required");
+		}
+		this.control = control;
+		this.tickMillis = tickMillis;
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		wheel = new List[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new ArrayList<SRCPLocomotiveRamp>();
+		}
+		mask = size - 1;
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				runWheel();
+			}
+		}, "SRCP ramp engine " + engineCount.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * starts changing the speed of the locomotive towards targetSpeed. A
+	 * ramp of the locomotive which is still running is cancelled, the new
+	 * ramp continues from the speed it has reached.
+	 *
+	 * @return the new ramp
+	 */
+	public SRCPLocomotiveRamp setTargetSpeed(final SRCPLocomotive locomotive,
+			final int targetSpeed, final SRCPAccelerationProfile profile)
+			throws SRCPLocomotiveException, SRCPModelException {
+		if (!running) {
+			throw new IllegalStateException("ramp engine has been shut down");
+		}
+		if (targetSpeed < 0 || targetSpeed > locomotive.getDrivingSteps()) {
+			throw new IllegalArgumentException("target speed " + targetSpeed
+					+ " out of range");
+		}
+		if (profile == null) {
+			throw new IllegalArgumentException("profile is null");
+		}
+		synchronized (locomotive) {
+			control.checkLocomotive(locomotive);
+		}
+		final SRCPLocomotiveRamp ramp = new SRCPLocomotiveRamp(locomotive,
+				targetSpeed, profile);
+		final SRCPLocomotiveRamp previous = active.put(locomotive, ramp);
+		ramp.previous = previous;
+		if (previous != null) {
+			previous.cancel(false);
+		}
+		ramp.whenComplete(new BiConsumer<SRCPLocomotive, Throwable>() {
+			public void accept(final SRCPLocomotive l, final Throwable t) {
+				active.remove(locomotive, ramp);
+			}
+		});
+		submitted.add(ramp);
+		return ramp;
+	}
+
+	/**
+	 * @return the running ramp of the locomotive or null
+	 */
+	public SRCPLocomotiveRamp getRamp(final SRCPLocomotive locomotive) {
+		return active.get(locomotive);
+	}
+
+	/**
+	 * cancels the running ramp of the locomotive, if any.
+	 *
+	 * @return true if a ramp was cancelled
+	 */
+	public boolean cancel(final SRCPLocomotive locomotive) {
+		final SRCPLocomotiveRamp ramp = active.get(locomotive);
+		return ramp != null && ramp.cancel(false);
+	}
+
+	/**
+	 * @return the number of ramps not yet done
+	 */
+	public int getActiveRampCount() {
+		return active.size();
+	}
+
+	public int getTickMillis() {
+		return tickMillis;
+	}
+
+	/**
+	 * stops the wheel thread and cancels all running ramps.
+	 */
+	public void shutdown() {
+		running = false;
+		thread.interrupt();
+		final List<SRCPLocomotiveRamp> ramps;
+		synchronized (active) {
+			ramps = new ArrayList<SRCPLocomotiveRamp>(active.values());
+		}
+		for (final SRCPLocomotiveRamp ramp : ramps) {
+			ramp.cancel(false);
+		}
+	}
+
+	private void runWheel() {
+		final long start = System.nanoTime();
+		while (running) {
+			final long now = (System.nanoTime() - start) / tickNanos;
+			if (now <= tick) {
+				LockSupport.parkNanos(start + (tick + 1) * tickNanos
+						- System.nanoTime());
+				continue;
+			}
+			// catch up with ticks missed while sending
+			while (tick < now && running) {
+				tick++;
+				try {
+					startSubmitted();
+					advance();
+				} catch (final RuntimeException e) {
+					logger.error("ramp engine tick failed", e);
+				}
+			}
+		}
+	}
+
+	private void startSubmitted() {
+		SRCPLocomotiveRamp ramp;
+		while ((ramp = submitted.poll()) != null) {
+			try {
+				ramp.setSpeed(commandedSpeed(ramp));
+				ramp.previous = null;
+				if (!ramp.isDone()) {
+					step(ramp);
+				}
+			} catch (final RuntimeException e) {
+				fail(ramp, e);
+			}
+		}
+	}
+
+	/**
+	 * @return the speed reached by the ramps replaced by ramp, or the speed
+	 *         of the locomotive if there were none
+	 */
+	private static int commandedSpeed(final SRCPLocomotiveRamp ramp) {
+		for (SRCPLocomotiveRamp r = ramp.previous; r != null; r = r.previous) {
+			if (r.getSpeed() >= 0) {
+				return r.getSpeed();
+			}
+		}
+		return ramp.getLocomotive().getCurrentSpeed();
+	}
+
+	private void advance() {
+		final List<SRCPLocomotiveRamp> bucket = wheel[(int) (tick & mask)];
+		int kept = 0;
+		for (int i = 0; i < bucket.size(); i++) {
+			final SRCPLocomotiveRamp ramp = bucket.get(i);
+			if (ramp.isDone()) {
+				// cancelled, drop it
+				continue;
+			}
+			if (ramp.dueTick <= tick) {
+				due.add(ramp);
+			} else {
+				bucket.set(kept++, ramp);
+			}
+		}
+		bucket.subList(kept, bucket.size()).clear();
+
+		for (int i = 0; i < due.size(); i++) {
+			final SRCPLocomotiveRamp ramp = due.get(i);
+			try {
+				step(ramp);
+			} catch (final RuntimeException e) {
+				fail(ramp, e);
+			}
+		}
+		due.clear();
+	}
+
+	/**
+	 * removes a ramp whose step has thrown and completes it exceptionally,
+	 * the other ramps of the tick go on.
+	 */
+	private void fail(final SRCPLocomotiveRamp ramp, final RuntimeException e) {
+		logger.error("ramp of " + ramp.getLocomotive() + " failed", e);
+		active.remove(ramp.getLocomotive(), ramp);
+		ramp.completeExceptionally(e);
+	}
+
+	/**
+	 * sends the next speed step of the ramp and schedules the following
+	 * one.
+	 */
+	private void step(final SRCPLocomotiveRamp ramp) {
+		final int speed = ramp.getSpeed();
+		final int target = ramp.getTargetSpeed();
+		if (speed == target) {
+			ramp.complete(ramp.getLocomotive());
+			return;
+		}
+		final boolean accelerating = target > speed;
+		final int next = accelerating ? speed + 1 : speed - 1;
+
+		final SRCPLocomotive locomotive = ramp.getLocomotive();
+		final CompletableFuture<SRCPLocomotive> reply;
+		try {
+			// checking under the monitor keeps a cancelling emergency stop
+			// from being overtaken by a last step
+			synchronized (locomotive) {
+				if (ramp.isDone()) {
+					return;
+				}
+				reply = control.setSpeedAsync(locomotive, next, null);
+			}
+		} catch (final SRCPModelException e) {
+			logger.error("ramp of " + locomotive + " failed", e);
+			ramp.completeExceptionally(e);
+			return;
+		}
+		ramp.setSpeed(next);
+		reply.whenComplete(new BiConsumer<SRCPLocomotive, Throwable>() {
+			public void accept(final SRCPLocomotive l, final Throwable t) {
+				if (t != null) {
+					ramp.completeExceptionally(t);
+				} else if (next == target) {
+					ramp.complete(l);
+				}
+			}
+		});
+		if (next == target) {
+			return;
+		}
+		final long ticks = Math.max(1, (ramp.getProfile().getStepMillis(
+				accelerating) + tickMillis - 1)
+				/ tickMillis);
+		ramp.dueTick = tick + ticks;
+		wheel[(int) (ramp.dueTick & mask)].add(ramp);
+	}
+}
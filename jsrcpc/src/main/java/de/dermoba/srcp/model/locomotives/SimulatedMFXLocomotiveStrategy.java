@@ -1,6 +1,7 @@
 package de.dermoba.srcp.model.locomotives;
 
-import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import de.dermoba.srcp.client.SRCPSession;
 import de.dermoba.srcp.common.Response;
@@ -12,32 +13,42 @@ import de.dermoba.srcp.model.locking.SRCPLockControl;
 
 public class SimulatedMFXLocomotiveStrategy extends LocomotiveStrategy {
 
+	/**
+	 * sends the commands to both addresses back to back and waits for both
+	 * replies.
+	 */
 	@Override
 	public void setSpeed(final SRCPLocomotive locomotive, final int speed,
-			boolean[] functions) throws SRCPException {
-		final DoubleMMDigitalLocomotive doubleMM = (DoubleMMDigitalLocomotive) locomotive;
-		if (functions == null) {
-			functions = locomotive.getFunctions();
-		}
-
-		final boolean[] functions1 = Arrays.copyOfRange(functions, 0, 5);
-		final boolean[] functions2 = Arrays.copyOfRange(functions, 5, 10);
+			final SRCPLocomotiveFunctions functions) throws SRCPException {
+		await(setSpeedAsync(locomotive, speed, functions));
+	}
 
-		String resp = setSpeedOnGl(doubleMM.getGL(), doubleMM, speed,
-				functions1);
+	@Override
+	public CompletableFuture<Void> setSpeedAsync(
+			final SRCPLocomotive locomotive, final int speed,
+			final SRCPLocomotiveFunctions functions) {
+		final DoubleMMDigitalLocomotive doubleMM = (DoubleMMDigitalLocomotive) locomotive;
+		final SRCPLocomotiveFunctions newFunctions = functions != null ? functions
+				: locomotive.getFunctionState();
 
-		if (resp == null || resp.equals("")) {
-			return;
+		final CompletableFuture<Response> reply1 = setSpeedOnGlAsync(
+				doubleMM.getGL(), doubleMM, speed, newFunctions.slice(0,
+						DoubleMMDigitalLocomotive.FUNCTION_COUNT1));
+		if (reply1 == null) {
+			return CompletableFuture.completedFuture(null);
 		}
-		Response r = new Response(resp);
-		locomotive.setLastCommandAcknowledge(r.getTimestamp());
-
-		doubleMM.setCurrentSpeed(speed);
-		doubleMM.setFunctions(functions);
-		resp = setSpeedOnGl(doubleMM.getGL2(), doubleMM, speed, functions2);
-
-		r = new Response(resp);
-		locomotive.setLastCommandAcknowledge(r.getTimestamp());
+		final CompletableFuture<Response> reply2 = setSpeedOnGlAsync(
+				doubleMM.getGL2(), doubleMM, speed, newFunctions.slice(
+						DoubleMMDigitalLocomotive.FUNCTION_COUNT1,
+						DoubleMMDigitalLocomotive.FUNCTION_COUNT1
+								+ DoubleMMDigitalLocomotive.FUNCTION_COUNT2));
+		return reply1.thenAcceptBothAsync(reply2,
+				new BiConsumer<Response, Response>() {
+					public void accept(final Response r1, final Response r2) {
+						acknowledged(doubleMM, r2.getTimestamp(), speed,
+								newFunctions);
+					}
+				});
 	}
 
 	@Override
@@ -86,12 +97,13 @@ public class SimulatedMFXLocomotiveStrategy extends LocomotiveStrategy {
 	}
 
 	@Override
-	public boolean[] getEmergencyStopFunctions(final SRCPLocomotive locomotive,
-			final int emergencyStopFunction) {
-		final boolean[] functions = new boolean[] { false, false, false, false,
-				false, false, false, false, false, false };
+	public SRCPLocomotiveFunctions getEmergencyStopFunctionState(
+			final SRCPLocomotive locomotive, final int emergencyStopFunction) {
+		final SRCPLocomotiveFunctions functions = SRCPLocomotiveFunctions
+				.allOff(DoubleMMDigitalLocomotive.FUNCTION_COUNT1
+						+ DoubleMMDigitalLocomotive.FUNCTION_COUNT2);
 		if (emergencyStopFunction != -1) {
-			functions[emergencyStopFunction] = true;
+			return functions.with(emergencyStopFunction, true);
 		}
 		return functions;
 	}
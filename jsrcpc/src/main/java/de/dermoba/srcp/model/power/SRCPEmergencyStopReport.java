@@ -0,0 +1,184 @@
+package de.dermoba.srcp.model.power;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The progress of an emergency stop sent by
+ * {@link SRCPPowerControl#emergencyStop()}: for each bus the time until the
+ * server acknowledged the POWER OFF command and the time until the info
+ * channel reported the power supply as off, both measured from the moment
+ * the commands were written.
+ *
+ * The report completes when every bus has been acknowledged and reported
+ * off, or has failed. If that takes longer than the emergency stop timeout
+ * of the controller, the report completes exceptionally with a
+ * {@link java.util.concurrent.TimeoutException}. Latencies can be read at
+ * any time, -1 stands for "not yet".
+ */
+public class SRCPEmergencyStopReport extends
+		CompletableFuture<SRCPEmergencyStopReport> {
+
+	private final int[] buses;
+
+	private final long[] acknowledged;
+
+	private final long[] infoReceived;
+
+	private final Throwable[] failures;
+
+	private volatile long sentAt;
+
+	private int pending;
+
+	SRCPEmergencyStopReport(final int[] buses) {
+		this.buses = buses.clone();
+		acknowledged = new long[buses.length];
+		infoReceived = new long[buses.length];
+		failures = new Throwable[buses.length];
+		for (int i = 0; i < buses.length; i++) {
+			acknowledged[i] = -1;
+			infoReceived[i] = -1;
+		}
+		pending = buses.length;
+	}
+
+	/**
+	 * @return the buses the emergency stop was sent to
+	 */
+	public int[] getBuses() {
+		return buses.clone();
+	}
+
+	/**
+	 * @return the time from sending until the acknowledge of the bus, -1 if
+	 *         it has not arrived
+	 */
+	public synchronized long getAcknowledgeLatency(final int bus,
+			final TimeUnit unit) {
+		return latency(acknowledged[index(bus)], unit);
+	}
+
+	/**
+	 * @return the time from sending until the info reporting the bus off,
+	 *         -1 if it has not arrived
+	 */
+	public synchronized long getInfoLatency(final int bus, final TimeUnit unit) {
+		return latency(infoReceived[index(bus)], unit);
+	}
+
+	/**
+	 * @return the longest acknowledge latency of all buses, -1 if one is
+	 *         missing
+	 */
+	public synchronized long getMaxAcknowledgeLatency(final TimeUnit unit) {
+		return max(acknowledged, unit);
+	}
+
+	/**
+	 * @return the longest info latency of all buses, -1 if one is missing
+	 */
+	public synchronized long getMaxInfoLatency(final TimeUnit unit) {
+		return max(infoReceived, unit);
+	}
+
+	/**
+	 * @return the error the server reported for the bus, null if none
+	 */
+	public synchronized Throwable getFailure(final int bus) {
+		return failures[index(bus)];
+	}
+
+	private long latency(final long at, final TimeUnit unit) {
+		if (at < 0) {
+			return -1;
+		}
+		return unit.convert(at - sentAt, TimeUnit.NANOSECONDS);
+	}
+
+	private long max(final long[] at, final TimeUnit unit) {
+		long max = 0;
+		for (final long t : at) {
+			if (t < 0) {
+				return -1;
+			}
+			max = Math.max(max, t - sentAt);
+		}
+		return unit.convert(max, TimeUnit.NANOSECONDS);
+	}
+
+	private int index(final int bus) {
+		for (int i = 0; i < buses.length; i++) {
+			if (buses[i] == bus) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("bus " + bus
+				+ " was not stopped");
+	}
+
+	void sent(final long nanos) {
+		sentAt = nanos;
+	}
+
+	void acknowledged(final int bus, final long nanos) {
+		final boolean done;
+		synchronized (this) {
+			final int i = index(bus);
+			acknowledged[i] = nanos;
+			done = infoReceived[i] >= 0 && --pending == 0;
+		}
+		if (done) {
+			complete(this);
+		}
+	}
+
+	void failed(final int bus, final Throwable failure) {
+		final boolean done;
+		synchronized (this) {
+			final int i = index(bus);
+			failures[i] = failure;
+			done = --pending == 0;
+		}
+		if (done) {
+			complete(this);
+		}
+	}
+
+	/**
+	 * @return true if the info counts for this stop, false if it was
+	 *         received before the stop was sent or the bus was reported
+	 *         already
+	 */
+	boolean infoReceived(final int bus, final long nanos) {
+		final boolean done;
+		synchronized (this) {
+			final int i = index(bus);
+			if (infoReceived[i] >= 0 || nanos - sentAt < 0) {
+				return false;
+			}
+			infoReceived[i] = nanos;
+			done = acknowledged[i] >= 0 && --pending == 0;
+		}
+		if (done) {
+			complete(this);
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized String toString() {
+		final StringBuilder sb = new StringBuilder("emergency stop");
+		for (int i = 0; i < buses.length; i++) {
+			sb.append(" bus ").append(buses[i]).append(": ack ")
+					.append(latency(acknowledged[i], TimeUnit.MICROSECONDS))
+					.append("us info ")
+					.append(latency(infoReceived[i], TimeUnit.MICROSECONDS))
+					.append("us");
+			if (failures[i] != null) {
+				sb.append(" failed");
+			}
+		}
+		return sb.toString();
+	}
+}
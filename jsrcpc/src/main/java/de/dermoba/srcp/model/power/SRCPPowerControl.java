@@ -16,20 +16,34 @@
  *----------------------------------------------------------------------*/
 package de.dermoba.srcp.model.power;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 import org.apache.log4j.Logger;
 
 import de.dermoba.srcp.client.SRCPSession;
+import de.dermoba.srcp.common.Response;
 import de.dermoba.srcp.common.exception.SRCPException;
 import de.dermoba.srcp.devices.POWER;
 import de.dermoba.srcp.devices.listener.POWERInfoListener;
 import de.dermoba.srcp.model.Constants;
 import de.dermoba.srcp.model.NoSessionException;
+import de.dermoba.srcp.model.SRCPModelEventBus;
 import de.dermoba.srcp.model.SRCPModelException;
 
 /**
@@ -40,20 +54,54 @@ import de.dermoba.srcp.model.SRCPModelException;
  * In addition the controller acts as a directory and maintains a set of known
  * power supplies based on the info messages from the session's info channel.
  * 
+ * The controller can be used from several threads.
+ * 
  * @author mnl
  */
 public class SRCPPowerControl implements POWERInfoListener, Constants {
+	/** milliseconds an emergency stop waits for the acknowledges and infos */
+	public static final long DEFAULT_EMERGENCY_STOP_TIMEOUT = 5000;
+
 	private static Logger logger = Logger.getLogger(SRCPPowerControl.class);
 
 	private static SRCPPowerControl instance;
-	private SRCPSession session;
-	private Set<SRCPPowerSupply> srcpPowerSupplies;
-	private List<SRCPPowerSupplyChangeListener> listeners;
+	private volatile SRCPSession session;
+	private volatile SRCPModelEventBus eventBus;
+	private final ConcurrentMap<Integer, SRCPPowerSupply> srcpPowerSupplies;
+	private final List<SRCPPowerSupplyChangeListener> listeners;
+
+	/**
+	 * the buses and POWER OFF commands of the known power supplies,
+	 * encoded in advance and rebuilt when the power supplies change
+	 */
+	private volatile int[] emergencyStopBuses = new int[0];
+	private volatile String[] emergencyStopCommands = new String[0];
+
+	/** emergency stops waiting for the info of a bus, several stops of a
+	 * bus may be pending at the same time */
+	private final ConcurrentMap<Integer, List<SRCPEmergencyStopReport>> pendingStops;
+
+	/** fails the emergency stops which are not complete in time */
+	private final ScheduledExecutorService timeouts;
+
+	private volatile long emergencyStopTimeout = DEFAULT_EMERGENCY_STOP_TIMEOUT;
 
 	private SRCPPowerControl() {
 		logger.info("SRCPPowerControl loaded");
-		srcpPowerSupplies = new HashSet<SRCPPowerSupply>();
-		listeners = new ArrayList<SRCPPowerSupplyChangeListener>();
+		srcpPowerSupplies = new ConcurrentHashMap<Integer, SRCPPowerSupply>();
+		listeners = new CopyOnWriteArrayList<SRCPPowerSupplyChangeListener>();
+		pendingStops = new ConcurrentHashMap<Integer, List<SRCPEmergencyStopReport>>();
+		final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+				1, new ThreadFactory() {
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r,
+								"SRCP emergency stop timeout");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.setRemoveOnCancelPolicy(true);
+		timeouts = executor;
 	}
 
 	/**
@@ -61,7 +109,7 @@ public class SRCPPowerControl implements POWERInfoListener, Constants {
 	 * 
 	 * @return the controller instance
 	 */
-	public static SRCPPowerControl getInstance() {
+	public static synchronized SRCPPowerControl getInstance() {
 		if (instance == null) {
 			instance = new SRCPPowerControl();
 		}
@@ -84,15 +132,42 @@ public class SRCPPowerControl implements POWERInfoListener, Constants {
 		if (session != null) {
 			session.getInfoChannel().addPOWERInfoListener(this);
 		}
+		encodeEmergencyStop();
+	}
+
+	/**
+	 * encodes the POWER OFF commands of the known power supplies.
+	 */
+	private synchronized void encodeEmergencyStop() {
+		final SRCPSession s = session;
+		final Integer[] known = srcpPowerSupplies.keySet().toArray(
+				new Integer[0]);
+		Arrays.sort(known);
+		int count = known.length;
+		if (s == null) {
+			count = 0;
+		} else if (s.isOldProtocol() && count > 1) {
+			// without buses one command switches everything off
+			count = 1;
+		}
+		final int[] buses = new int[count];
+		final String[] commands = new String[count];
+		for (int i = 0; i < count; i++) {
+			buses[i] = known[i];
+			commands[i] = new POWER(s, known[i]).getSetCommand(false, "");
+		}
+		emergencyStopCommands = commands;
+		emergencyStopBuses = buses;
 	}
 
 	/**
 	 * Return the set of know power supplies.
 	 * 
-	 * @return the known power supplies
+	 * @return a snapshot of the known power supplies
 	 */
 	public Set<SRCPPowerSupply> getKnownPowerSupplies() {
-		return Collections.unmodifiableSet(srcpPowerSupplies);
+		return Collections.unmodifiableSet(new HashSet<SRCPPowerSupply>(
+				srcpPowerSupplies.values()));
 	}
 
 	/**
@@ -149,9 +224,123 @@ public class SRCPPowerControl implements POWERInfoListener, Constants {
 	 */
 	public void setAllStates(SRCPPowerState state)
 			throws SRCPPowerSupplyException,SRCPModelException {
-		for (SRCPPowerSupply ps : srcpPowerSupplies) {
-			setState(ps, state);
+		final SRCPSession s = session;
+		if (s == null) {
+			throw new NoSessionException();
+		}
+		final Integer[] buses = srcpPowerSupplies.keySet().toArray(
+				new Integer[0]);
+		final String[] commands = new String[buses.length];
+		for (int i = 0; i < buses.length; i++) {
+			commands[i] = new POWER(s, buses[i]).getSetCommand(
+					state == SRCPPowerState.ON, "");
+		}
+		// all buses at once, then wait for the replies
+		for (final CompletableFuture<Response> reply : s.getCommandChannel()
+				.sendBatchAsync(commands)) {
+			try {
+				reply.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SRCPPowerSupplyException(ERR_FAILED, e);
+			} catch (final ExecutionException e) {
+				throw new SRCPPowerSupplyException(ERR_FAILED, e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * switches the power of all known buses off at once. The POWER OFF
+	 * commands are encoded in advance and written with a single write, so
+	 * they reach the server back to back and no other command of this
+	 * session gets in between. The method does not wait for the replies.
+	 * 
+	 * @return the report of the acknowledge and info latencies of each bus,
+	 *         it completes when all buses are reported off and completes
+	 *         exceptionally with a {@link TimeoutException} if that does not
+	 *         happen within the emergency stop timeout
+	 * @throws NoSessionException
+	 *             if no session has been set
+	 * @throws SRCPPowerSupplyException
+	 *             if no power supply is known, so there is nothing to stop
+	 */
+	public SRCPEmergencyStopReport emergencyStop() throws NoSessionException,
+			SRCPPowerSupplyException {
+		final SRCPSession s = session;
+		if (s == null) {
+			throw new NoSessionException();
+		}
+		final int[] buses = emergencyStopBuses;
+		final String[] commands = emergencyStopCommands;
+		if (buses.length == 0) {
+			throw new SRCPPowerSupplyException(ERR_FAILED
+					+ ": no power supply known");
 		}
+		final SRCPEmergencyStopReport report = new SRCPEmergencyStopReport(
+				buses);
+		// infos received before this moment belong to something else
+		report.sent(System.nanoTime());
+		for (final int bus : buses) {
+			getPendingStops(bus).add(report);
+		}
+		final long timeout = emergencyStopTimeout;
+		final ScheduledFuture<?> expiry = timeouts.schedule(new Runnable() {
+			public void run() {
+				report.completeExceptionally(new TimeoutException(report
+						.toString()));
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+		report.whenComplete(new BiConsumer<SRCPEmergencyStopReport, Throwable>() {
+			public void accept(final SRCPEmergencyStopReport r,
+					final Throwable t) {
+				expiry.cancel(false);
+				for (final int bus : buses) {
+					getPendingStops(bus).remove(report);
+				}
+			}
+		});
+		final List<CompletableFuture<Response>> replies = s
+				.getCommandChannel().sendBatchAsync(commands);
+		for (int i = 0; i < buses.length; i++) {
+			final int bus = buses[i];
+			replies.get(i).whenComplete(new BiConsumer<Response, Throwable>() {
+				public void accept(final Response r, final Throwable t) {
+					if (t == null) {
+						report.acknowledged(bus, System.nanoTime());
+					} else {
+						getPendingStops(bus).remove(report);
+						report.failed(bus, t);
+					}
+				}
+			});
+		}
+		return report;
+	}
+
+	/**
+	 * @param millis
+	 *            the time an emergency stop waits for the acknowledges and
+	 *            infos of all buses before its report fails
+	 */
+	public void setEmergencyStopTimeout(final long millis) {
+		emergencyStopTimeout = millis;
+	}
+
+	public long getEmergencyStopTimeout() {
+		return emergencyStopTimeout;
+	}
+
+	private List<SRCPEmergencyStopReport> getPendingStops(final int bus) {
+		List<SRCPEmergencyStopReport> reports = pendingStops.get(bus);
+		if (reports == null) {
+			reports = new CopyOnWriteArrayList<SRCPEmergencyStopReport>();
+			final List<SRCPEmergencyStopReport> known = pendingStops
+					.putIfAbsent(bus, reports);
+			if (known != null) {
+				reports = known;
+			}
+		}
+		return reports;
 	}
 
 	/**
@@ -163,7 +352,7 @@ public class SRCPPowerControl implements POWERInfoListener, Constants {
 	 * @return the result
 	 */
 	public boolean isCommonState(SRCPPowerState state) {
-		for (SRCPPowerSupply ps : srcpPowerSupplies) {
+		for (SRCPPowerSupply ps : srcpPowerSupplies.values()) {
 			if (ps.getState() != state) {
 				return false;
 			}
@@ -180,16 +369,26 @@ public class SRCPPowerControl implements POWERInfoListener, Constants {
 	 */
 	public void POWERset(double timestamp, int bus, boolean powerOn,
 			String freeText) {
-		SRCPPowerSupply ps = null;
-		for (SRCPPowerSupply iter : srcpPowerSupplies) {
-			if (iter.getBus() == bus) {
-				ps = iter;
-				break;
+		if (!powerOn) {
+			final List<SRCPEmergencyStopReport> reports = pendingStops.get(bus);
+			if (reports != null) {
+				final long now = System.nanoTime();
+				for (final SRCPEmergencyStopReport report : reports) {
+					if (report.infoReceived(bus, now)) {
+						reports.remove(report);
+					}
+				}
 			}
 		}
+		SRCPPowerSupply ps = srcpPowerSupplies.get(bus);
 		if (ps == null) {
 			ps = new SRCPPowerSupply(bus);
-			srcpPowerSupplies.add(ps);
+			final SRCPPowerSupply known = srcpPowerSupplies.putIfAbsent(bus, ps);
+			if (known != null) {
+				ps = known;
+			} else {
+				encodeEmergencyStop();
+			}
 		}
 		if (powerOn) {
 			ps.setState(SRCPPowerState.ON);
@@ -206,11 +405,8 @@ public class SRCPPowerControl implements POWERInfoListener, Constants {
 	 * @see de.dermoba.srcp.devices.POWERInfoListener #POWERterm(double, int)
 	 */
 	public void POWERterm(double timestamp, int bus) {
-		for (SRCPPowerSupply iter : srcpPowerSupplies) {
-			if (iter.getBus() == bus) {
-				srcpPowerSupplies.remove(iter);
-				break;
-			}
+		if (srcpPowerSupplies.remove(bus) != null) {
+			encodeEmergencyStop();
 		}
 	}
 
@@ -226,7 +422,37 @@ public class SRCPPowerControl implements POWERInfoListener, Constants {
 		listeners.clear();
 	}
 
-	private void informListeners(SRCPPowerSupply changedPowerSupply,
+	/**
+	 * delivers the change events through the bus instead of informing the
+	 * listeners at once on the thread which changed the state.
+	 * 
+	 * @param eventBus
+	 *            the bus, null to inform the listeners at once
+	 */
+	public void setEventBus(SRCPModelEventBus eventBus) {
+		this.eventBus = eventBus;
+	}
+
+	public SRCPModelEventBus getEventBus() {
+		return eventBus;
+	}
+
+	private void informListeners(final SRCPPowerSupply changedPowerSupply,
+			final String freeText) {
+		final SRCPModelEventBus bus = eventBus;
+		if (bus == null) {
+			firePowerSupplyChanged(changedPowerSupply, freeText);
+			return;
+		}
+		bus.post(this, changedPowerSupply, Arrays.asList(
+				changedPowerSupply.getState(), freeText), new Runnable() {
+			public void run() {
+				firePowerSupplyChanged(changedPowerSupply, freeText);
+			}
+		});
+	}
+
+	private void firePowerSupplyChanged(SRCPPowerSupply changedPowerSupply,
 			String freeText) {
 		for (SRCPPowerSupplyChangeListener l : listeners) {
 			l.powerSupplyChanged(changedPowerSupply, freeText);
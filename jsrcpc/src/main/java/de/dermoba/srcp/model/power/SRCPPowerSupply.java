@@ -23,7 +23,7 @@ package de.dermoba.srcp.model.power;
  */
 public class SRCPPowerSupply {
     int bus;
-    private SRCPPowerState state;
+    private volatile SRCPPowerState state;
 
     /**
      * Create a new instance of a power supply for the given bus.
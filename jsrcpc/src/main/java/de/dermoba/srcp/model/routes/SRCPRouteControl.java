@@ -18,8 +18,8 @@
 
 package de.dermoba.srcp.model.routes;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
@@ -28,20 +28,26 @@ import de.dermoba.srcp.model.Constants;
 import de.dermoba.srcp.model.NoSessionException;
 import de.dermoba.srcp.model.turnouts.SRCPTurnoutException;
 
+/**
+ * Enables and disables routes. The turnouts are switched by a
+ * {@link SRCPRouteEngine}, the methods return as soon as the route has been
+ * submitted.
+ */
 public class SRCPRouteControl {
 	private static Logger logger = Logger.getLogger(SRCPRouteControl.class);
 	private static SRCPRouteControl instance;
 
 	private final List<SRCPRouteChangeListener> listeners;
 
-	private SRCPRouteState lastRouteState;
+	private final SRCPRouteEngine engine;
 
-	private SRCPRoute lastChangedRoute;
+	private volatile SRCPRouteState lastRouteState;
+
+	private volatile SRCPRoute lastChangedRoute;
 
 	protected String ERR_TOGGLE_FAILED = "Toggle of switch failed";
 
-	protected SRCPSession session;
-	private int routingDelay = Constants.DEFAULT_ROUTING_DELAY;
+	protected volatile SRCPSession session;
 
 	public SRCPSession getSession() {
 		return session;
@@ -53,22 +59,23 @@ public class SRCPRouteControl {
 
 	private SRCPRouteControl() {
 		logger.info("SRCPRouteControl loaded");
-		listeners = new ArrayList<SRCPRouteChangeListener>();
+		listeners = new CopyOnWriteArrayList<SRCPRouteChangeListener>();
+		engine = new SRCPRouteEngine(listeners);
 	}
 
-	public static SRCPRouteControl getInstance() {
+	public static synchronized SRCPRouteControl getInstance() {
 		if (instance == null) {
 			instance = new SRCPRouteControl();
 		}
 		return instance;
 	}
 
-	public void toggle(final SRCPRoute route) throws SRCPTurnoutException,
-			SRCPRouteException {
+	public SRCPRouteExecution toggle(final SRCPRoute route)
+			throws SRCPTurnoutException, SRCPRouteException {
 		if (route.getRouteState().equals(SRCPRouteState.ENABLED)) {
-			disableRoute(route);
+			return disableRoute(route);
 		} else {
-			enableRoute(route);
+			return enableRoute(route);
 		}
 	}
 
@@ -79,16 +86,15 @@ public class SRCPRouteControl {
 	 * ch.fork.AdHocRailway.domain.routes.RouteControlIface#enableRoute(ch.fork
 	 * .AdHocRailway.domain.routes.Route)
 	 */
-	public void enableRoute(final SRCPRoute route) throws SRCPTurnoutException,
-			SRCPRouteException {
+	public SRCPRouteExecution enableRoute(final SRCPRoute route)
+			throws SRCPTurnoutException, SRCPRouteException {
 		checkRoute(route);
 		logger.debug("enabling route: " + route);
 
-		final SRCPRouter switchRouter = new SRCPRouter(route, true,
-				routingDelay, listeners);
-		switchRouter.start();
+		final SRCPRouteExecution execution = engine.enableRoute(route);
 		lastChangedRoute = route;
 		lastRouteState = SRCPRouteState.ENABLED;
+		return execution;
 	}
 
 	/*
@@ -98,16 +104,15 @@ public class SRCPRouteControl {
 	 * ch.fork.AdHocRailway.domain.routes.RouteControlIface#disableRoute(ch.
 	 * fork.AdHocRailway.domain.routes.Route)
 	 */
-	public void disableRoute(final SRCPRoute route)
+	public SRCPRouteExecution disableRoute(final SRCPRoute route)
 			throws SRCPTurnoutException, SRCPRouteException {
 		checkRoute(route);
 		logger.debug("disabling route: " + route);
 
-		final SRCPRouter switchRouter = new SRCPRouter(route, false,
-				routingDelay, listeners);
-		switchRouter.start();
+		final SRCPRouteExecution execution = engine.disableRoute(route);
 		lastChangedRoute = route;
 		lastRouteState = SRCPRouteState.DISABLED;
+		return execution;
 	}
 
 	private void checkRoute(final SRCPRoute r) throws SRCPRouteException {
@@ -193,7 +198,20 @@ public class SRCPRouteControl {
 		if (routingDelay < 500) {
 			routingDelay = 500;
 		}
-		this.routingDelay = routingDelay;
+		engine.setRoutingDelay(routingDelay);
+	}
+
+	/**
+	 * @param solenoidsPerBus
+	 *            the number of turnouts which may be switched at the same
+	 *            time on one bus
+	 */
+	public void setSolenoidsPerBus(final int solenoidsPerBus) {
+		engine.setSolenoidsPerBus(solenoidsPerBus);
+	}
+
+	public SRCPRouteEngine getRouteEngine() {
+		return engine;
 	}
 
 }
@@ -0,0 +1,321 @@
+package de.dermoba.srcp.model.routes;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.Logger;
+
+import de.dermoba.srcp.model.Constants;
+import de.dermoba.srcp.model.SRCPModelException;
+import de.dermoba.srcp.model.turnouts.SRCPTurnout;
+import de.dermoba.srcp.model.turnouts.SRCPTurnoutControl;
+
+/**
+ * Switches the turnouts of routes on a shared scheduled executor.
+ *
+ * Each bus has a lane which limits the number of turnouts being switched at
+ * the same time, i.e. the number of solenoids drawing current. A turnout
+ * holds its place in the lane for the routing delay after its command has
+ * been acknowledged. Turnouts waiting for a lane are switched in the order
+ * they were submitted, turnouts on different buses are switched in
+ * parallel.
+ *
+ * Each execution switches only the turnouts which the {@link SRCPRoutePlan}
+ * of the route reports as not being in their target state. A turnout which
+ * reaches its target state while waiting for its lane, e.g. because another
+ * route switched it, is skipped.
+ *
+ * Enabling or disabling a route cancels an execution of the same route
+ * which is still running.
+ */
+public class SRCPRouteEngine {
+
+	public static final int DEFAULT_SOLENOIDS_PER_BUS = 1;
+
+	private static Logger logger = Logger.getLogger(SRCPRouteEngine.class);
+
+	private final ScheduledExecutorService executor;
+
+	private final List<SRCPRouteChangeListener> listeners;
+
+	private final ConcurrentMap<Integer, BusLane> lanes = new ConcurrentHashMap<Integer, BusLane>();
+
+	private final Map<SRCPRoute, SRCPRouteExecution> executions = Collections
+			.synchronizedMap(new IdentityHashMap<SRCPRoute, SRCPRouteExecution>());
+
+	private volatile int routingDelay = Constants.DEFAULT_ROUTING_DELAY;
+
+	private volatile int solenoidsPerBus = DEFAULT_SOLENOIDS_PER_BUS;
+
+	/**
+	 * creates an engine with its own executor.
+	 *
+	 * @param listeners
+	 *            informed about the progress of all routes, the list must be
+	 *            safe for iteration while it is modified
+	 */
+	public SRCPRouteEngine(final List<SRCPRouteChangeListener> listeners) {
+		this(createExecutor(), listeners);
+	}
+
+	public SRCPRouteEngine(final ScheduledExecutorService executor,
+			final List<SRCPRouteChangeListener> listeners) {
+		this.executor = executor;
+		this.listeners = listeners;
+	}
+
+	private static ScheduledExecutorService createExecutor() {
+		final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+				Math.max(2, Runtime.getRuntime().availableProcessors()),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r, "SRCP route engine "
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.setRemoveOnCancelPolicy(true);
+		return executor;
+	}
+
+	public SRCPRouteExecution enableRoute(final SRCPRoute route) {
+		return execute(route, true);
+	}
+
+	public SRCPRouteExecution disableRoute(final SRCPRoute route) {
+		return execute(route, false);
+	}
+
+	private SRCPRouteExecution execute(final SRCPRoute route,
+			final boolean enable) {
+		final SRCPRoutePlan plan = SRCPRoutePlan.compile(route);
+		final int[] pending = plan.getPendingIndexes(enable);
+		final SRCPRouteExecution execution = new SRCPRouteExecution(route,
+				plan, enable, pending.length);
+		final SRCPRouteExecution previous = executions.put(route, execution);
+		if (previous != null && previous.cancel(false)) {
+			logger.debug("cancelled " + previous);
+		}
+		execution.whenComplete(new BiConsumer<SRCPRoute, Throwable>() {
+			public void accept(final SRCPRoute r, final Throwable t) {
+				executions.remove(route, execution);
+			}
+		});
+		route.setRouteState(SRCPRouteState.ROUTING);
+
+		if (pending.length == 0) {
+			finish(execution);
+			return execution;
+		}
+		for (final int index : pending) {
+			new Step(execution, index).submit();
+		}
+		return execution;
+	}
+
+	private BusLane lane(final int bus) {
+		BusLane lane = lanes.get(bus);
+		if (lane == null) {
+			final BusLane newLane = new BusLane();
+			lane = lanes.putIfAbsent(bus, newLane);
+			if (lane == null) {
+				lane = newLane;
+			}
+		}
+		return lane;
+	}
+
+	private void finish(final SRCPRouteExecution execution) {
+		if (execution.isDone()) {
+			return;
+		}
+		final SRCPRoute route = execution.getRoute();
+		route.setRouteState(execution.isEnabling() ? SRCPRouteState.ENABLED
+				: SRCPRouteState.DISABLED);
+		for (final SRCPRouteChangeListener l : listeners) {
+			l.routeChanged(route);
+		}
+		execution.complete(route);
+	}
+
+	/**
+	 * switches a turnout to the state of the route item if the route is
+	 * enabled or to its default state if it is disabled.
+	 */
+	static void switchTurnout(final SRCPRouteItem item, final boolean enable)
+			throws SRCPModelException {
+		final SRCPTurnoutControl sc = SRCPTurnoutControl.getInstance();
+		final SRCPTurnout turnout = item.getTurnout();
+		if (!enable) {
+			sc.setDefaultState(turnout);
+			return;
+		}
+		switch (item.getRoutedState()) {
+		case STRAIGHT:
+			sc.setStraight(turnout);
+			break;
+		case LEFT:
+			sc.setCurvedLeft(turnout);
+			break;
+		case RIGHT:
+			sc.setCurvedRight(turnout);
+			break;
+		case UNDEF:
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * @param routingDelay
+	 *            time in ms a turnout occupies its lane after being switched
+	 */
+	public void setRoutingDelay(final int routingDelay) {
+		this.routingDelay = routingDelay;
+	}
+
+	public int getRoutingDelay() {
+		return routingDelay;
+	}
+
+	/**
+	 * @param solenoidsPerBus
+	 *            the number of turnouts which may be switched at the same
+	 *            time on one bus
+	 */
+	public void setSolenoidsPerBus(final int solenoidsPerBus) {
+		if (solenoidsPerBus < 1) {
+			throw new IllegalArgumentException(
+					"at least one solenoid per bus is required");
+		}
+		this.solenoidsPerBus = solenoidsPerBus;
+	}
+
+	public int getSolenoidsPerBus() {
+		return solenoidsPerBus;
+	}
+
+	/**
+	 * stops the executor, running executions do not complete.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private class Step implements Runnable {
+
+		private final SRCPRouteExecution execution;
+
+		private final int index;
+
+		private final SRCPRouteItem item;
+
+		private final BusLane lane;
+
+		Step(final SRCPRouteExecution execution, final int index) {
+			this.execution = execution;
+			this.index = index;
+			this.item = execution.getPlan().getItem(index);
+			this.lane = lane(item.getTurnout().getBus1());
+		}
+
+		void submit() {
+			lane.submit(this);
+		}
+
+		public void run() {
+			if (execution.isDone()) {
+				// cancelled or failed, give the lane to the next turnout
+				lane.release();
+				return;
+			}
+			if (!execution.getPlan().needsSwitching(index,
+					execution.isEnabling())) {
+				execution.turnoutSkipped();
+				lane.release();
+				if (execution.turnoutFinished()) {
+					finish(execution);
+				}
+				return;
+			}
+			try {
+				switchTurnout(item, execution.isEnabling());
+			} catch (final SRCPModelException e) {
+				logger.error("switching " + item.getTurnout() + " failed", e);
+				execution.completeExceptionally(e);
+				lane.release();
+				return;
+			} catch (final RuntimeException e) {
+				execution.completeExceptionally(e);
+				lane.release();
+				throw e;
+			}
+			execution.turnoutSwitched();
+			final SRCPRoute route = execution.getRoute();
+			for (final SRCPRouteChangeListener l : listeners) {
+				if (execution.isEnabling()) {
+					l.nextTurnoutRouted(route);
+				} else {
+					l.nextTurnoutDerouted(route);
+				}
+			}
+			executor.schedule(new Runnable() {
+				public void run() {
+					lane.release();
+					if (execution.turnoutFinished()) {
+						finish(execution);
+					}
+				}
+			}, routingDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * the turnouts of one bus which are being switched or wait for it.
+	 */
+	private class BusLane {
+
+		private final Queue<Step> waiting = new ArrayDeque<Step>();
+
+		private int energized = 0;
+
+		void submit(final Step step) {
+			synchronized (this) {
+				if (energized >= solenoidsPerBus) {
+					waiting.add(step);
+					return;
+				}
+				energized++;
+			}
+			executor.execute(step);
+		}
+
+		void release() {
+			final Step next;
+			synchronized (this) {
+				next = energized <= solenoidsPerBus ? waiting.poll() : null;
+				if (next == null) {
+					energized--;
+				}
+			}
+			if (next != null) {
+				executor.execute(next);
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package de.dermoba.srcp.model.routes;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A route being enabled or disabled by the {@link SRCPRouteEngine}. The
+ * future completes with the route when all turnouts have been switched, or
+ * exceptionally with the {@link de.dermoba.srcp.model.SRCPModelException} of
+ * the first turnout which could not be switched.
+ *
+ * Only the turnouts which are not yet in their target state according to
+ * the {@link SRCPRoutePlan} are switched, the turnout count and the progress
+ * refer to them.
+ *
+ * Cancelling the execution stops switching, turnouts already switched stay
+ * in their new state and the route state becomes UNDEF.
+ */
+public class SRCPRouteExecution extends CompletableFuture<SRCPRoute> {
+
+	private final SRCPRoute route;
+
+	private final SRCPRoutePlan plan;
+
+	private final boolean enable;
+
+	private final int turnoutCount;
+
+	private final AtomicInteger switchedTurnouts = new AtomicInteger();
+
+	private final AtomicInteger skippedTurnouts = new AtomicInteger();
+
+	private final AtomicInteger finishedTurnouts = new AtomicInteger();
+
+	SRCPRouteExecution(final SRCPRoute route, final SRCPRoutePlan plan,
+			final boolean enable, final int turnoutCount) {
+		this.route = route;
+		this.plan = plan;
+		this.enable = enable;
+		this.turnoutCount = turnoutCount;
+	}
+
+	public SRCPRoute getRoute() {
+		return route;
+	}
+
+	public SRCPRoutePlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * @return true if the route is being enabled, false if disabled
+	 */
+	public boolean isEnabling() {
+		return enable;
+	}
+
+	/**
+	 * @return the number of turnouts which were not in their target state
+	 *         when the execution started
+	 */
+	public int getTurnoutCount() {
+		return turnoutCount;
+	}
+
+	/**
+	 * @return the number of turnouts switched so far
+	 */
+	public int getSwitchedTurnouts() {
+		return switchedTurnouts.get();
+	}
+
+	/**
+	 * @return the number of turnouts which were not switched because they
+	 *         already were in their target state
+	 */
+	public int getSkippedTurnouts() {
+		return plan.size() - turnoutCount + skippedTurnouts.get();
+	}
+
+	/**
+	 * @return the fraction of the turnouts handled so far, from 0 to 1
+	 */
+	public double getProgress() {
+		if (turnoutCount == 0) {
+			return isDone() ? 1.0 : 0.0;
+		}
+		return (double) (switchedTurnouts.get() + skippedTurnouts.get())
+				/ turnoutCount;
+	}
+
+	@Override
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		final boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if (cancelled) {
+			route.setRouteState(SRCPRouteState.UNDEF);
+		}
+		return cancelled;
+	}
+
+	void turnoutSwitched() {
+		switchedTurnouts.incrementAndGet();
+	}
+
+	/**
+	 * a turnout reached its target state before it was its turn.
+	 */
+	void turnoutSkipped() {
+		skippedTurnouts.incrementAndGet();
+	}
+
+	/**
+	 * @return true if this was the last turnout of the route
+	 */
+	boolean turnoutFinished() {
+		return finishedTurnouts.incrementAndGet() == turnoutCount;
+	}
+
+	@Override
+	public String toString() {
+		return (enable ? "enable " : "disable ") + route + " ("
+				+ switchedTurnouts.get() + "/" + turnoutCount + ")";
+	}
+}
@@ -0,0 +1,126 @@
+package de.dermoba.srcp.model.routes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dermoba.srcp.model.turnouts.SRCPTurnout;
+import de.dermoba.srcp.model.turnouts.SRCPTurnoutState;
+
+/**
+ * The turnouts of a route together with the state each of them has when
+ * the route is enabled and when it is disabled.
+ *
+ * The plan is compared with the current state of the turnouts, which the
+ * {@link de.dermoba.srcp.model.turnouts.SRCPTurnoutControl} keeps up to date
+ * from the GA info of the server, so only turnouts which are not in their
+ * target state need to be switched. Cutters are always switched since their
+ * state does not tell whether they have been activated.
+ */
+public class SRCPRoutePlan {
+
+	private final SRCPRouteItem[] items;
+
+	private final SRCPTurnoutState[] enabledStates;
+
+	private final SRCPTurnoutState[] disabledStates;
+
+	private SRCPRoutePlan(final List<SRCPRouteItem> routeItems) {
+		final int size = routeItems.size();
+		items = routeItems.toArray(new SRCPRouteItem[size]);
+		enabledStates = new SRCPTurnoutState[size];
+		disabledStates = new SRCPTurnoutState[size];
+		for (int i = 0; i < size; i++) {
+			final SRCPTurnout turnout = items[i].getTurnout();
+			enabledStates[i] = resultingState(turnout,
+					items[i].getRoutedState());
+			disabledStates[i] = resultingState(turnout,
+					turnout.isThreeWay() ? SRCPTurnoutState.STRAIGHT : turnout
+							.getDefaultState());
+		}
+	}
+
+	public static SRCPRoutePlan compile(final SRCPRoute route) {
+		return new SRCPRoutePlan(route.getRouteItems());
+	}
+
+	/**
+	 * @return the state a turnout has after being switched to state, null
+	 *         if it is not switched at all
+	 */
+	private static SRCPTurnoutState resultingState(final SRCPTurnout turnout,
+			final SRCPTurnoutState state) {
+		if (state == null) {
+			return null;
+		}
+		switch (state) {
+		case STRAIGHT:
+			return SRCPTurnoutState.STRAIGHT;
+		case LEFT:
+			return SRCPTurnoutState.LEFT;
+		case RIGHT:
+			// only three-way turnouts have a right position
+			return turnout.isThreeWay() ? SRCPTurnoutState.RIGHT
+					: SRCPTurnoutState.LEFT;
+		case UNDEF:
+		default:
+			return null;
+		}
+	}
+
+	public int size() {
+		return items.length;
+	}
+
+	public SRCPRouteItem getItem(final int index) {
+		return items[index];
+	}
+
+	/**
+	 * @return the state of the turnout at index after enabling or disabling
+	 *         the route, null if the turnout is not switched
+	 */
+	public SRCPTurnoutState getTargetState(final int index,
+			final boolean enable) {
+		return enable ? enabledStates[index] : disabledStates[index];
+	}
+
+	/**
+	 * @return true if the turnout at index has to be switched
+	 */
+	public boolean needsSwitching(final int index, final boolean enable) {
+		final SRCPTurnoutState target = getTargetState(index, enable);
+		if (target == null) {
+			return false;
+		}
+		final SRCPTurnout turnout = items[index].getTurnout();
+		return turnout.isCutter() || turnout.getTurnoutState() != target;
+	}
+
+	/**
+	 * @return the indexes of the turnouts which currently have to be
+	 *         switched, in route order
+	 */
+	public int[] getPendingIndexes(final boolean enable) {
+		final int[] pending = new int[items.length];
+		int count = 0;
+		for (int i = 0; i < items.length; i++) {
+			if (needsSwitching(i, enable)) {
+				pending[count++] = i;
+			}
+		}
+		final int[] result = new int[count];
+		System.arraycopy(pending, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * @return the route items which currently have to be switched
+	 */
+	public List<SRCPRouteItem> getPendingItems(final boolean enable) {
+		final List<SRCPRouteItem> pending = new ArrayList<SRCPRouteItem>();
+		for (final int i : getPendingIndexes(enable)) {
+			pending.add(items[i]);
+		}
+		return pending;
+	}
+}
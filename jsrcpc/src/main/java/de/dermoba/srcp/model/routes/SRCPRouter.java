@@ -27,6 +27,13 @@ import de.dermoba.srcp.model.turnouts.SRCPTurnoutControl;
 import de.dermoba.srcp.model.turnouts.SRCPTurnoutException;
 import de.dermoba.srcp.model.turnouts.SRCPTurnoutState;
 
+/**
+ * Switches the turnouts of a route on its own thread.
+ * 
+ * @deprecated {@link SRCPRouteControl} uses the {@link SRCPRouteEngine}
+ *             which shares its threads among all routes.
+ */
+@Deprecated
 public class SRCPRouter extends Thread implements SRCPTurnoutChangeListener {
 
 	private final boolean enableRoute;
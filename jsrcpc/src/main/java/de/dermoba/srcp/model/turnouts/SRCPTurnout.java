@@ -37,17 +37,17 @@ public abstract class SRCPTurnout {
 
 	protected SRCPTurnoutState	defaultState;
 
-	private GA					ga;
+	private volatile GA			ga;
 
-	protected boolean			initialized		= false;
+	protected volatile boolean	initialized		= false;
 
 	protected String			protocol;
 
-	private SRCPSession			session;
+	private volatile SRCPSession	session;
 
-	private SRCPTurnout[]		subTurnouts;
+	private volatile SRCPTurnout[]	subTurnouts;
 
-	protected SRCPTurnoutState	turnoutState	= SRCPTurnoutState.UNDEF;
+	protected volatile SRCPTurnoutState	turnoutState	= SRCPTurnoutState.UNDEF;
 
 	protected SRCPTurnoutTypes	turnoutType;
 	public final static int		TURNOUT_STRAIGHT_PORT		= 0;
@@ -18,10 +18,9 @@
 
 package de.dermoba.srcp.model.turnouts;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
@@ -33,32 +32,37 @@ import de.dermoba.srcp.devices.listener.GAInfoListener;
 import de.dermoba.srcp.model.Constants;
 import de.dermoba.srcp.model.InvalidAddressException;
 import de.dermoba.srcp.model.NoSessionException;
-import de.dermoba.srcp.model.SRCPAddress;
+import de.dermoba.srcp.model.SRCPModelEventBus;
 import de.dermoba.srcp.model.SRCPModelException;
 
+/**
+ * Controls all actions which can be performed on turnouts.
+ * 
+ * The control can be used from several threads. Commands to one turnout are
+ * serialized by the monitor of the turnout, for a three-way turnout the
+ * monitor of the three-way turnout is held while its sub-turnouts are
+ * switched. Commands to different turnouts run in parallel.
+ */
 public class SRCPTurnoutControl implements GAInfoListener {
 	private static Logger logger = Logger.getLogger(SRCPTurnoutControl.class);
 	private static SRCPTurnoutControl instance;
 
-	private final List<SRCPTurnoutChangeListener> listeners = new ArrayList<SRCPTurnoutChangeListener>();;
-
-	private final List<SRCPTurnout> srcpTurnouts = new ArrayList<SRCPTurnout>();
-
-	private final Map<SRCPAddress, SRCPTurnout> addressTurnoutCache = new HashMap<SRCPAddress, SRCPTurnout>();
-	private final Map<SRCPAddress, SRCPTurnout> addressThreewayCache = new HashMap<SRCPAddress, SRCPTurnout>();
-	private SRCPTurnout lastChangedTurnout;
+	private final List<SRCPTurnoutChangeListener> listeners = new CopyOnWriteArrayList<SRCPTurnoutChangeListener>();
 
-	private SRCPTurnoutState previousState;
-	private SRCPSession session;
-	private boolean interface6051Connected = Constants.INTERFACE_6051_CONNECTED;
-	private int turnoutActivationTime = Constants.DEFAULT_ACTIVATION_TIME;
-	private int cutterActivationTime = Constants.DEFAULT_CUTTER_ACTIVATION_TIME;
+	private final SRCPTurnoutRegistry registry = new SRCPTurnoutRegistry();
+	/** the turnout changed last with its state before, for undo */
+	private volatile LastChange lastChange;
+	private volatile SRCPSession session;
+	private volatile SRCPModelEventBus eventBus;
+	private volatile boolean interface6051Connected = Constants.INTERFACE_6051_CONNECTED;
+	private volatile int turnoutActivationTime = Constants.DEFAULT_ACTIVATION_TIME;
+	private volatile int cutterActivationTime = Constants.DEFAULT_CUTTER_ACTIVATION_TIME;
 
 	private SRCPTurnoutControl() {
 		logger.info("SRCPTurnoutControl loaded");
 	}
 
-	public static SRCPTurnoutControl getInstance() {
+	public static synchronized SRCPTurnoutControl getInstance() {
 		if (instance == null) {
 			instance = new SRCPTurnoutControl();
 		}
@@ -70,7 +74,7 @@ public class SRCPTurnoutControl implements GAInfoListener {
 		if (session != null) {
 			session.getInfoChannel().addGAInfoListener(this);
 		}
-		for (final SRCPTurnout st : srcpTurnouts) {
+		for (final SRCPTurnout st : registry.getTurnouts()) {
 			st.setSession(session);
 		}
 	}
@@ -96,26 +100,28 @@ public class SRCPTurnoutControl implements GAInfoListener {
 
 	public void toggle(final SRCPTurnout turnout) throws SRCPTurnoutException,
 			SRCPModelException {
-		checkTurnout(turnout);
+		synchronized (turnout) {
+			checkTurnout(turnout);
+			final SRCPTurnoutState previousState = turnout.getTurnoutState();
 
-		if (turnout.isThreeWay()) {
-			toggleThreeWay(turnout);
-			lastChangedTurnout = turnout;
-			return;
-		}
-		previousState = turnout.getTurnoutState();
-		switch (previousState) {
-		case STRAIGHT:
-			setCurvedLeft(turnout);
-			break;
-		case RIGHT:
-		case LEFT:
-			setStraight(turnout);
-			break;
-		case UNDEF:
-			setDefaultState(turnout);
+			if (turnout.isThreeWay()) {
+				toggleThreeWay(turnout);
+				lastChange = new LastChange(turnout, previousState);
+				return;
+			}
+			switch (previousState) {
+			case STRAIGHT:
+				setCurvedLeft(turnout);
+				break;
+			case RIGHT:
+			case LEFT:
+				setStraight(turnout);
+				break;
+			case UNDEF:
+				setDefaultState(turnout);
+			}
+			lastChange = new LastChange(turnout, previousState);
 		}
-		lastChangedTurnout = turnout;
 	}
 
 	private void toggleThreeWay(final SRCPTurnout turnout)
@@ -141,32 +147,34 @@ public class SRCPTurnoutControl implements GAInfoListener {
 			break;
 		}
 		// informListeners(turnout);
-		lastChangedTurnout = turnout;
 	}
 
 	public void setDefaultState(final SRCPTurnout turnout)
 			throws SRCPTurnoutException, SRCPModelException {
-		checkTurnout(turnout);
-		previousState = turnout.getTurnoutState();
-		if (turnout.isThreeWay()) {
-			setDefaultStateThreeWay(turnout);
-			return;
-		}
-		switch (turnout.getDefaultState()) {
-		case STRAIGHT:
-			setStraight(turnout);
-			break;
-		case LEFT:
-		case RIGHT:
-			setCurvedLeft(turnout);
-			break;
-		case UNDEF:
-			break;
-		default:
-			break;
+		synchronized (turnout) {
+			checkTurnout(turnout);
+			final SRCPTurnoutState previousState = turnout.getTurnoutState();
+			if (turnout.isThreeWay()) {
+				setDefaultStateThreeWay(turnout);
+				lastChange = new LastChange(turnout, previousState);
+				return;
+			}
+			switch (turnout.getDefaultState()) {
+			case STRAIGHT:
+				setStraight(turnout);
+				break;
+			case LEFT:
+			case RIGHT:
+				setCurvedLeft(turnout);
+				break;
+			case UNDEF:
+				break;
+			default:
+				break;
+			}
+			// informListeners(turnout);
+			lastChange = new LastChange(turnout, previousState);
 		}
-		// informListeners(turnout);
-		lastChangedTurnout = turnout;
 	}
 
 	private void setDefaultStateThreeWay(final SRCPTurnout turnout)
@@ -181,32 +189,33 @@ public class SRCPTurnoutControl implements GAInfoListener {
 		setStraight(subTurnouts[1]);
 		turnout.setTurnoutState(SRCPTurnoutState.STRAIGHT);
 		// informListeners(turnout);
-		lastChangedTurnout = turnout;
 	}
 
 	public void setNonDefaultState(final SRCPTurnout turnout)
 			throws SRCPTurnoutException, SRCPModelException {
-		checkTurnout(turnout);
-		previousState = turnout.getTurnoutState();
-		if (turnout.isThreeWay()) {
-			setNonDefaultStateTheeWay(turnout);
-			return;
-		}
-		switch (turnout.getDefaultState()) {
-		case STRAIGHT:
-			setCurvedLeft(turnout);
-			break;
-		case LEFT:
-		case RIGHT:
-			setStraight(turnout);
-			break;
-		case UNDEF:
-			break;
-		default:
-			break;
+		synchronized (turnout) {
+			checkTurnout(turnout);
+			final SRCPTurnoutState previousState = turnout.getTurnoutState();
+			if (turnout.isThreeWay()) {
+				setNonDefaultStateTheeWay(turnout);
+				return;
+			}
+			switch (turnout.getDefaultState()) {
+			case STRAIGHT:
+				setCurvedLeft(turnout);
+				break;
+			case LEFT:
+			case RIGHT:
+				setStraight(turnout);
+				break;
+			case UNDEF:
+				break;
+			default:
+				break;
+			}
+			// informListeners(turnout);
+			lastChange = new LastChange(turnout, previousState);
 		}
-		// informListeners(turnout);
-		lastChangedTurnout = turnout;
 	}
 
 	private void setNonDefaultStateTheeWay(final SRCPTurnout turnout) {
@@ -215,42 +224,45 @@ public class SRCPTurnoutControl implements GAInfoListener {
 
 	public void setStraight(final SRCPTurnout turnout)
 			throws SRCPTurnoutException, SRCPModelException {
-		checkTurnout(turnout);
-		previousState = turnout.getTurnoutState();
-		if (turnout.isThreeWay()) {
-			setStraightThreeWay(turnout);
-			return;
-		}
-		final GA ga = turnout.getGA();
-		try {
-			int time;
-			int reps;
-			if (turnout.isCutter()) {
-				time = cutterActivationTime;
-				reps = 5;
-			} else {
-				time = turnoutActivationTime;
-				reps = 1;
-			}
-			for (int i = 0; i < reps; i++) {
-				ga.set(getPort(turnout, SRCPTurnout.TURNOUT_STRAIGHT_PORT),
-						SRCPTurnout.TURNOUT_PORT_ACTIVATE, time);
-			}
-			// ga.set(getPort(turnout, SRCPTurnout.TURNOUT_CURVED_PORT),
-			// SRCPTurnout.TURNOUT_PORT_DEACTIVATE, activationTime);
-			if (turnout.isCutter()) {
-				turnout.setTurnoutState(SRCPTurnoutState.LEFT);
-			} else {
-				turnout.setTurnoutState(SRCPTurnoutState.STRAIGHT);
+		synchronized (turnout) {
+			checkTurnout(turnout);
+			final SRCPTurnoutState previousState = turnout.getTurnoutState();
+			if (turnout.isThreeWay()) {
+				setStraightThreeWay(turnout);
+				lastChange = new LastChange(turnout, previousState);
+				return;
 			}
+			final GA ga = turnout.getGA();
+			try {
+				int time;
+				int reps;
+				if (turnout.isCutter()) {
+					time = cutterActivationTime;
+					reps = 5;
+				} else {
+					time = turnoutActivationTime;
+					reps = 1;
+				}
+				for (int i = 0; i < reps; i++) {
+					ga.set(getPort(turnout, SRCPTurnout.TURNOUT_STRAIGHT_PORT),
+							SRCPTurnout.TURNOUT_PORT_ACTIVATE, time);
+				}
+				// ga.set(getPort(turnout, SRCPTurnout.TURNOUT_CURVED_PORT),
+				// SRCPTurnout.TURNOUT_PORT_DEACTIVATE, activationTime);
+				if (turnout.isCutter()) {
+					turnout.setTurnoutState(SRCPTurnoutState.LEFT);
+				} else {
+					turnout.setTurnoutState(SRCPTurnoutState.STRAIGHT);
+				}
 
-			// informListeners(turnout);
-			lastChangedTurnout = turnout;
-		} catch (final SRCPDeviceLockedException x1) {
-			throw new SRCPTurnoutLockedException(Constants.ERR_LOCKED, x1);
-		} catch (final SRCPException e) {
-			logger.error(e);
-			throw new SRCPTurnoutException(Constants.ERR_TOGGLE_FAILED, e);
+				// informListeners(turnout);
+				lastChange = new LastChange(turnout, previousState);
+			} catch (final SRCPDeviceLockedException x1) {
+				throw new SRCPTurnoutLockedException(Constants.ERR_LOCKED, x1);
+			} catch (final SRCPException e) {
+				logger.error(e);
+				throw new SRCPTurnoutException(Constants.ERR_TOGGLE_FAILED, e);
+			}
 		}
 	}
 
@@ -266,44 +278,46 @@ public class SRCPTurnoutControl implements GAInfoListener {
 		setStraight(subTurnouts[1]);
 		turnout.setTurnoutState(SRCPTurnoutState.STRAIGHT);
 		// informListeners(turnout);
-		lastChangedTurnout = turnout;
 	}
 
 	public void setCurvedLeft(final SRCPTurnout turnout)
 			throws SRCPTurnoutException, SRCPModelException {
-		checkTurnout(turnout);
-		previousState = turnout.getTurnoutState();
-		if (turnout.isThreeWay()) {
-			setCurvedLeftThreeWay(turnout);
-			return;
-		}
-		final GA ga = turnout.getGA();
-		try {
-			int time;
-			int reps;
-			if (turnout.isCutter()) {
-				time = cutterActivationTime;
-				reps = 5;
-			} else {
-				time = turnoutActivationTime;
-				reps = 1;
+		synchronized (turnout) {
+			checkTurnout(turnout);
+			final SRCPTurnoutState previousState = turnout.getTurnoutState();
+			if (turnout.isThreeWay()) {
+				setCurvedLeftThreeWay(turnout);
+				lastChange = new LastChange(turnout, previousState);
+				return;
 			}
+			final GA ga = turnout.getGA();
+			try {
+				int time;
+				int reps;
+				if (turnout.isCutter()) {
+					time = cutterActivationTime;
+					reps = 5;
+				} else {
+					time = turnoutActivationTime;
+					reps = 1;
+				}
 
-			for (int i = 0; i < reps; i++) {
-				ga.set(getPort(turnout, SRCPTurnout.TURNOUT_CURVED_PORT),
-						SRCPTurnout.TURNOUT_PORT_ACTIVATE, time);
-			}
+				for (int i = 0; i < reps; i++) {
+					ga.set(getPort(turnout, SRCPTurnout.TURNOUT_CURVED_PORT),
+							SRCPTurnout.TURNOUT_PORT_ACTIVATE, time);
+				}
 
-			// ga.set(getPort(turnout, SRCPTurnout.TURNOUT_STRAIGHT_PORT),
-			// SRCPTurnout.TURNOUT_PORT_DEACTIVATE, activationTime);
-			turnout.setTurnoutState(SRCPTurnoutState.LEFT);
-			// informListeners(turnout);
-			lastChangedTurnout = turnout;
-		} catch (final SRCPDeviceLockedException x1) {
-			throw new SRCPTurnoutLockedException(Constants.ERR_LOCKED, x1);
-		} catch (final SRCPException e) {
-			logger.error(e);
-			throw new SRCPTurnoutException(Constants.ERR_TOGGLE_FAILED, e);
+				// ga.set(getPort(turnout, SRCPTurnout.TURNOUT_STRAIGHT_PORT),
+				// SRCPTurnout.TURNOUT_PORT_DEACTIVATE, activationTime);
+				turnout.setTurnoutState(SRCPTurnoutState.LEFT);
+				// informListeners(turnout);
+				lastChange = new LastChange(turnout, previousState);
+			} catch (final SRCPDeviceLockedException x1) {
+				throw new SRCPTurnoutLockedException(Constants.ERR_LOCKED, x1);
+			} catch (final SRCPException e) {
+				logger.error(e);
+				throw new SRCPTurnoutException(Constants.ERR_TOGGLE_FAILED, e);
+			}
 		}
 	}
 
@@ -320,21 +334,23 @@ public class SRCPTurnoutControl implements GAInfoListener {
 		setStraight(subTurnouts[1]);
 		turnout.setTurnoutState(SRCPTurnoutState.LEFT);
 		// informListeners(turnout);
-		lastChangedTurnout = turnout;
 	}
 
 	public void setCurvedRight(final SRCPTurnout turnout)
 			throws SRCPTurnoutException, SRCPModelException {
-		checkTurnout(turnout);
-		previousState = turnout.getTurnoutState();
-		if (turnout.isThreeWay()) {
-			setCurvedRightThreeWay(turnout);
-			return;
-		}
-		setCurvedLeft(turnout);
+		synchronized (turnout) {
+			checkTurnout(turnout);
+			final SRCPTurnoutState previousState = turnout.getTurnoutState();
+			if (turnout.isThreeWay()) {
+				setCurvedRightThreeWay(turnout);
+				lastChange = new LastChange(turnout, previousState);
+				return;
+			}
+			setCurvedLeft(turnout);
 
-		// informListeners(turnout);
-		lastChangedTurnout = turnout;
+			// informListeners(turnout);
+			lastChange = new LastChange(turnout, previousState);
+		}
 	}
 
 	private void setCurvedRightThreeWay(final SRCPTurnout turnout)
@@ -350,7 +366,6 @@ public class SRCPTurnoutControl implements GAInfoListener {
 		setCurvedLeft(subTurnouts[1]);
 		turnout.setTurnoutState(SRCPTurnoutState.RIGHT);
 		// informListeners(turnout);
-		lastChangedTurnout = turnout;
 	}
 
 	public SRCPTurnoutState getTurnoutState(final SRCPTurnout turnout) {
@@ -368,23 +383,44 @@ public class SRCPTurnoutControl implements GAInfoListener {
 			return;
 		}
 		try {
-			checkTurnout(turnout);
+			synchronized (turnout) {
+				checkTurnout(turnout);
 
-			if (value == 1) {
-				// wait for deactivation
-				return;
+				if (value == 1) {
+					// wait for deactivation
+					return;
+				}
+				// a port has been activated
+				if (turnout.isThreeWay()) {
+					portChangedThreeway(turnout, address, port);
+				} else {
+					portChanged(turnout, port);
+				}
 			}
-			// a port has been activated
+
+			informListeners(turnout);
+		} catch (final SRCPModelException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * applies the state of a port known from elsewhere, e.g. a snapshot,
+	 * like an info of the server but without initializing the turnout.
+	 */
+	public void restorePort(final int bus, final int address, final int port) {
+		final SRCPTurnout turnout = getTurnoutByAddressBus(bus, address);
+		if (turnout == null) {
+			return;
+		}
+		synchronized (turnout) {
 			if (turnout.isThreeWay()) {
 				portChangedThreeway(turnout, address, port);
 			} else {
 				portChanged(turnout, port);
 			}
-
-			informListeners(turnout);
-		} catch (final SRCPModelException e) {
-			e.printStackTrace();
 		}
+		informListeners(turnout);
 	}
 
 	private void portChanged(final SRCPTurnout turnout, final int port) {
@@ -435,7 +471,9 @@ public class SRCPTurnoutControl implements GAInfoListener {
 			return;
 		}
 		try {
-			checkTurnout(turnout);
+			synchronized (turnout) {
+				checkTurnout(turnout);
+			}
 			informListeners(turnout);
 		} catch (final SRCPModelException e) {
 			// TODO Auto-generated catch block
@@ -447,13 +485,16 @@ public class SRCPTurnoutControl implements GAInfoListener {
 	public void GAterm(final double timestamp, final int bus, final int address) {
 		logger.debug("GAterm( " + bus + " , " + address + " )");
 		final SRCPTurnout turnout = getTurnoutByAddressBus(bus, address);
+		if (turnout == null) {
+			return;
+		}
 		try {
-			checkTurnout(turnout);
-			if (turnout != null) {
+			synchronized (turnout) {
+				checkTurnout(turnout);
 				turnout.setGA(null);
 				turnout.setInitialized(false);
-				informListeners(turnout);
 			}
+			informListeners(turnout);
 		} catch (final SRCPModelException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -474,47 +515,61 @@ public class SRCPTurnoutControl implements GAInfoListener {
 		listeners.clear();
 	}
 
+	/**
+	 * delivers the change events through the bus instead of informing the
+	 * listeners at once on the thread which changed the state.
+	 * 
+	 * @param eventBus
+	 *            the bus, null to inform the listeners at once
+	 */
+	public void setEventBus(final SRCPModelEventBus eventBus) {
+		this.eventBus = eventBus;
+	}
+
+	public SRCPModelEventBus getEventBus() {
+		return eventBus;
+	}
+
 	void informListeners(final SRCPTurnout changedTurnout) {
+		final SRCPTurnoutState state = changedTurnout.getTurnoutState();
+		final SRCPModelEventBus bus = eventBus;
+		if (bus == null) {
+			fireTurnoutChanged(changedTurnout, state);
+			return;
+		}
+		bus.post(this, changedTurnout, Arrays.asList(state,
+				changedTurnout.isInitialized()), new Runnable() {
+			public void run() {
+				fireTurnoutChanged(changedTurnout, state);
+			}
+		});
+	}
 
+	private void fireTurnoutChanged(final SRCPTurnout changedTurnout,
+			final SRCPTurnoutState state) {
 		for (final SRCPTurnoutChangeListener scl : listeners) {
-			scl.turnoutChanged(changedTurnout, changedTurnout.getTurnoutState());
+			scl.turnoutChanged(changedTurnout, state);
 		}
 		logger.debug("turnoutChanged(" + changedTurnout + ")");
-
 	}
 
+	/**
+	 * registers a turnout, registering it again has no effect. The address
+	 * of a registered turnout must not be changed, remove it first and add
+	 * it again afterwards.
+	 */
 	public void addTurnout(final SRCPTurnout turnout) {
-		srcpTurnouts.add(turnout);
-		if (turnout.isThreeWay()) {
-			addressTurnoutCache.put(
-					new SRCPAddress(turnout.getBus1(), turnout.getAddress1(),
-							turnout.getBus2(), turnout.getAddress2()), turnout);
-			addressThreewayCache.put(
-					new SRCPAddress(turnout.getBus1(), turnout.getAddress1(),
-							0, 0), turnout);
-			addressThreewayCache.put(new SRCPAddress(0, 0, turnout.getBus2(),
-					turnout.getAddress2()), turnout);
-		} else {
-			addressTurnoutCache.put(
-					new SRCPAddress(turnout.getBus1(), turnout.getAddress1()),
-					turnout);
-		}
+		registry.register(turnout);
 	}
 
+	/**
+	 * unregisters a turnout and the sub-turnouts of a three-way turnout.
+	 */
 	public void removeTurnout(final SRCPTurnout turnout) {
 		if (turnout == null) {
 			return;
 		}
-		srcpTurnouts.remove(turnout);
-		addressTurnoutCache.remove(new SRCPAddress(turnout.getBus1(), turnout
-				.getAddress1(), turnout.getBus2(), turnout.getAddress2()));
-		if (turnout.isThreeWay()) {
-
-			addressTurnoutCache.remove(new SRCPAddress(turnout.getBus1(),
-					turnout.getAddress1(), 0, 0));
-			addressTurnoutCache.remove(new SRCPAddress(0, 0, turnout.getBus2(),
-					turnout.getAddress2()));
-		}
+		registry.unregister(turnout);
 	}
 
 	void checkTurnout(final SRCPTurnout turnout) throws SRCPModelException {
@@ -527,18 +582,8 @@ public class SRCPTurnoutControl implements GAInfoListener {
 					"Turnout has an invalid address or bus");
 		}
 
-		if (!srcpTurnouts.contains(turnout)) {
-			srcpTurnouts.add(turnout);
-			addressTurnoutCache.put(
-					new SRCPAddress(turnout.getBus1(), turnout.getAddress1(),
-							turnout.getBus2(), turnout.getAddress2()), turnout);
-			if (turnout.isThreeWay()) {
-				addressThreewayCache.put(new SRCPAddress(turnout.getBus1(),
-						turnout.getAddress1(), 0, 0), turnout);
-				addressThreewayCache.put(
-						new SRCPAddress(0, 0, turnout.getBus2(), turnout
-								.getAddress2()), turnout);
-			}
+		if (!registry.contains(turnout)) {
+			registry.register(turnout);
 		}
 
 		if (turnout.getSession() == null && session == null) {
@@ -577,87 +622,73 @@ public class SRCPTurnoutControl implements GAInfoListener {
 
 	private void initTurnoutThreeWay(final SRCPTurnout turnout)
 			throws SRCPTurnoutException {
-		final SRCPTurnout turnout1 = (SRCPTurnout) turnout.clone();
-		final SRCPTurnout turnout2 = (SRCPTurnout) turnout.clone();
-
-		turnout1.setBus1(turnout.getBus1());
-		turnout1.setAddress1(turnout.getAddress1());
-		turnout1.setAddress1Switched(turnout.isAddress1Switched());
-		turnout1.setTurnoutType(SRCPTurnoutTypes.DEFAULT);
-		turnout1.setSession(turnout.getSession());
-
-		turnout2.setBus1(turnout.getBus2());
-		turnout2.setAddress1(turnout.getAddress2());
-		turnout2.setAddress1Switched(turnout.isAddress2Switched());
-		turnout2.setTurnoutType(SRCPTurnoutTypes.DEFAULT);
-		turnout2.setSession(turnout.getSession());
-
-		srcpTurnouts.add(turnout1);
-		srcpTurnouts.add(turnout2);
-		initTurnout(turnout1);
-		initTurnout(turnout2);
-
-		final SRCPTurnout[] turnouts = new SRCPTurnout[] { turnout1, turnout2 };
-		turnout.setSubTurnouts(turnouts);
-
+		SRCPTurnout[] turnouts = turnout.getSubTurnouts();
+		if (turnouts == null
+				|| turnouts[0].getBus1() != turnout.getBus1()
+				|| turnouts[0].getAddress1() != turnout.getAddress1()
+				|| turnouts[1].getBus1() != turnout.getBus2()
+				|| turnouts[1].getAddress1() != turnout.getAddress2()) {
+			turnouts = new SRCPTurnout[] { (SRCPTurnout) turnout.clone(),
+					(SRCPTurnout) turnout.clone() };
+			turnouts[0].setBus1(turnout.getBus1());
+			turnouts[0].setAddress1(turnout.getAddress1());
+			turnouts[0].setTurnoutType(SRCPTurnoutTypes.DEFAULT);
+			turnouts[1].setBus1(turnout.getBus2());
+			turnouts[1].setAddress1(turnout.getAddress2());
+			turnouts[1].setTurnoutType(SRCPTurnoutTypes.DEFAULT);
+			registry.registerSubTurnouts(turnout, turnouts);
+		}
+
+		// sub-turnouts of a previous initialization are reused but
+		// initialized again like the three-way turnout itself
+		for (final SRCPTurnout sub : turnouts) {
+			sub.setInitialized(false);
+			sub.setSession(turnout.getSession());
+		}
+		turnouts[0].setAddress1Switched(turnout.isAddress1Switched());
+		turnouts[1].setAddress1Switched(turnout.isAddress2Switched());
+
+		initTurnout(turnouts[0]);
+		initTurnout(turnouts[1]);
 	}
 
 	public void undoLastChange() throws SRCPTurnoutException,
 			SRCPModelException {
-		if (lastChangedTurnout == null) {
+		final LastChange last = lastChange;
+		if (last == null) {
 			return;
 		}
-		switch (previousState) {
+		switch (last.previousState) {
 
 		case STRAIGHT:
-			setStraight(lastChangedTurnout);
+			setStraight(last.turnout);
 			break;
 		case LEFT:
-			setCurvedLeft(lastChangedTurnout);
+			setCurvedLeft(last.turnout);
 			break;
 		case RIGHT:
-			setCurvedRight(lastChangedTurnout);
+			setCurvedRight(last.turnout);
 			break;
 		case UNDEF:
-			setStraight(lastChangedTurnout);
+			setStraight(last.turnout);
 			break;
 		}
-		// informListeners(lastChangedTurnout);
+		// informListeners(last.turnout);
 
-		lastChangedTurnout = null;
-		previousState = null;
+		lastChange = null;
 	}
 
 	public void previousDeviceToDefault() throws SRCPTurnoutException,
 			SRCPModelException {
-		if (lastChangedTurnout == null) {
+		final LastChange last = lastChange;
+		if (last == null) {
 			return;
 		}
-		setDefaultState(lastChangedTurnout);
+		setDefaultState(last.turnout);
 	}
 
 	private SRCPTurnout getTurnoutByAddressBus(final int bus, final int address) {
-		final SRCPAddress key1 = new SRCPAddress(bus, address, 0, 0);
-		final SRCPTurnout lookup1 = addressTurnoutCache.get(key1);
-		if (lookup1 != null) {
-			return lookup1;
-		}
-		final SRCPAddress key2 = new SRCPAddress(0, 0, bus, address);
-		final SRCPTurnout lookup2 = addressTurnoutCache.get(key2);
-		if (lookup2 != null) {
-			return lookup2;
-		}
-		final SRCPTurnout threewayLookup1 = addressThreewayCache.get(key1);
-		if (threewayLookup1 != null) {
-			return threewayLookup1;
-		}
-
-		final SRCPTurnout threewayLookup2 = addressThreewayCache.get(key2);
-		if (threewayLookup2 != null) {
-			return threewayLookup2;
-		}
-
-		return null;
+		return registry.get(bus, address);
 	}
 
 	public boolean isInterface6051Connected() {
@@ -690,4 +721,17 @@ public class SRCPTurnoutControl implements GAInfoListener {
 		ga.setAddress(address);
 		ga.set(0, 1, 1000);
 	}
+
+	private static final class LastChange {
+
+		final SRCPTurnout turnout;
+
+		final SRCPTurnoutState previousState;
+
+		LastChange(final SRCPTurnout turnout,
+				final SRCPTurnoutState previousState) {
+			this.turnout = turnout;
+			this.previousState = previousState;
+		}
+	}
 }
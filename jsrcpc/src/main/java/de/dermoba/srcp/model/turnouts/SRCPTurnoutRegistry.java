@@ -0,0 +1,135 @@
+package de.dermoba.srcp.model.turnouts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import de.dermoba.srcp.model.SRCPAddressIndex;
+
+/**
+ * The turnouts known to the {@link SRCPTurnoutControl}.
+ *
+ * Membership is by identity since the equals() of {@link SRCPTurnout} is
+ * based on mutable fields. Turnouts are indexed by address for the info
+ * listener, the sub-turnouts of three-way turnouts are registered with
+ * their parent but not indexed, so info about their addresses resolves to
+ * the three-way turnout.
+ *
+ * The address of a registered turnout must not change, unregister it
+ * first and register it again afterwards.
+ *
+ * All methods are synchronized, they are short and never call out.
+ */
+class SRCPTurnoutRegistry {
+
+	private final Set<SRCPTurnout> turnouts = Collections
+			.newSetFromMap(new IdentityHashMap<SRCPTurnout, Boolean>());
+
+	private final Set<SRCPTurnout> subTurnouts = Collections
+			.newSetFromMap(new IdentityHashMap<SRCPTurnout, Boolean>());
+
+	/** normal turnouts by bus1 and address1 */
+	private final SRCPAddressIndex<SRCPTurnout> turnoutIndex = new SRCPAddressIndex<SRCPTurnout>();
+
+	/** three-way turnouts by both of their addresses */
+	private final SRCPAddressIndex<SRCPTurnout> threeWayIndex = new SRCPAddressIndex<SRCPTurnout>();
+
+	/**
+	 * @return false if the turnout was already registered
+	 */
+	synchronized boolean register(final SRCPTurnout turnout) {
+		if (!turnouts.add(turnout)) {
+			return false;
+		}
+		if (turnout.isThreeWay()) {
+			threeWayIndex.put(turnout.getBus1(), turnout.getAddress1(), turnout);
+			threeWayIndex.put(turnout.getBus2(), turnout.getAddress2(), turnout);
+		} else {
+			turnoutIndex.put(turnout.getBus1(), turnout.getAddress1(), turnout);
+		}
+		return true;
+	}
+
+	/**
+	 * removes the turnout and its sub-turnouts.
+	 *
+	 * @return false if the turnout was not registered
+	 */
+	synchronized boolean unregister(final SRCPTurnout turnout) {
+		if (!turnouts.remove(turnout)) {
+			return false;
+		}
+		if (turnout.isThreeWay()) {
+			threeWayIndex.remove(turnout.getBus1(), turnout.getAddress1(),
+					turnout);
+			threeWayIndex.remove(turnout.getBus2(), turnout.getAddress2(),
+					turnout);
+		} else {
+			turnoutIndex.remove(turnout.getBus1(), turnout.getAddress1(),
+					turnout);
+		}
+		unregisterSubTurnouts(turnout);
+		return true;
+	}
+
+	/**
+	 * @return true if turnout is a registered turnout or sub-turnout
+	 */
+	synchronized boolean contains(final SRCPTurnout turnout) {
+		return turnouts.contains(turnout) || subTurnouts.contains(turnout);
+	}
+
+	/**
+	 * sets the sub-turnouts of a three-way turnout, replacing its previous
+	 * ones.
+	 */
+	synchronized void registerSubTurnouts(final SRCPTurnout parent,
+			final SRCPTurnout[] subs) {
+		unregisterSubTurnouts(parent);
+		for (final SRCPTurnout sub : subs) {
+			subTurnouts.add(sub);
+		}
+		parent.setSubTurnouts(subs);
+	}
+
+	synchronized void unregisterSubTurnouts(final SRCPTurnout parent) {
+		final SRCPTurnout[] subs = parent.getSubTurnouts();
+		if (subs == null) {
+			return;
+		}
+		for (final SRCPTurnout sub : subs) {
+			subTurnouts.remove(sub);
+		}
+		parent.setSubTurnouts(null);
+	}
+
+	/**
+	 * @return the turnout at the address, a normal turnout takes precedence
+	 *         over a three-way turnout using the same address
+	 */
+	synchronized SRCPTurnout get(final int bus, final int address) {
+		final long key = SRCPAddressIndex.key(bus, address);
+		final SRCPTurnout turnout = turnoutIndex.get(key);
+		if (turnout != null) {
+			return turnout;
+		}
+		return threeWayIndex.get(key);
+	}
+
+	/**
+	 * @return a copy of the registered turnouts and sub-turnouts
+	 */
+	synchronized List<SRCPTurnout> getTurnouts() {
+		final List<SRCPTurnout> all = new ArrayList<SRCPTurnout>(
+				turnouts.size() + subTurnouts.size());
+		all.addAll(turnouts);
+		all.addAll(subTurnouts);
+		return all;
+	}
+
+	synchronized int size() {
+		return turnouts.size();
+	}
+}